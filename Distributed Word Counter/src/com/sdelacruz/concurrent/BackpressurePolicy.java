@@ -0,0 +1,62 @@
+package com.sdelacruz.concurrent;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Policies applied when a task is submitted to a DIRECT dispatch threadpool whose queue is full.
+ * POLLING dispatch threadpools always BLOCK their dispatcher thread.
+ *
+ */
+public enum BackpressurePolicy {
+
+	/**
+	 * The submitting thread blocks until the queue has room for the task
+	 */
+	BLOCK {
+		@Override
+		public RejectedExecutionHandler handler() {
+			return new RejectedExecutionHandler(){
+				@Override
+				public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+					if(executor.isShutdown())
+						throw new RejectedExecutionException("Error: threadpool has been shut down!");
+					try {
+						executor.getQueue().put(r);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new RejectedExecutionException("Error: interrupted while waiting for queue space!", e);
+					}
+				}
+			};
+		}
+	},
+
+	/**
+	 * The submitting thread runs the task itself, which slows the producer down
+	 */
+	CALLER_RUNS {
+		@Override
+		public RejectedExecutionHandler handler() {
+			return new ThreadPoolExecutor.CallerRunsPolicy();
+		}
+	},
+
+	/**
+	 * A RejectedExecutionException is thrown to the submitting thread
+	 */
+	REJECT {
+		@Override
+		public RejectedExecutionHandler handler() {
+			return new ThreadPoolExecutor.AbortPolicy();
+		}
+	};
+
+	/**
+	 * Returns a RejectedExecutionHandler implementing this policy
+	 * @return A new RejectedExecutionHandler
+	 */
+	public abstract RejectedExecutionHandler handler();
+
+}
@@ -0,0 +1,161 @@
+package com.sdelacruz.concurrent;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class depicting how a worker component dispatches tasks to its threadpool.
+ * POLLING keeps the original queue and dispatcher thread, DIRECT submits tasks straight to a
+ * threadpool with a bounded queue, applying a BackpressurePolicy once the queue is full.
+ *
+ * In either mode, queueCapacity bounds every queue the component holds, so a fast producer is slowed
+ * down rather than buffered without limit. A POLLING component's producers block once its queue is full.
+ *
+ * The threadpool runs on the ExecutionBackend given, PLATFORM by default. Its size is the number of threads
+ * given, or else the component's own default for PLATFORM threads, and the queue capacity for VIRTUAL
+ * threads, so every task the component may hold can run at once while blocked on a socket.
+ *
+ */
+public class DispatchConfig {
+
+	private static final int defaultQueueCapacity = 1024;
+	//How long an idle VIRTUAL pool thread is kept
+	private static final long virtualKeepAliveMillis = 1000;
+
+	private final DispatchMode mode;
+	private final int queueCapacity;
+	private final BackpressurePolicy policy;
+	private final ExecutionBackend backend;
+	//Threads in the threadpool, 0 for the component's default
+	private final int threads;
+
+	/**
+	 * Constructs a DispatchConfig
+	 * @param mode How tasks are handed to the threadpool
+	 * @param queueCapacity Capacity of each of the component's queues
+	 * @param policy Policy applied when the queue is full in DIRECT mode
+	 */
+	public DispatchConfig(DispatchMode mode, int queueCapacity, BackpressurePolicy policy){
+		this(mode, queueCapacity, policy, ExecutionBackend.PLATFORM, 0);
+	}
+
+	/**
+	 * Constructs a DispatchConfig
+	 * @param mode How tasks are handed to the threadpool
+	 * @param queueCapacity Capacity of each of the component's queues
+	 * @param policy Policy applied when the queue is full in DIRECT mode
+	 * @param backend Kind of thread the threadpool runs tasks on
+	 * @param threads Number of threads in the threadpool, or 0 for the component's default
+	 */
+	public DispatchConfig(DispatchMode mode, int queueCapacity, BackpressurePolicy policy, ExecutionBackend backend, int threads){
+		if(queueCapacity<1)
+			throw new IllegalArgumentException("Error: queue capacity must be at least 1!");
+		if(threads<0)
+			throw new IllegalArgumentException("Error: a threadpool can not have a negative number of threads!");
+		this.mode = mode;
+		this.queueCapacity = queueCapacity;
+		this.policy = policy;
+		this.backend = backend;
+		this.threads = threads;
+	}
+
+	/**
+	 * Returns the default DispatchConfig, using a POLLING dispatcher thread
+	 * @return A POLLING DispatchConfig
+	 */
+	public static DispatchConfig polling(){
+		return new DispatchConfig(DispatchMode.POLLING, defaultQueueCapacity, BackpressurePolicy.BLOCK);
+	}
+
+	/**
+	 * Returns a POLLING DispatchConfig with a given queue capacity
+	 * @param queueCapacity Capacity of each of the component's queues
+	 * @return A POLLING DispatchConfig
+	 */
+	public static DispatchConfig polling(int queueCapacity){
+		return new DispatchConfig(DispatchMode.POLLING, queueCapacity, BackpressurePolicy.BLOCK);
+	}
+
+	/**
+	 * Returns a DIRECT DispatchConfig
+	 * @param queueCapacity Capacity of the threadpool's queue
+	 * @param policy Policy applied when the queue is full
+	 * @return A DIRECT DispatchConfig
+	 */
+	public static DispatchConfig direct(int queueCapacity, BackpressurePolicy policy){
+		return new DispatchConfig(DispatchMode.DIRECT, queueCapacity, policy);
+	}
+
+	/**
+	 * Returns a copy of this DispatchConfig running its threadpool on a given backend
+	 * @param backend Kind of thread the threadpool runs tasks on
+	 * @return A new DispatchConfig
+	 */
+	public DispatchConfig withBackend(ExecutionBackend backend){
+		return new DispatchConfig(this.mode, this.queueCapacity, this.policy, backend, this.threads);
+	}
+
+	/**
+	 * Returns a copy of this DispatchConfig with a given number of threads in its threadpool
+	 * @param threads Number of threads, or 0 for the component's default
+	 * @return A new DispatchConfig
+	 */
+	public DispatchConfig withThreads(int threads){
+		return new DispatchConfig(this.mode, this.queueCapacity, this.policy, this.backend, threads);
+	}
+
+	public DispatchMode getMode(){
+		return this.mode;
+	}
+
+	public boolean isDirect(){
+		return this.mode==DispatchMode.DIRECT;
+	}
+
+	public int getQueueCapacity(){
+		return this.queueCapacity;
+	}
+
+	public BackpressurePolicy getPolicy(){
+		return this.policy;
+	}
+
+	public ExecutionBackend getBackend(){
+		return this.backend;
+	}
+
+	/**
+	 * Returns the number of threads in a threadpool created by this DispatchConfig
+	 * @param defaultThreads The component's default for PLATFORM threads
+	 * @return The threads set, or else the default suited to the backend
+	 */
+	public int getThreads(int defaultThreads){
+		if(this.threads>0)
+			return this.threads;
+		if(this.backend==ExecutionBackend.VIRTUAL && this.backend.isAvailable())
+			return this.queueCapacity;
+		return defaultThreads;
+	}
+
+	/**
+	 * Create a threadpool suited to this DispatchConfig, with a queue of queueCapacity tasks.
+	 * POLLING returns a fixed threadpool which blocks the dispatcher thread once its queue is full, so the
+	 * dispatcher's own queue fills up in turn. DIRECT returns a fixed threadpool applying this policy.
+	 * Idle VIRTUAL threads are let go, as they are created again cheaply once needed. When VIRTUAL falls back
+	 * to PLATFORM threads they are kept like any other PLATFORM pool's.
+	 * @param defaultThreads The component's default number of PLATFORM threads, see getThreads()
+	 * @return A new threadpool
+	 */
+	public ThreadPoolExecutor newThreadPool(int defaultThreads){
+		int threads = getThreads(defaultThreads);
+		RejectedExecutionHandler handler = isDirect() ? this.policy.handler() : BackpressurePolicy.BLOCK.handler();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, virtualKeepAliveMillis, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(this.queueCapacity), this.backend.threadFactory(), handler);
+		if(this.backend==ExecutionBackend.VIRTUAL && this.backend.isAvailable())
+			pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+}
@@ -0,0 +1,21 @@
+package com.sdelacruz.concurrent;
+
+/**
+ * Ways a worker component can hand submitted tasks to its threadpool.
+ *
+ */
+public enum DispatchMode {
+
+	/**
+	 * Tasks are queued, and a dedicated dispatcher thread polls the queue and re-submits each task
+	 * to the threadpool
+	 */
+	POLLING,
+
+	/**
+	 * Tasks are submitted straight to the threadpool's own bounded queue by the calling thread,
+	 * with no dispatcher thread
+	 */
+	DIRECT
+
+}
@@ -0,0 +1,90 @@
+package com.sdelacruz.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class depicting the outcome of draining a Lifecycle component: how many queued or in-flight
+ * tasks were completed, and how many were dropped because the deadline passed first.
+ * Reports of several components can be combined into one, e.g. for a whole node.
+ *
+ */
+public class DrainReport {
+
+	private final String component;
+	private final long drained;
+	private final long dropped;
+	private final boolean terminated;
+	private final List<DrainReport> parts;
+
+	/**
+	 * Constructs a DrainReport for a single component
+	 * @param component Name of the component
+	 * @param drained Number of tasks completed while draining
+	 * @param dropped Number of tasks abandoned at the deadline
+	 * @param terminated Whether the component stopped before the deadline
+	 */
+	public DrainReport(String component, long drained, long dropped, boolean terminated){
+		this(component, drained, dropped, terminated, Collections.<DrainReport>emptyList());
+	}
+
+	private DrainReport(String component, long drained, long dropped, boolean terminated, List<DrainReport> parts){
+		this.component = component;
+		this.drained = drained;
+		this.dropped = dropped;
+		this.terminated = terminated;
+		this.parts = parts;
+	}
+
+	/**
+	 * Combine the reports of several components into one report
+	 * @param component Name of the combined component
+	 * @param parts Reports to combine
+	 * @return A report summing the drained and dropped counts of every part
+	 */
+	public static DrainReport combine(String component, List<DrainReport> parts){
+		long drained = 0;
+		long dropped = 0;
+		boolean terminated = true;
+		for(DrainReport r : parts){
+			drained += r.drained;
+			dropped += r.dropped;
+			terminated &= r.terminated;
+		}
+		return new DrainReport(component, drained, dropped, terminated,
+				Collections.unmodifiableList(new ArrayList<DrainReport>(parts)));
+	}
+
+	public String getComponent(){
+		return this.component;
+	}
+
+	public long getDrained(){
+		return this.drained;
+	}
+
+	public long getDropped(){
+		return this.dropped;
+	}
+
+	public boolean isTerminated(){
+		return this.terminated;
+	}
+
+	public List<DrainReport> getParts(){
+		return this.parts;
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder sb = new StringBuilder();
+		sb.append(this.component).append(": drained=").append(this.drained)
+			.append(" dropped=").append(this.dropped)
+			.append(this.terminated ? "" : " (deadline passed)");
+		for(DrainReport part : this.parts)
+			sb.append("\n  ").append(part.toString().replace("\n", "\n  "));
+		return sb.toString();
+	}
+
+}
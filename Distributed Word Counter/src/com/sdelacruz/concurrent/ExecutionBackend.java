@@ -0,0 +1,65 @@
+package com.sdelacruz.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Kinds of thread a component's threadpool runs its tasks on.
+ *
+ */
+public enum ExecutionBackend {
+
+	/**
+	 * Ordinary platform threads, one per pool thread. Suited to CPU bound tasks, in a pool sized to the cores
+	 */
+	PLATFORM {
+		@Override
+		public ThreadFactory threadFactory() {
+			return Executors.defaultThreadFactory();
+		}
+	},
+
+	/**
+	 * Virtual threads, which are cheap enough for one per task blocked on a socket, so a pool may hold
+	 * thousands of them. Virtual threads need Java 21, on older runtimes PLATFORM threads are used instead,
+	 * see isAvailable()
+	 */
+	VIRTUAL {
+		@Override
+		public ThreadFactory threadFactory() {
+			ThreadFactory factory = virtualThreadFactory();
+			return factory!=null ? factory : PLATFORM.threadFactory();
+		}
+	};
+
+	/**
+	 * Returns a ThreadFactory creating threads of this kind
+	 * @return A new ThreadFactory
+	 */
+	public abstract ThreadFactory threadFactory();
+
+	/**
+	 * Returns whether this backend is supported by the running JVM, rather than falling back to PLATFORM
+	 * @return true if threads of this kind can be created
+	 */
+	public boolean isAvailable(){
+		return this==PLATFORM || virtualThreadFactory()!=null;
+	}
+
+	//Thread.ofVirtual().factory(), looked up reflectively so the code still builds and runs before Java 21
+	private static ThreadFactory virtualThreadFactory(){
+		try {
+			Method ofVirtual = Thread.class.getMethod("ofVirtual");
+			Object builder = ofVirtual.invoke(null);
+			Method factory = ofVirtual.getReturnType().getMethod("factory");
+			return (ThreadFactory)factory.invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		} catch (UnsupportedOperationException e) {
+			//Virtual threads are a preview feature on Java 19 and 20
+			return null;
+		}
+	}
+
+}
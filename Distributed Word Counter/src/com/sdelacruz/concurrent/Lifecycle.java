@@ -0,0 +1,22 @@
+package com.sdelacruz.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interface defining the Lifecycle of a worker component.
+ * Draining a component stops it accepting new work, lets queued and in-flight work finish until a
+ * deadline, then stops the component, dropping whatever work has not finished by the deadline.
+ *
+ */
+public interface Lifecycle {
+
+	/**
+	 * Stop accepting new work, finish queued work until the deadline, then stop.
+	 * Blocks, without spinning, until the component has stopped or the deadline has passed.
+	 * @param timeout Maximum time to wait for queued work to finish
+	 * @param unit Unit of timeout
+	 * @return A report of how much work was drained and how much was dropped
+	 */
+	DrainReport drain(long timeout, TimeUnit unit);
+
+}
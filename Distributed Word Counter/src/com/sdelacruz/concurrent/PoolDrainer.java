@@ -0,0 +1,82 @@
+package com.sdelacruz.concurrent;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helper methods shared by Lifecycle implementations, for draining a threadpool against a deadline.
+ * Deadlines are absolute System.nanoTime() values.
+ *
+ */
+public class PoolDrainer {
+
+	//Timeouts longer than this are treated as waiting forever, and can not overflow a deadline
+	private static final long forever = Long.MAX_VALUE / 2;
+
+	private PoolDrainer(){
+	}
+
+	/**
+	 * Returns the deadline for a timeout starting now
+	 * @param timeout Timeout
+	 * @param unit Unit of timeout
+	 * @return Deadline as a System.nanoTime() value
+	 */
+	public static long deadline(long timeout, TimeUnit unit){
+		return System.nanoTime() + Math.min(unit.toNanos(Math.max(0, timeout)), forever);
+	}
+
+	/**
+	 * Returns the time left until a deadline
+	 * @param deadline Deadline as a System.nanoTime() value
+	 * @return Nanoseconds left, or 0 if the deadline has passed
+	 */
+	public static long remainingNanos(long deadline){
+		return Math.max(0, deadline - System.nanoTime());
+	}
+
+	/**
+	 * Wait for a thread to finish, until a deadline
+	 * @param t Thread to wait for
+	 * @param deadline Deadline as a System.nanoTime() value
+	 * @return true if the thread has finished
+	 */
+	public static boolean join(Thread t, long deadline){
+		try {
+			long nanos = remainingNanos(deadline);
+			if(nanos>0)
+				t.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos)));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return !t.isAlive();
+	}
+
+	/**
+	 * Shut down a threadpool, letting its queued and running tasks finish until a deadline.
+	 * Any tasks still queued at the deadline are removed, and running tasks are interrupted.
+	 * @param component Name of the component owning the pool
+	 * @param pool Threadpool to drain
+	 * @param deadline Deadline as a System.nanoTime() value
+	 * @return A report of the tasks drained and dropped
+	 */
+	public static DrainReport drain(String component, ThreadPoolExecutor pool, long deadline){
+		long outstanding = pool.getQueue().size() + pool.getActiveCount();
+		pool.shutdown();
+
+		boolean terminated = false;
+		try {
+			terminated = pool.awaitTermination(remainingNanos(deadline), TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		long dropped = 0;
+		if(!terminated){
+			dropped = pool.getActiveCount();
+			dropped += pool.shutdownNow().size();
+		}
+		return new DrainReport(component, Math.max(0, outstanding - dropped), dropped, terminated);
+	}
+
+}
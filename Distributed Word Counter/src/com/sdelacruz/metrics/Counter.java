@@ -0,0 +1,37 @@
+package com.sdelacruz.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count which only ever changes by adding to it, e.g. bytes sent. Adding spreads over cells
+ * under contention, so many threads can count at once without allocating or contending on one field.
+ *
+ */
+public class Counter {
+
+	private final LongAdder count = new LongAdder();
+
+	Counter(){
+	}
+
+	public void increment(){
+		this.count.increment();
+	}
+
+	/**
+	 * Add to the count
+	 * @param n Amount to add
+	 */
+	public void add(long n){
+		this.count.add(n);
+	}
+
+	/**
+	 * Returns the count as it stands, which is not atomic with respect to concurrent adds
+	 * @return The count
+	 */
+	public long get(){
+		return this.count.sum();
+	}
+
+}
@@ -0,0 +1,16 @@
+package com.sdelacruz.metrics;
+
+/**
+ * A value read on demand from the component it measures, e.g. the depth of a queue.
+ * Gauges are only read when metrics are reported, so cost nothing while the component runs.
+ *
+ */
+public interface Gauge {
+
+	/**
+	 * Returns the current value of the gauge
+	 * @return The value
+	 */
+	long get();
+
+}
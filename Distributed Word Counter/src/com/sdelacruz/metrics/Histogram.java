@@ -0,0 +1,105 @@
+package com.sdelacruz.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A distribution of values, e.g. latencies in nanoseconds, recorded without allocating.
+ * As in an HdrHistogram, values are counted in buckets whose width grows with the value: each power of
+ * two is split into 32 buckets, so every value is known to within about 3% whatever its size. Values
+ * below 32 are counted exactly.
+ *
+ */
+public class Histogram {
+
+	private static final int subBucketBits = 5;
+	private static final int subBuckets = 1 << subBucketBits;
+	//Enough buckets for any positive long
+	private static final int buckets = subBuckets + (63 - subBucketBits) * subBuckets;
+
+	private final AtomicLongArray counts = new AtomicLongArray(buckets);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	Histogram(){
+	}
+
+	/**
+	 * Record a value
+	 * @param value Value to record, negative values are recorded as 0
+	 */
+	public void record(long value){
+		if(value<0)
+			value = 0;
+		this.counts.incrementAndGet(indexOf(value));
+		this.count.increment();
+		this.sum.add(value);
+		long m;
+		while(value>(m = this.max.get()) && !this.max.compareAndSet(m, value));
+	}
+
+	/**
+	 * Record the time elapsed since a start time
+	 * @param startNanos Start time, from System.nanoTime()
+	 */
+	public void recordSince(long startNanos){
+		record(System.nanoTime() - startNanos);
+	}
+
+	public long getCount(){
+		return this.count.sum();
+	}
+
+	public long getMax(){
+		return this.max.get();
+	}
+
+	/**
+	 * Returns the mean of every value recorded
+	 * @return Mean value, or 0 if none have been recorded
+	 */
+	public double getMean(){
+		long n = this.count.sum();
+		return n==0 ? 0 : this.sum.sum() / (double)n;
+	}
+
+	/**
+	 * Returns the value below which a given percentage of the values recorded fall
+	 * @param percentile Percentage, from 0 to 100
+	 * @return Highest value of the bucket holding the percentile, or 0 if no values have been recorded
+	 */
+	public long getValueAtPercentile(double percentile){
+		long total = 0;
+		for(int i = 0;i<buckets;i++)
+			total += this.counts.get(i);
+		if(total==0)
+			return 0;
+		long rank = Math.max(1, (long)Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+		long seen = 0;
+		for(int i = 0;i<buckets;i++){
+			seen += this.counts.get(i);
+			if(seen>=rank)
+				return Math.min(highestValueOf(i), getMax());
+		}
+		return getMax();
+	}
+
+	private static int indexOf(long value){
+		if(value<subBuckets)
+			return (int)value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int)(value >>> (exponent - subBucketBits)) - subBuckets;
+		return subBuckets + (exponent - subBucketBits) * subBuckets + sub;
+	}
+
+	private static long highestValueOf(int index){
+		if(index<subBuckets)
+			return index;
+		int exponent = (index - subBuckets) / subBuckets + subBucketBits;
+		long sub = (index - subBuckets) % subBuckets + subBuckets;
+		return ((sub + 1) << (exponent - subBucketBits)) - 1;
+	}
+
+}
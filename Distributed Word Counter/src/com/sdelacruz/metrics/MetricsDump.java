@@ -0,0 +1,104 @@
+package com.sdelacruz.metrics;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints every metric of a MetricsRegistry as text at a fixed period, e.g. to System.err.
+ * Counters are printed with their rate per second since the previous dump, such as words counted per
+ * second. Histograms are printed as their count, mean, 50th, 90th and 99th percentile and max.
+ *
+ * To use: create an instance of MetricsDump and call start(), and stop() once done.
+ *
+ */
+public class MetricsDump {
+
+	private final MetricsRegistry registry;
+	private final PrintStream out;
+	private final long periodMillis;
+	private ScheduledExecutorService timer;
+
+	//Counter values at the previous dump, only used by the timer thread
+	private final Map<String, Long> previous = new HashMap<String, Long>();
+	private long previousNanos;
+
+	/**
+	 * Constructs a MetricsDump
+	 * @param registry Registry to print
+	 * @param out Stream to print to
+	 * @param periodMillis Time between dumps, in milliseconds
+	 */
+	public MetricsDump(MetricsRegistry registry, PrintStream out, long periodMillis){
+		if(periodMillis<1)
+			throw new IllegalArgumentException("Error: a MetricsDump needs a period of at least 1ms!");
+		this.registry = registry;
+		this.out = out;
+		this.periodMillis = periodMillis;
+		this.previousNanos = System.nanoTime();
+	}
+
+	/**
+	 * Start printing the registry every period, on a daemon thread
+	 */
+	public synchronized void start(){
+		if(this.timer!=null)
+			return;
+		this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "MetricsDump");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this.timer.scheduleAtFixedRate(new Runnable(){
+			@Override
+			public void run() {
+				dump();
+			}
+		}, this.periodMillis, this.periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop printing the registry
+	 */
+	public synchronized void stop(){
+		if(this.timer!=null){
+			this.timer.shutdownNow();
+			this.timer = null;
+		}
+	}
+
+	/**
+	 * Print every metric once, now
+	 */
+	public void dump(){
+		long now = System.nanoTime();
+		double seconds = Math.max(1, now - this.previousNanos) / 1e9;
+		this.previousNanos = now;
+
+		StringBuilder text = new StringBuilder();
+		text.append("metrics after ").append(String.format("%.1f", seconds)).append("s:\n");
+		for(Map.Entry<String, Counter> e : this.registry.getCounters().entrySet()){
+			long value = e.getValue().get();
+			Long last = this.previous.put(e.getKey(), value);
+			double rate = (value - (last==null ? 0 : last.longValue())) / seconds;
+			text.append(String.format("  %-48s %14d %14.1f/s%n", e.getKey(), value, rate));
+		}
+		for(Map.Entry<String, Long> e : this.registry.getGauges().entrySet())
+			text.append(String.format("  %-48s %14d%n", e.getKey(), e.getValue()));
+		for(Map.Entry<String, Histogram> e : this.registry.getHistograms().entrySet()){
+			Histogram h = e.getValue();
+			text.append(String.format("  %-48s count=%d mean=%.0f p50=%d p90=%d p99=%d max=%d%n", e.getKey(), h.getCount(),
+					h.getMean(), h.getValueAtPercentile(50), h.getValueAtPercentile(90), h.getValueAtPercentile(99), h.getMax()));
+		}
+		this.out.print(text);
+		this.out.flush();
+	}
+
+}
@@ -0,0 +1,106 @@
+package com.sdelacruz.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Read only DynamicMBean exposing a MetricsRegistry. The attributes are read from the registry each time,
+ * so metrics created after the MBean was registered appear too. Every Counter and Gauge is a long
+ * attribute of the same name, and each Histogram is exposed as the attributes name.count, name.mean,
+ * name.p50, name.p90, name.p99 and name.max.
+ *
+ */
+class MetricsDynamicMBean implements DynamicMBean {
+
+	private static final String[] histogramAttributes = {"count", "mean", "p50", "p90", "p99", "max"};
+
+	private final MetricsRegistry registry;
+
+	MetricsDynamicMBean(MetricsRegistry registry){
+		this.registry = registry;
+	}
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		Counter c = this.registry.getCounters().get(attribute);
+		if(c!=null)
+			return Long.valueOf(c.get());
+		if(this.registry.getGauges().containsKey(attribute))
+			return Long.valueOf(this.registry.getGauge(attribute));
+
+		int dot = attribute.lastIndexOf('.');
+		Histogram h = dot<0 ? null : this.registry.getHistograms().get(attribute.substring(0, dot));
+		if(h!=null){
+			String stat = attribute.substring(dot + 1);
+			if(stat.equals("count"))
+				return Long.valueOf(h.getCount());
+			if(stat.equals("mean"))
+				return Double.valueOf(h.getMean());
+			if(stat.equals("p50"))
+				return Long.valueOf(h.getValueAtPercentile(50));
+			if(stat.equals("p90"))
+				return Long.valueOf(h.getValueAtPercentile(90));
+			if(stat.equals("p99"))
+				return Long.valueOf(h.getValueAtPercentile(99));
+			if(stat.equals("max"))
+				return Long.valueOf(h.getMax());
+		}
+		throw new AttributeNotFoundException("Error: no metric named " + attribute);
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		AttributeList list = new AttributeList();
+		for(String name : attributes){
+			try {
+				list.add(new Attribute(name, getAttribute(name)));
+			} catch (AttributeNotFoundException e) {
+				//Left out, as the JMX specification asks
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("Error: metrics are read only!");
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+		throw new ReflectionException(new NoSuchMethodException(actionName), "Error: metrics have no operations!");
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+		for(String name : this.registry.getCounters().keySet())
+			attributes.add(new MBeanAttributeInfo(name, "long", "Counter " + name, true, false, false));
+		for(String name : this.registry.getGauges().keySet())
+			attributes.add(new MBeanAttributeInfo(name, "long", "Gauge " + name, true, false, false));
+		for(Map.Entry<String, Histogram> e : this.registry.getHistograms().entrySet()){
+			for(String stat : histogramAttributes){
+				String type = stat.equals("mean") ? "double" : "long";
+				attributes.add(new MBeanAttributeInfo(e.getKey() + "." + stat, type, "Histogram " + e.getKey() + ", " + stat, true, false, false));
+			}
+		}
+		return new MBeanInfo(getClass().getName(), "Metrics of every component of this node",
+				attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, new MBeanOperationInfo[0], null);
+	}
+
+}
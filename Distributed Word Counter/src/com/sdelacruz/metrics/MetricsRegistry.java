@@ -0,0 +1,174 @@
+package com.sdelacruz.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the Counters, Gauges and Histograms of every component in this JVM, by name.
+ * Names are dotted, starting with the component and, for Senders and Receivers, their port, e.g.
+ * "sender.8502.bytesSent". Components look their metrics up once, when constructed, so recording
+ * never touches the registry.
+ *
+ * Several nodes may run in one JVM, each with a Sender on the same port. They share the same Counters and
+ * Histograms, and Gauges registered under the same name are summed, so every metric covers the whole JVM.
+ *
+ * Metrics are read through JMX, see registerMBean(), or printed periodically by a MetricsDump.
+ *
+ */
+public class MetricsRegistry {
+
+	public static final String defaultObjectName = "com.sdelacruz:type=Metrics";
+
+	private static final MetricsRegistry defaultRegistry = new MetricsRegistry();
+
+	private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+	private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+	private final ConcurrentHashMap<String, List<Gauge>> gauges = new ConcurrentHashMap<String, List<Gauge>>();
+
+	/**
+	 * Returns the registry shared by every component in this JVM
+	 * @return The default MetricsRegistry
+	 */
+	public static MetricsRegistry getDefault(){
+		return defaultRegistry;
+	}
+
+	/**
+	 * Returns the Counter with a given name, creating it if there is none
+	 * @param name Name of the Counter
+	 * @return The Counter
+	 */
+	public Counter counter(String name){
+		Counter c = this.counters.get(name);
+		if(c==null){
+			Counter created = new Counter();
+			c = this.counters.putIfAbsent(name, created);
+			if(c==null)
+				c = created;
+		}
+		return c;
+	}
+
+	/**
+	 * Returns the Histogram with a given name, creating it if there is none
+	 * @param name Name of the Histogram
+	 * @return The Histogram
+	 */
+	public Histogram histogram(String name){
+		Histogram h = this.histograms.get(name);
+		if(h==null){
+			Histogram created = new Histogram();
+			h = this.histograms.putIfAbsent(name, created);
+			if(h==null)
+				h = created;
+		}
+		return h;
+	}
+
+	/**
+	 * Register a Gauge, summed with any others of the same name
+	 * @param name Name of the Gauge
+	 * @param gauge Gauge to read
+	 */
+	public void register(String name, Gauge gauge){
+		List<Gauge> list = this.gauges.get(name);
+		if(list==null){
+			List<Gauge> created = new CopyOnWriteArrayList<Gauge>();
+			list = this.gauges.putIfAbsent(name, created);
+			if(list==null)
+				list = created;
+		}
+		list.add(gauge);
+	}
+
+	/**
+	 * Remove a Gauge, e.g. once its component has been drained
+	 * @param name Name the Gauge was registered under
+	 * @param gauge Gauge to remove
+	 */
+	public void unregister(String name, Gauge gauge){
+		List<Gauge> list = this.gauges.get(name);
+		if(list!=null)
+			list.remove(gauge);
+	}
+
+	/**
+	 * Returns the sum of every Gauge registered under a name
+	 * @param name Name of the Gauges
+	 * @return Their sum, or 0 if there are none
+	 */
+	public long getGauge(String name){
+		List<Gauge> list = this.gauges.get(name);
+		long value = 0;
+		if(list!=null){
+			for(Gauge g : list)
+				value += g.get();
+		}
+		return value;
+	}
+
+	/**
+	 * Returns every Counter, sorted by name
+	 * @return A new map of the Counters
+	 */
+	public SortedMap<String, Counter> getCounters(){
+		return new TreeMap<String, Counter>(this.counters);
+	}
+
+	/**
+	 * Returns every Histogram, sorted by name
+	 * @return A new map of the Histograms
+	 */
+	public SortedMap<String, Histogram> getHistograms(){
+		return new TreeMap<String, Histogram>(this.histograms);
+	}
+
+	/**
+	 * Returns the value of every Gauge, summed by name and sorted by name
+	 * @return A new map of the Gauges' values
+	 */
+	public SortedMap<String, Long> getGauges(){
+		SortedMap<String, Long> values = new TreeMap<String, Long>();
+		for(Map.Entry<String, List<Gauge>> e : this.gauges.entrySet()){
+			if(!e.getValue().isEmpty())
+				values.put(e.getKey(), getGauge(e.getKey()));
+		}
+		return values;
+	}
+
+	/**
+	 * Expose this registry through the platform MBeanServer, under defaultObjectName.
+	 * Does nothing if it is already exposed.
+	 */
+	public void registerMBean(){
+		registerMBean(defaultObjectName);
+	}
+
+	/**
+	 * Expose this registry through the platform MBeanServer. Every Counter and Gauge is an attribute, and
+	 * each Histogram has attributes for its count, mean, percentiles and max, see MetricsDynamicMBean.
+	 * Does nothing if the name is already registered.
+	 * @param objectName JMX ObjectName to register under
+	 */
+	public void registerMBean(String objectName){
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.registerMBean(new MetricsDynamicMBean(this), new ObjectName(objectName));
+		} catch (InstanceAlreadyExistsException e) {
+			//Already exposed, by this registry or another node in this JVM
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
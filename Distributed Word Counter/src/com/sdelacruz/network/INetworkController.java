@@ -1,12 +1,25 @@
 package com.sdelacruz.network;
 
+import java.net.InetAddress;
+import java.util.List;
+
+import com.sdelacruz.concurrent.Lifecycle;
 import com.sdelacruz.network.io.Receiver;
 import com.sdelacruz.network.io.Sender;
 import com.sdelacruz.network.objectprocessing.ObjectPoller;
 import com.sdelacruz.network.objectprocessing.ObjectProcessor;
+import com.sdelacruz.wordcounter.CountReducer;
 import com.sdelacruz.wordcounter.WordCounter;
+import com.sdelacruz.wordcounter.network.ChunkWorker;
+import com.sdelacruz.wordcounter.network.CountShard;
+import com.sdelacruz.wordcounter.network.WorkScheduler;
 
-public interface INetworkController{
+/**
+ * Interface defining a NetworkController, which owns the Senders, Receivers, ObjectPollers and WordCounter of a node.
+ * Draining a NetworkController (see Lifecycle) tears down the whole node: each component is drained in
+ * turn, from where work enters the node to where it leaves, so work in flight is passed on rather than lost.
+ */
+public interface INetworkController extends Lifecycle {
 
 	public abstract Sender addSender(int port);
 	public abstract Receiver addReceiver(int port);
@@ -24,4 +37,17 @@ public interface INetworkController{
 	
 	public abstract WordCounter getWordCounter();
 	
+	//Start listening, and join this node's master unless it is the root
+	public abstract void connect();
+	
+	//Hands words out to this node's workers, and counts the chunks sent by this node's master
+	public abstract WorkScheduler getWorkScheduler();
+	public abstract ChunkWorker getChunkWorker();
+	
+	//Shuffle mode: shards of every partial count are sent to the reducers, in shard order
+	public abstract void setReducers(List<InetAddress> reducers);
+	public abstract void startReducer();
+	public abstract CountReducer getShardReducer();
+	public abstract void reduceShard(CountShard shard);
+	
 }
@@ -1,16 +1,24 @@
 package com.sdelacruz.network;
 
 import java.net.InetAddress;
+import java.net.SocketException;
+import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.sdelacruz.network.io.NetworkUtils;
 
 public class NetworkModel extends Observable{
 
 	private Map<InetAddress, Integer> workers;
 	private InetAddress master;
+	//Address this node listens on, null to listen on every address
+	private InetAddress local;
 	private boolean root = false;
 	private int masterSendPort;
 	private int masterReceivePort;
@@ -19,17 +27,36 @@ public class NetworkModel extends Observable{
 	private Map<InetAddress, Integer> workerCount;
 	private final int maxWorkersPerBranch;
 	private final int minWordSendUnit;
+	//Reducer node of each shard while shuffling, the shuffle port is the same at every level of the tree
+	private List<InetAddress> reducers;
+	private final int shufflePort;
 	
 	public NetworkModel(int startport, int maxWorkersPerBranch, int minWordSendUnit, InetAddress master){
+		this(startport, maxWorkersPerBranch, minWordSendUnit, master, null);
+	}
+	
+	/**
+	 * Constructs a NetworkModel
+	 * @param startport First port of the node, the same at every node of the tree
+	 * @param maxWorkersPerBranch Fan-out of the tree, the most workers any node takes on directly
+	 * @param minWordSendUnit Fewest words sent to a worker at once
+	 * @param master Master to join, or null if this node is the root
+	 * @param local Address this node listens on and joins its master as, or null to listen on every address
+	 */
+	public NetworkModel(int startport, int maxWorkersPerBranch, int minWordSendUnit, InetAddress master, InetAddress local){
+		this.local = local;
 		this.masterSendPort = startport;
 		this.masterReceivePort = startport + 1;
 		this.workerSendPort = startport + 2;
 		this.workerReceivePort = startport + 3;
-		this.workers = new HashMap<InetAddress, Integer>();
+		//Read by the WorkScheduler while workers join
+		this.workers = new ConcurrentHashMap<InetAddress, Integer>();
 		this.master = master;
 		this.workerCount = new HashMap<InetAddress,Integer>();
 		this.maxWorkersPerBranch = maxWorkersPerBranch;
 		this.minWordSendUnit = minWordSendUnit;
+		this.reducers = Collections.emptyList();
+		this.shufflePort = startport - 1;
 		if(this.master==null)
 			this.root = true;
 			
@@ -39,6 +66,22 @@ public class NetworkModel extends Observable{
 		return this.minWordSendUnit;
 	}
 	
+	public synchronized List<InetAddress> getReducers(){
+		return this.reducers;
+	}
+	
+	public synchronized void setReducers(List<InetAddress> reducers){
+		this.reducers = Collections.unmodifiableList(new ArrayList<InetAddress>(reducers));
+	}
+	
+	public boolean isShuffling(){
+		return !this.getReducers().isEmpty();
+	}
+	
+	public int getShufflePort(){
+		return this.shufflePort;
+	}
+	
 	public synchronized int getWorkerCount(InetAddress i){
 		Integer count = this.workerCount.get(i);
 		if(count == null)
@@ -59,6 +102,26 @@ public class NetworkModel extends Observable{
 		return this.workers;
 	}
 	
+	/**
+	 * Returns the address this node listens on, or null if it listens on every address
+	 * @return Bound local address
+	 */
+	public synchronized InetAddress getBoundInet(){
+		return this.local;
+	}
+	
+	/**
+	 * Returns the address this node is known by to its master and workers
+	 * @return The bound local address, or the address of this machine
+	 * @throws SocketException
+	 * @throws UnknownHostException
+	 */
+	public synchronized InetAddress getLocalInet() throws SocketException, UnknownHostException {
+		if(this.local!=null)
+			return this.local;
+		return NetworkUtils.getInetAddress();
+	}
+	
 	public synchronized InetAddress getMasterInet(){
 		return this.master;
 	}
@@ -73,6 +136,29 @@ public class NetworkModel extends Observable{
 		setChanged();
 	}
 	
+	/**
+	 * Take on a node asking to join this node, or pick the branch it should join instead.
+	 * Once maxWorkersPerBranch workers have joined, further nodes are sent down the branch with the fewest
+	 * nodes, so the tree fills up level by level.
+	 * @param i Address of the joining node
+	 * @return The worker whose branch the node should join, or null if the node is now, or already was, a worker of this node
+	 */
+	public synchronized InetAddress admitWorker(InetAddress i){
+		if(this.workers.containsKey(i))
+			return null;
+		if(this.workers.size()<this.maxWorkersPerBranch){
+			addWorker(i);
+			return null;
+		}
+		InetAddress branch = null;
+		for(InetAddress w : this.workers.keySet()){
+			if(branch==null || Math.max(0, getWorkerCount(w))<Math.max(0, getWorkerCount(branch)))
+				branch = w;
+		}
+		this.workerCount.put(branch, Math.max(0, getWorkerCount(branch)) + 1);
+		return branch;
+	}
+	
 	public List<InetAddress> getIdleWorkers(){
 		List<InetAddress> idles = new ArrayList<InetAddress>();
 		for(InetAddress i : this.getWorkers().keySet()){
@@ -0,0 +1,359 @@
+package com.sdelacruz.network.codec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+
+import com.sdelacruz.wordcounter.CountMinSketch;
+import com.sdelacruz.wordcounter.SketchSpec;
+import com.sdelacruz.wordcounter.WordCountTable;
+import com.sdelacruz.wordcounter.WordSketch;
+import com.sdelacruz.wordcounter.network.ChunkAck;
+import com.sdelacruz.wordcounter.network.ChunkCommit;
+import com.sdelacruz.wordcounter.network.CountShard;
+import com.sdelacruz.wordcounter.network.JobCollect;
+import com.sdelacruz.wordcounter.network.JobResult;
+import com.sdelacruz.wordcounter.network.JobSketch;
+import com.sdelacruz.wordcounter.network.WordChunk;
+
+/**
+ * MessageCodec using a compact, length prefixed binary format for the messages which make up most
+ * traffic. Every message starts with a one byte type tag:
+ *
+ * String[]: varint length, then per word a varint (UTF-8 length + 1, or 0 for null) and the UTF-8 bytes.
+ * WordCountTable: varint number of words, then per word a varint UTF-8 length, the UTF-8 bytes and a varint count.
+ * InetAddress: one byte address length, then the raw address bytes.
+ * CountShard: varint chunk id + 1, varint shard, varint number of shards, then the counts as for a WordCountTable.
+ * WordChunk: varint chunk id, varint job id, varint attempt, varint summary capacity, a sketch spec, then the words as for a String[],
+ * none for a chunk of bytes, whose bytes follow the message in a bulk frame.
+ * ChunkAck: varint chunk id, varint attempt, one byte cancelled flag, one byte held flag, varint slots.
+ * ChunkCommit: varint chunk id, varint attempt, one byte commit flag.
+ * JobCollect: varint job id, varint source, varint commits.
+ * JobResult: varint job id, varint source, varint part, varint parts, varint total, then the counts as for a WordCountTable.
+ * JobSketch: varint job id, varint source, a sketch spec, varint total, a varint per Count-Min Sketch counter, row by row,
+ * then one byte per HyperLogLog register.
+ * Sketch spec: varint width, or 0 for none, then varint depth and varint precision.
+ * Anything else is written with JavaSerializationCodec.
+ *
+ */
+public class BinaryCodec implements MessageCodec {
+
+	public static final byte id = 1;
+
+	private static final Charset utf8 = Charset.forName("UTF-8");
+
+	private static final byte tagSerialized = 0;
+	private static final byte tagWords = 1;
+	private static final byte tagCounts = 2;
+	private static final byte tagAddress = 3;
+	private static final byte tagShard = 4;
+	private static final byte tagChunk = 5;
+	private static final byte tagAck = 6;
+	private static final byte tagCommit = 7;
+	private static final byte tagCollect = 8;
+	private static final byte tagResult = 9;
+	private static final byte tagSketch = 10;
+
+	private static final String[] noWords = new String[0];
+	//A sketch is sent whole in a single frame, at least a byte per counter, so holds no more counters than the
+	//largest frame a Receiver accepts, FrameFormat.maxFrameBytes
+	private static final long maxSketchCounters = 64 * 1024 * 1024;
+
+	private final JavaSerializationCodec fallback = new JavaSerializationCodec();
+
+	@Override
+	public byte getId() {
+		return id;
+	}
+
+	@Override
+	public void encode(Object o, DataOutputStream out) throws IOException {
+		if(o instanceof String[]){
+			out.writeByte(tagWords);
+			encodeWords((String[])o, out);
+		}
+		else if(o instanceof WordCountTable){
+			out.writeByte(tagCounts);
+			encodeCounts((WordCountTable)o, out);
+		}
+		else if(o instanceof InetAddress){
+			out.writeByte(tagAddress);
+			byte[] address = ((InetAddress)o).getAddress();
+			out.writeByte(address.length);
+			out.write(address);
+		}
+		else if(o instanceof CountShard){
+			out.writeByte(tagShard);
+			CountShard shard = (CountShard)o;
+			Varint.write(out, shard.getChunkId() + 1);
+			Varint.write(out, shard.getShard());
+			Varint.write(out, shard.getShards());
+			encodeCounts(shard.getCounts(), out);
+		}
+		else if(o instanceof WordChunk){
+			out.writeByte(tagChunk);
+			WordChunk chunk = (WordChunk)o;
+			Varint.write(out, chunk.getChunkId());
+			Varint.write(out, chunk.getJobId());
+			Varint.write(out, chunk.getAttempt());
+			Varint.write(out, chunk.getSummaryCapacity());
+			encodeSpec(chunk.getSketchSpec(), out);
+			encodeWords(chunk.getWords()==null ? noWords : chunk.getWords(), out);
+		}
+		else if(o instanceof ChunkAck){
+			out.writeByte(tagAck);
+			ChunkAck ack = (ChunkAck)o;
+			Varint.write(out, ack.getChunkId());
+			Varint.write(out, ack.getAttempt());
+			out.writeBoolean(ack.isCancelled());
+			out.writeBoolean(ack.isHeld());
+			Varint.write(out, ack.getSlots());
+		}
+		else if(o instanceof ChunkCommit){
+			out.writeByte(tagCommit);
+			ChunkCommit commit = (ChunkCommit)o;
+			Varint.write(out, commit.getChunkId());
+			Varint.write(out, commit.getAttempt());
+			out.writeBoolean(commit.isCommit());
+		}
+		else if(o instanceof JobCollect){
+			out.writeByte(tagCollect);
+			JobCollect collect = (JobCollect)o;
+			Varint.write(out, collect.getJobId());
+			Varint.write(out, collect.getSource());
+			Varint.write(out, collect.getCommits());
+		}
+		else if(o instanceof JobResult){
+			out.writeByte(tagResult);
+			JobResult result = (JobResult)o;
+			Varint.write(out, result.getJobId());
+			Varint.write(out, result.getSource());
+			Varint.write(out, result.getPart());
+			Varint.write(out, result.getParts());
+			Varint.write(out, result.getTotal());
+			encodeCounts(result.getCounts(), out);
+		}
+		else if(o instanceof JobSketch){
+			out.writeByte(tagSketch);
+			JobSketch sketch = (JobSketch)o;
+			Varint.write(out, sketch.getJobId());
+			Varint.write(out, sketch.getSource());
+			encodeSketch(sketch.getSketch(), out);
+		}
+		else{
+			out.writeByte(tagSerialized);
+			this.fallback.encode(o, out);
+		}
+	}
+
+	@Override
+	public Object decode(DataInputStream in) throws IOException {
+		byte tag = in.readByte();
+		switch(tag){
+		case tagWords:
+			return decodeWords(in);
+		case tagCounts:
+			return decodeCounts(in);
+		case tagAddress:
+			byte[] address = new byte[in.readUnsignedByte()];
+			in.readFully(address);
+			return InetAddress.getByAddress(address);
+		case tagShard:
+			long shardChunkId = Varint.readLong(in) - 1;
+			int shard = Varint.readInt(in);
+			int shards = Varint.readInt(in);
+			return new CountShard(shardChunkId, shard, shards, decodeCounts(in));
+		case tagChunk:
+			long chunkId = Varint.readLong(in);
+			long jobId = Varint.readLong(in);
+			int attempt = Varint.readInt(in);
+			int summaryCapacity = Varint.readInt(in);
+			SketchSpec spec = decodeSpec(in);
+			return new WordChunk(chunkId, jobId, attempt, summaryCapacity, spec, decodeWords(in));
+		case tagAck:
+			long ackedId = Varint.readLong(in);
+			int ackedAttempt = Varint.readInt(in);
+			boolean cancelled = in.readBoolean();
+			boolean held = in.readBoolean();
+			return new ChunkAck(ackedId, ackedAttempt, cancelled, held, Varint.readInt(in));
+		case tagCommit:
+			long committedId = Varint.readLong(in);
+			int committedAttempt = Varint.readInt(in);
+			return new ChunkCommit(committedId, committedAttempt, in.readBoolean());
+		case tagCollect:
+			long collectedJob = Varint.readLong(in);
+			int collectSource = Varint.readInt(in);
+			return new JobCollect(collectedJob, collectSource, Varint.readInt(in));
+		case tagResult:
+			long resultJob = Varint.readLong(in);
+			int resultSource = Varint.readInt(in);
+			int part = Varint.readInt(in);
+			int parts = Varint.readInt(in);
+			long total = Varint.readLong(in);
+			return new JobResult(resultJob, resultSource, part, parts, total, decodeCounts(in));
+		case tagSketch:
+			long sketchJob = Varint.readLong(in);
+			int sketchSource = Varint.readInt(in);
+			return new JobSketch(sketchJob, sketchSource, decodeSketch(in));
+		case tagSerialized:
+			return this.fallback.decode(in);
+		default:
+			throw new IOException("Error: unknown message tag " + tag);
+		}
+	}
+
+	private static void encodeWords(String[] words, DataOutputStream out) throws IOException {
+		Varint.write(out, words.length);
+		for(String word : words){
+			if(word==null){
+				Varint.write(out, 0);
+			}
+			else{
+				byte[] bytes = word.getBytes(utf8);
+				Varint.write(out, bytes.length + 1);
+				out.write(bytes);
+			}
+		}
+	}
+
+	private static String[] decodeWords(DataInputStream in) throws IOException {
+		//Every word takes at least the byte of its length
+		String[] words = new String[readCount(in, 1)];
+		byte[] buffer = new byte[64];
+		for(int n = 0;n<words.length;n++){
+			int length = Varint.readInt(in);
+			if(length>0){
+				length -= 1;
+				checkRemaining(in, length);
+				if(buffer.length<length)
+					buffer = new byte[Math.max(length, buffer.length * 2)];
+				in.readFully(buffer, 0, length);
+				words[n] = new String(buffer, 0, length, utf8);
+			}
+		}
+		return words;
+	}
+
+	private static void encodeSpec(SketchSpec spec, DataOutputStream out) throws IOException {
+		if(spec==null){
+			Varint.write(out, 0);
+			return;
+		}
+		Varint.write(out, spec.getWidth());
+		Varint.write(out, spec.getDepth());
+		Varint.write(out, spec.getPrecision());
+	}
+
+	private static SketchSpec decodeSpec(DataInputStream in) throws IOException {
+		int width = Varint.readInt(in);
+		if(width==0)
+			return null;
+		int depth = Varint.readInt(in);
+		int precision = Varint.readInt(in);
+		try {
+			return new SketchSpec(width, depth, precision);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Error: invalid sketch spec: " + e.getMessage());
+		}
+	}
+
+	//Most counters of a sketch are small or 0, so take one or two bytes each as varints
+	private static void encodeSketch(WordSketch sketch, DataOutputStream out) throws IOException {
+		CountMinSketch counts = sketch.getCountMinSketch();
+		encodeSpec(sketch.getSpec(), out);
+		Varint.write(out, counts.getTotal());
+		for(long counter : counts.getCounters())
+			Varint.write(out, counter);
+		out.write(sketch.getHyperLogLog().getRegisters());
+	}
+
+	private static WordSketch decodeSketch(DataInputStream in) throws IOException {
+		SketchSpec spec = decodeSpec(in);
+		if(spec==null)
+			throw new IOException("Error: sketch without a spec");
+		long total = Varint.readLong(in);
+		long size = (long)spec.getWidth() * spec.getDepth();
+		if(size>maxSketchCounters)
+			throw new IOException("Error: sketch of " + size + " counters is too large!");
+		//Every counter takes at least a byte, and every register exactly one, so nothing is allocated for a
+		//sketch the message does not hold
+		checkRemaining(in, size + (1 << spec.getPrecision()));
+		WordSketch sketch = spec.newSketch();
+		long[] counters = new long[spec.getWidth() * spec.getDepth()];
+		for(int n = 0;n<counters.length;n++)
+			counters[n] = Varint.readLong(in);
+		sketch.getCountMinSketch().load(counters, total);
+		byte[] registers = new byte[1 << spec.getPrecision()];
+		in.readFully(registers);
+		sketch.getHyperLogLog().load(registers);
+		return sketch;
+	}
+
+	/**
+	 * Write the words and counts of a table, without a type tag
+	 * @param table Table to write
+	 * @param out Stream to write to
+	 * @throws IOException if writing fails
+	 */
+	public static void encodeCounts(WordCountTable table, final DataOutputStream out) throws IOException {
+		Varint.write(out, table.size());
+		//Visitors can not throw, so hold on to the first failure and rethrow it afterwards
+		final IOException[] failure = new IOException[1];
+		table.forEach(new WordCountTable.Visitor(){
+			@Override
+			public void visit(String word, long count) {
+				if(failure[0]!=null)
+					return;
+				try {
+					byte[] bytes = word.getBytes(utf8);
+					Varint.write(out, bytes.length);
+					out.write(bytes);
+					Varint.write(out, count);
+				} catch (IOException e) {
+					failure[0] = e;
+				}
+			}
+		});
+		if(failure[0]!=null)
+			throw failure[0];
+	}
+
+	/**
+	 * Read a table written by encodeCounts
+	 * @param in Stream to read from, whose available() is the number of bytes left in the message
+	 * @return The table read
+	 * @throws IOException if reading fails, or the table needs more bytes than remain
+	 */
+	public static WordCountTable decodeCounts(DataInputStream in) throws IOException {
+		//Every entry takes at least the bytes of its length and count
+		int size = readCount(in, 2);
+		WordCountTable table = new WordCountTable(size);
+		byte[] buffer = new byte[64];
+		for(int n = 0;n<size;n++){
+			int length = Varint.readInt(in);
+			checkRemaining(in, length);
+			if(buffer.length<length)
+				buffer = new byte[Math.max(length, buffer.length * 2)];
+			in.readFully(buffer, 0, length);
+			table.add(new String(buffer, 0, length, utf8), Varint.readLong(in));
+		}
+		return table;
+	}
+
+	//Read the number of elements that follow, each taking at least minBytes, so a corrupt or hostile count
+	//fails before anything is allocated for it. Messages are decoded from the bytes of a whole frame, so
+	//available() is exactly the number of bytes left in the message
+	private static int readCount(DataInputStream in, int minBytes) throws IOException {
+		int count = Varint.readInt(in);
+		checkRemaining(in, (long)count * minBytes);
+		return count;
+	}
+
+	private static void checkRemaining(DataInputStream in, long needed) throws IOException {
+		if(needed>in.available())
+			throw new IOException("Error: message needs " + needed + " more bytes, only " + in.available() + " remain!");
+	}
+
+}
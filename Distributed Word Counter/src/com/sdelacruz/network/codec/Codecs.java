@@ -0,0 +1,36 @@
+package com.sdelacruz.network.codec;
+
+/**
+ * Registry of the MessageCodecs known to this node, by wire id.
+ *
+ */
+public class Codecs {
+
+	private static final MessageCodec[] codecs = {
+		new JavaSerializationCodec(),
+		new BinaryCodec()
+	};
+
+	private Codecs(){
+	}
+
+	/**
+	 * Returns the codec used when none is specified
+	 * @return The default MessageCodec
+	 */
+	public static MessageCodec getDefault(){
+		return codecs[BinaryCodec.id];
+	}
+
+	/**
+	 * Returns the codec with a given wire id
+	 * @param id Wire id of the codec
+	 * @return The MessageCodec, or null if no codec has that id
+	 */
+	public static MessageCodec forId(byte id){
+		if(id<0||id>=codecs.length)
+			return null;
+		return codecs[id];
+	}
+
+}
@@ -0,0 +1,51 @@
+package com.sdelacruz.network.codec;
+
+import java.io.IOException;
+
+/**
+ * Interface defining a Compressor. A Compressor shrinks the payload of a frame as a single block, and
+ * restores it again, see FrameFormat. Which Compressor a connection uses is agreed when it is opened.
+ *
+ * Implementations must be safe to use from many threads at once, so one instance can be shared by
+ * every connection.
+ *
+ */
+public interface Compressor {
+
+	/**
+	 * Returns the id identifying this compressor on the wire. Ids must be unique, see Compressors.
+	 * @return Id of this compressor
+	 */
+	byte getId();
+
+	/**
+	 * Returns the most bytes compress() may need to write for a block of a given length
+	 * @param length Length of the block
+	 * @return Size of a destination which always fits the compressed block
+	 */
+	int maxCompressedLength(int length);
+
+	/**
+	 * Compress a block of bytes
+	 * @param src Bytes to compress
+	 * @param srcOff Offset of the block in src
+	 * @param length Length of the block
+	 * @param dst Destination of the compressed block, with at least maxCompressedLength(length) bytes from dstOff
+	 * @param dstOff Offset to write the compressed block at
+	 * @return Length of the compressed block
+	 */
+	int compress(byte[] src, int srcOff, int length, byte[] dst, int dstOff);
+
+	/**
+	 * Restore a compressed block
+	 * @param src Compressed bytes
+	 * @param srcOff Offset of the compressed block in src
+	 * @param length Length of the compressed block
+	 * @param dst Destination of the restored block
+	 * @param dstOff Offset to write the restored block at
+	 * @param originalLength Length of the block before it was compressed
+	 * @throws IOException if the compressed block is invalid, or does not restore to originalLength bytes
+	 */
+	void decompress(byte[] src, int srcOff, int length, byte[] dst, int dstOff, int originalLength) throws IOException;
+
+}
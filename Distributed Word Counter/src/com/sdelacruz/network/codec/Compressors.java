@@ -0,0 +1,40 @@
+package com.sdelacruz.network.codec;
+
+/**
+ * Registry of the Compressors known to this node, by wire id. Id 0 stands for no compression.
+ *
+ */
+public class Compressors {
+
+	public static final byte none = 0;
+
+	private static final Compressor[] compressors = {
+		null,
+		new DeflateCompressor(),
+		new LZ4Compressor()
+	};
+
+	private Compressors(){
+	}
+
+	/**
+	 * Returns the compressor with a given wire id
+	 * @param id Wire id of the compressor
+	 * @return The Compressor, or null if no compressor has that id, or the id is none
+	 */
+	public static Compressor forId(byte id){
+		if(id<0||id>=compressors.length)
+			return null;
+		return compressors[id];
+	}
+
+	/**
+	 * Returns the wire id of a compressor
+	 * @param compressor A Compressor, or null for no compression
+	 * @return Wire id of the compressor, or none
+	 */
+	public static byte idOf(Compressor compressor){
+		return compressor==null ? none : compressor.getId();
+	}
+
+}
@@ -0,0 +1,48 @@
+package com.sdelacruz.network.codec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * MessageCodec using standard Java serialization. Handles any Serializable message, at the cost of
+ * writing class descriptors with every message. Kept as a fallback for peers which do not support
+ * BinaryCodec, and used by BinaryCodec itself for message types it has no compact encoding for.
+ *
+ */
+public class JavaSerializationCodec implements MessageCodec {
+
+	public static final byte id = 0;
+
+	@Override
+	public byte getId() {
+		return id;
+	}
+
+	@Override
+	public void encode(Object o, DataOutputStream out) throws IOException {
+		if(!(o instanceof Serializable))
+			throw new NotSerializableException(o==null ? "null" : o.getClass().getName());
+		ObjectOutputStream oos = new ObjectOutputStream(out);
+		oos.writeObject(o);
+		oos.flush();
+	}
+
+	@Override
+	public Object decode(DataInputStream in) throws IOException {
+		ObjectInputStream ois = new ObjectInputStream(in);
+		try {
+			return ois.readObject();
+		} catch (ClassNotFoundException e) {
+			InvalidClassException ice = new InvalidClassException(e.getMessage());
+			ice.initCause(e);
+			throw ice;
+		}
+	}
+
+}
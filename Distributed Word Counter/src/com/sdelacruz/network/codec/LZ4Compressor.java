@@ -0,0 +1,186 @@
+package com.sdelacruz.network.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compressor writing the LZ4 block format, so its blocks can be read by any LZ4 implementation.
+ * Matches are found greedily through a hash table of the last position each 4 byte sequence was seen at,
+ * which finds most of the repetition in text for a fraction of the cost of DeflateCompressor.
+ *
+ * A block is a series of sequences, each a token byte holding the literal length and match length,
+ * the literal bytes, a 2 byte little endian offset back to the match, and the match length, with lengths
+ * of 15 or more continued in following bytes. The last sequence holds only literals.
+ *
+ */
+public class LZ4Compressor implements Compressor {
+
+	public static final byte id = 2;
+
+	private static final int minMatch = 4;
+	//The last 5 bytes are always literals, and the last match starts at least 12 bytes from the end
+	private static final int lastLiterals = 5;
+	private static final int matchFindLimit = 12;
+	private static final int maxOffset = 65535;
+	private static final int hashLog = 14;
+	//Search ever more coarsely through bytes which do not match, so incompressible blocks pass quickly
+	private static final int skipTrigger = 6;
+
+	private final ThreadLocal<int[]> tables = new ThreadLocal<int[]>(){
+		@Override
+		protected int[] initialValue(){
+			return new int[1 << hashLog];
+		}
+	};
+
+	@Override
+	public byte getId() {
+		return id;
+	}
+
+	@Override
+	public int maxCompressedLength(int length) {
+		return length + length/255 + 16;
+	}
+
+	@Override
+	public int compress(byte[] src, int srcOff, int length, byte[] dst, int dstOff) {
+		//Positions are stored one past their offset from srcOff, so 0 is never seen
+		int[] table = this.tables.get();
+		Arrays.fill(table, 0);
+
+		int end = srcOff + length;
+		int matchLimit = end - lastLiterals;
+		int searchLimit = end - matchFindLimit;
+		int anchor = srcOff;
+		int op = dstOff;
+		int ip = srcOff;
+		int misses = 1 << skipTrigger;
+
+		while(ip<searchLimit){
+			int sequence = getInt(src, ip);
+			int h = hash(sequence);
+			int ref = srcOff + table[h] - 1;
+			table[h] = ip - srcOff + 1;
+			if(ref<srcOff || ip-ref>maxOffset || getInt(src, ref)!=sequence){
+				ip += misses++ >>> skipTrigger;
+				continue;
+			}
+			misses = 1 << skipTrigger;
+
+			//Extend the match back over equal literals, then forward
+			while(ip>anchor && ref>srcOff && src[ip-1]==src[ref-1]){
+				ip--;
+				ref--;
+			}
+			int matchLength = minMatch;
+			while(ip+matchLength<matchLimit && src[ip+matchLength]==src[ref+matchLength])
+				matchLength++;
+
+			int token = op;
+			op = writeSequence(src, anchor, ip-anchor, dst, op);
+			dst[op++] = (byte)(ip-ref);
+			dst[op++] = (byte)((ip-ref) >>> 8);
+			if(matchLength-minMatch>=15){
+				dst[token] |= 0x0F;
+				op = writeExtension(matchLength-minMatch-15, dst, op);
+			} else {
+				dst[token] |= matchLength-minMatch;
+			}
+
+			ip += matchLength;
+			anchor = ip;
+			if(ip-2>=srcOff && ip<searchLimit)
+				table[hash(getInt(src, ip-2))] = ip - 2 - srcOff + 1;
+		}
+
+		return writeSequence(src, anchor, end-anchor, dst, op) - dstOff;
+	}
+
+	@Override
+	public void decompress(byte[] src, int srcOff, int length, byte[] dst, int dstOff, int originalLength) throws IOException {
+		int ip = srcOff;
+		int end = srcOff + length;
+		int op = dstOff;
+		int outEnd = dstOff + originalLength;
+		try {
+			while(ip<end){
+				int token = src[ip++] & 0xFF;
+
+				int literals = token >>> 4;
+				if(literals==15){
+					int b;
+					do {
+						b = src[ip++] & 0xFF;
+						literals += b;
+					} while(b==255);
+				}
+				if(ip+literals>end || op+literals>outEnd)
+					throw new IOException("Error: LZ4 literals overrun the block!");
+				System.arraycopy(src, ip, dst, op, literals);
+				ip += literals;
+				op += literals;
+				if(ip==end)
+					break;
+
+				int offset = (src[ip] & 0xFF) | (src[ip+1] & 0xFF) << 8;
+				ip += 2;
+				int matchLength = token & 0x0F;
+				if(matchLength==15){
+					int b;
+					do {
+						b = src[ip++] & 0xFF;
+						matchLength += b;
+					} while(b==255);
+				}
+				matchLength += minMatch;
+				int ref = op - offset;
+				if(offset==0 || ref<dstOff || op+matchLength>outEnd)
+					throw new IOException("Error: LZ4 match overruns the block!");
+				if(offset>=matchLength)
+					System.arraycopy(dst, ref, dst, op, matchLength);
+				else
+					//Overlapping matches repeat the bytes just written
+					for(int n = 0;n<matchLength;n++)
+						dst[op+n] = dst[ref+n];
+				op += matchLength;
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Error: truncated LZ4 block!", e);
+		}
+		if(op!=outEnd)
+			throw new IOException("Error: LZ4 block restores to the wrong length!");
+	}
+
+	//Write a token with its literal length, and the literals, leaving the match length to the caller
+	private static int writeSequence(byte[] src, int from, int literals, byte[] dst, int op){
+		int token = op;
+		op++;
+		if(literals>=15){
+			dst[token] = (byte)0xF0;
+			op = writeExtension(literals-15, dst, op);
+		} else {
+			dst[token] = (byte)(literals << 4);
+		}
+		System.arraycopy(src, from, dst, op, literals);
+		return op + literals;
+	}
+
+	private static int writeExtension(int length, byte[] dst, int op){
+		while(length>=255){
+			dst[op++] = (byte)255;
+			length -= 255;
+		}
+		dst[op++] = (byte)length;
+		return op;
+	}
+
+	private static int hash(int sequence){
+		return (sequence * -1640531535) >>> (32 - hashLog);
+	}
+
+	private static int getInt(byte[] b, int off){
+		return (b[off] & 0xFF) | (b[off+1] & 0xFF) << 8 | (b[off+2] & 0xFF) << 16 | (b[off+3] & 0xFF) << 24;
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.sdelacruz.network.codec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Interface defining a MessageCodec. A MessageCodec turns the Objects passed between Senders and
+ * Receivers into bytes and back again. Each message is encoded on its own, the framing of messages
+ * on a connection is left to the Sender and Receiver.
+ *
+ * Implementations must be stateless, so one instance can be shared by every connection.
+ *
+ */
+public interface MessageCodec {
+
+	/**
+	 * Returns the id identifying this codec on the wire. Ids must be unique, see Codecs.
+	 * @return Id of this codec
+	 */
+	byte getId();
+
+	/**
+	 * Encode a single message
+	 * @param o Message to encode
+	 * @param out Stream to write the encoded message to
+	 * @throws IOException if the message can not be encoded
+	 */
+	void encode(Object o, DataOutputStream out) throws IOException;
+
+	/**
+	 * Decode a single message
+	 * @param in Stream holding exactly one encoded message
+	 * @return The decoded message
+	 * @throws IOException if the message can not be decoded
+	 */
+	Object decode(DataInputStream in) throws IOException;
+
+}
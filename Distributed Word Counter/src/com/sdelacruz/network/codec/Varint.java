@@ -0,0 +1,62 @@
+package com.sdelacruz.network.codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Helper methods for writing and reading unsigned variable length integers, 7 bits per byte with the
+ * high bit set on every byte but the last. Small values, such as word lengths and most counts, take
+ * a single byte.
+ *
+ */
+public class Varint {
+
+	private Varint(){
+	}
+
+	/**
+	 * Write a non-negative value as a varint
+	 * @param out Output to write to
+	 * @param value Value to write
+	 * @throws IOException if writing fails
+	 */
+	public static void write(DataOutput out, long value) throws IOException {
+		while((value & ~0x7FL)!=0){
+			out.writeByte((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int)value);
+	}
+
+	/**
+	 * Read a varint
+	 * @param in Input to read from
+	 * @return The value read
+	 * @throws IOException if reading fails, or the varint is longer than 64 bits
+	 */
+	public static long readLong(DataInput in) throws IOException {
+		long value = 0;
+		for(int shift = 0;shift<64;shift += 7){
+			int b = in.readByte();
+			value |= (long)(b & 0x7F) << shift;
+			if((b & 0x80)==0)
+				return value;
+		}
+		throw new IOException("Error: malformed varint!");
+	}
+
+	/**
+	 * Read a varint which must fit in a non-negative int
+	 * @param in Input to read from
+	 * @return The value read
+	 * @throws IOException if reading fails, or the value does not fit in an int
+	 */
+	public static int readInt(DataInput in) throws IOException {
+		long value = readLong(in);
+		if(value<0||value>Integer.MAX_VALUE)
+			throw new IOException("Error: varint out of range: " + value);
+		return (int)value;
+	}
+
+}
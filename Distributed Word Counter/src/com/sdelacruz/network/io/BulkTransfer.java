@@ -0,0 +1,39 @@
+package com.sdelacruz.network.io;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A message sent along with a range of raw bytes, such as a segment of a file.
+ * The message itself is encoded by the connection's MessageCodec as usual, and the bytes are written
+ * after it straight to the connection's channel, see FrameFormat. A segment of a file can then be sent
+ * with FileChannel.transferTo(), without its bytes ever being copied into the sending process.
+ *
+ * The Receiver reads the bytes into a buffer of their own, and hands them to the decoded message.
+ *
+ */
+public interface BulkTransfer extends Serializable {
+
+	/**
+	 * Returns the number of bytes sent along with this message
+	 * @return Number of bytes, or -1 if this message has none and is sent like any other
+	 */
+	long getBulkLength();
+
+	/**
+	 * Write every byte sent along with this message to a channel
+	 * @param channel Channel of the connection, in blocking mode
+	 * @throws IOException if the bytes can not be read, or written
+	 */
+	void transferBulk(WritableByteChannel channel) throws IOException;
+
+	/**
+	 * Returns the message to deliver once this message and its bytes have been received
+	 * @param bytes Bytes received, from position 0 to the limit, which are not used again by the Receiver
+	 * @return The message holding the bytes
+	 */
+	Object withBulk(ByteBuffer bytes);
+
+}
@@ -0,0 +1,51 @@
+package com.sdelacruz.network.io;
+
+import com.sdelacruz.metrics.Counter;
+import com.sdelacruz.metrics.Histogram;
+import com.sdelacruz.metrics.MetricsRegistry;
+
+/**
+ * Metrics recorded by the connections of a Sender or Receiver, shared by every connection on its port.
+ * Bytes count everything written to or read from the socket, frame headers and bulk bytes included.
+ * Codec time is the time taken to encode or decode each frame's messages, and compression time the time
+ * taken to compress or restore each compressed payload. Restoring a payload is part of decoding its frame,
+ * so decode time includes it.
+ *
+ */
+class ConnectionMetrics {
+
+	final Counter bytes;
+	final Counter objects;
+	final Histogram codecNanos;
+	final Histogram compressionNanos;
+	//Bytes compression kept off the wire, null when receiving
+	final Counter bytesSaved;
+
+	private ConnectionMetrics(String prefix, String direction, String codec, String compression, boolean sending){
+		MetricsRegistry registry = MetricsRegistry.getDefault();
+		this.bytes = registry.counter(prefix + "bytes" + direction);
+		this.objects = registry.counter(prefix + "objects" + direction);
+		this.codecNanos = registry.histogram(prefix + codec + "Nanos");
+		this.compressionNanos = registry.histogram(prefix + compression + "Nanos");
+		this.bytesSaved = sending ? registry.counter(prefix + "compressionBytesSaved") : null;
+	}
+
+	/**
+	 * Returns the metrics of the Senders on a port
+	 * @param port Port sent to
+	 * @return Metrics named sender.port.*
+	 */
+	static ConnectionMetrics forSender(int port){
+		return new ConnectionMetrics("sender." + port + ".", "Sent", "encode", "compress", true);
+	}
+
+	/**
+	 * Returns the metrics of the Receivers on a port
+	 * @param port Port received on
+	 * @return Metrics named receiver.port.*
+	 */
+	static ConnectionMetrics forReceiver(int port){
+		return new ConnectionMetrics("receiver." + port + ".", "Received", "decode", "decompress", false);
+	}
+
+}
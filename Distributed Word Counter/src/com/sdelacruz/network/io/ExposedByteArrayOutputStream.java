@@ -0,0 +1,24 @@
+package com.sdelacruz.network.io;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * ByteArrayOutputStream giving access to its internal buffer, so encoded messages can be written out
+ * or reused without being copied.
+ *
+ */
+class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+
+	ExposedByteArrayOutputStream(int size){
+		super(size);
+	}
+
+	/**
+	 * Returns the internal buffer. Only the first size() bytes are valid.
+	 * @return The internal buffer
+	 */
+	byte[] buffer(){
+		return this.buf;
+	}
+
+}
@@ -0,0 +1,139 @@
+package com.sdelacruz.network.io;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import com.sdelacruz.network.codec.Codecs;
+import com.sdelacruz.network.codec.Compressor;
+import com.sdelacruz.network.codec.Compressors;
+import com.sdelacruz.network.codec.MessageCodec;
+
+/**
+ * Constants and helper methods describing how messages are framed on a connection between a Sender
+ * and a Receiver.
+ *
+ * A connection starts with a header: a magic int, a version byte, the id of the MessageCodec used
+ * for every message on the connection and the id of the Compressor the Sender would like to use, see
+ * Compressors. Messages then follow in frames: an int payload length, a flags
+ * byte and the payload. The payload of a plain frame is a single message encoded by the codec. The payload
+ * of a batch frame is an int count of messages, then each message as an int length and its encoding, so
+ * many small messages can be coalesced into one write. The payload of a bulk frame is an int length and
+ * a BulkTransfer message encoded by the codec, then the raw bytes sent along with it.
+ *
+ * Once the Receiver has read the header, it writes back a single byte: the id of the Compressor it accepts,
+ * which is the one asked for if the Receiver knows it, and none otherwise. Any plain or batch frame may then
+ * have its payload compressed by the accepted Compressor, marked by the compressed bit of its flags. A
+ * compressed payload is the int length of the original payload, then the compressed block. Bulk frames are
+ * never compressed, their bytes go straight from the file to the channel.
+ *
+ * Neither a payload nor the original length of a compressed payload may exceed maxFrameBytes. A Receiver
+ * closes any connection whose peer sends a larger one, rather than allocating whatever the peer asks for.
+ *
+ * Messages are flow controlled by credits. The Receiver writes back an int credit grant as soon as it accepts
+ * the connection, ahead of the Compressor it accepts, and another each time Objects received over it have been
+ * polled, each allowing that many more messages to be sent. The Sender only writes a frame while it holds a
+ * credit for every message in it.
+ *
+ */
+class FrameFormat {
+
+	static final int magic = 0x57434E54;
+	static final byte version = 5;
+
+	//Bytes in the connection header, and in the length and flags preceding each payload
+	static final int headerLength = 7;
+	static final int frameHeaderLength = 5;
+	static final int creditGrantLength = 4;
+
+	//Bytes of the count preceding a batch, and of the length preceding each message in it
+	static final int batchHeaderLength = 4;
+	static final int batchEntryHeaderLength = 4;
+	//Bytes of the length preceding the message of a bulk frame
+	static final int bulkHeaderLength = 4;
+	//Bytes of the original length preceding a compressed payload
+	static final int compressedHeaderLength = 4;
+	//A batch is closed once its payload reaches this size, so a single frame never grows without bound
+	static final int maxBatchBytes = 64 * 1024;
+	//Largest payload accepted, well above the largest chunk of words or bytes a WorkScheduler cuts
+	static final int maxFrameBytes = 64 * 1024 * 1024;
+
+	//Flags of a frame holding a single message
+	static final byte plain = 0;
+	//Flags of a frame holding a batch of messages
+	static final byte batch = 1;
+	//Flags of a frame holding a message and the raw bytes sent along with it
+	static final byte bulk = 2;
+	//Flag bit set on a plain or batch frame whose payload is compressed
+	static final byte compressed = 0x40;
+
+	private FrameFormat(){
+	}
+
+	/**
+	 * Read a big-endian int from a byte array, as written by DataOutputStream.writeInt()
+	 * @param b Bytes to read from
+	 * @param off Offset of the first byte of the int
+	 * @return The int read
+	 */
+	static int getInt(byte[] b, int off){
+		return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+	}
+
+	/**
+	 * Write a big-endian int into a byte array, as DataOutputStream.writeInt() would
+	 * @param b Bytes to write to
+	 * @param off Offset of the first byte of the int
+	 * @param v The int to write
+	 */
+	static void putInt(byte[] b, int off, int v){
+		b[off] = (byte)(v >>> 24);
+		b[off + 1] = (byte)(v >>> 16);
+		b[off + 2] = (byte)(v >>> 8);
+		b[off + 3] = (byte)v;
+	}
+
+	/**
+	 * Write the header starting a connection
+	 * @param out Stream to write to
+	 * @param codec Codec used for every message on the connection
+	 * @param compressor Compressor the Sender would like to use, or null for none
+	 * @throws IOException if writing fails
+	 */
+	static void writeHeader(DataOutputStream out, MessageCodec codec, Compressor compressor) throws IOException {
+		out.writeInt(magic);
+		out.writeByte(version);
+		out.writeByte(codec.getId());
+		out.writeByte(Compressors.idOf(compressor));
+	}
+
+	/**
+	 * Read the header starting a connection, up to the Compressor asked for, see readCompressor()
+	 * @param in Stream to read from
+	 * @return The codec used for every message on the connection
+	 * @throws IOException if the header is invalid, or names an unknown codec
+	 */
+	static MessageCodec readHeader(DataInputStream in) throws IOException {
+		if(in.readInt()!=magic)
+			throw new IOException("Error: connection does not start with a valid header!");
+		byte v = in.readByte();
+		if(v!=version)
+			throw new IOException("Error: unsupported frame version " + v);
+		byte id = in.readByte();
+		MessageCodec codec = Codecs.forId(id);
+		if(codec==null)
+			throw new IOException("Error: unknown codec " + id);
+		return codec;
+	}
+
+	/**
+	 * Read the Compressor asked for at the end of the header starting a connection
+	 * @param in Stream to read from, just after readHeader()
+	 * @return The Compressor to accept, or null if none was asked for, or it is not known to this node
+	 * @throws IOException if reading fails
+	 */
+	static Compressor readCompressor(DataInputStream in) throws IOException {
+		return Compressors.forId(in.readByte());
+	}
+
+}
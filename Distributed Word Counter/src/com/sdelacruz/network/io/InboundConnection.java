@@ -0,0 +1,304 @@
+package com.sdelacruz.network.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sdelacruz.network.codec.Compressor;
+import com.sdelacruz.network.codec.Compressors;
+import com.sdelacruz.network.codec.MessageCodec;
+
+/**
+ * Class depicting one connection accepted by a Receiver.
+ * Bytes are handed to the connection as they arrive, in whatever pieces the network delivers them, and
+ * are collected into the connection header and then into frames, see FrameFormat. Each frame is decoded
+ * as soon as its last byte arrives, into one Object, or every Object of a batch. The raw bytes of a bulk
+ * frame are handed to its BulkTransfer message in place, so are not copied again. Compressed frames are
+ * first restored into a buffer kept for that, using the Compressor accepted from the header.
+ *
+ * Decoded Objects are held by the connection until the Receiver has room for them. The Receiver grants the
+ * Sender a credit for each Object it passed on once it is polled, so no more than the credits granted are
+ * ever held, see FrameFormat.
+ *
+ * A connection is only ever used by the Receiver's selector thread, apart from returned().
+ */
+class InboundConnection {
+
+	//Payload buffers grown beyond this are released once their message is decoded
+	private static final int maxRetainedPayload = 64 * 1024;
+
+	private final SocketChannel channel;
+	private final ConnectionMetrics metrics;
+	private MessageCodec codec = null;
+	private Compressor compressor = null;
+
+	//Connection header, then the length and flags of each frame
+	private final byte[] prefix = new byte[FrameFormat.headerLength];
+	private int prefixRead = 0;
+
+	private byte[] payload = new byte[4096];
+	private int length = -1;
+	private byte flags;
+	private int payloadRead = 0;
+	//Compressed payloads are restored into this
+	private byte[] restored = new byte[0];
+
+	//Objects decoded and not yet taken by the Receiver
+	private final ArrayDeque<Object> decoded = new ArrayDeque<Object>();
+	//Objects polled from the Receiver since credits were last granted for them
+	private final AtomicInteger returned = new AtomicInteger();
+	//Credit grants not yet written to the channel
+	private final ByteBuffer grants = ByteBuffer.allocate(16 * FrameFormat.creditGrantLength);
+
+	/**
+	 * Constructs an InboundConnection
+	 * @param channel Channel accepted by the Receiver
+	 * @param metrics Metrics to record decoding time in
+	 */
+	InboundConnection(SocketChannel channel, ConnectionMetrics metrics){
+		this.channel = channel;
+		this.metrics = metrics;
+		this.grants.flip();
+	}
+
+	SocketChannel getChannel(){
+		return this.channel;
+	}
+
+	/**
+	 * Collect the bytes remaining in a buffer, decoding every frame they complete
+	 * @param buf Bytes read from the connection, which are all consumed
+	 * @return Number of Objects decoded, held until taken with takeDecoded(). Once the header has been read
+	 * the accepted Compressor is queued with the credit grants, see hasPendingGrants()
+	 * @throws IOException if the header or a frame is invalid, or can not be decoded
+	 */
+	int consume(ByteBuffer buf) throws IOException {
+		int decoded = 0;
+		while(buf.hasRemaining()){
+			if(this.codec==null){
+				if(fillPrefix(buf, FrameFormat.headerLength)){
+					DataInputStream header = new DataInputStream(new ByteArrayInputStream(this.prefix));
+					this.codec = FrameFormat.readHeader(header);
+					this.compressor = FrameFormat.readCompressor(header);
+					acceptCompressor();
+					this.prefixRead = 0;
+				}
+			}
+			else if(this.length<0){
+				if(fillPrefix(buf, FrameFormat.frameHeaderLength)){
+					int l = FrameFormat.getInt(this.prefix, 0);
+					if(l<0 || l>FrameFormat.maxFrameBytes)
+						throw new IOException("Error: invalid frame length " + l);
+					if(this.payload.length<l)
+						this.payload = new byte[Math.max(l, this.payload.length * 2)];
+					this.length = l;
+					this.flags = this.prefix[4];
+					this.payloadRead = 0;
+					this.prefixRead = 0;
+				}
+			}
+			else {
+				int n = Math.min(buf.remaining(), this.length - this.payloadRead);
+				buf.get(this.payload, this.payloadRead, n);
+				this.payloadRead += n;
+			}
+
+			if(this.length>=0 && this.payloadRead==this.length){
+				long start = System.nanoTime();
+				decoded += decodeFrame();
+				this.metrics.codecNanos.recordSince(start);
+				if(this.payload.length>maxRetainedPayload)
+					this.payload = new byte[4096];
+				if(this.restored.length>maxRetainedPayload)
+					this.restored = new byte[0];
+				this.length = -1;
+			}
+		}
+		return decoded;
+	}
+
+	/**
+	 * Returns the oldest Object decoded and not yet taken, without taking it
+	 * @return An Object, or null if none is held
+	 */
+	Object peekDecoded(){
+		return this.decoded.peek();
+	}
+
+	/**
+	 * Take the oldest Object decoded, once the Receiver has room for it
+	 */
+	void takeDecoded(){
+		this.decoded.poll();
+	}
+
+	/**
+	 * Record that an Object received over this connection has been polled, from any thread
+	 * @return Number of Objects polled since credits were last granted
+	 */
+	int returned(){
+		return this.returned.incrementAndGet();
+	}
+
+	/**
+	 * Grant the Sender a credit for each Object polled since the last grant, plus any extra credits
+	 * @param extra Credits to grant beyond those returned, such as the initial credits of the connection
+	 * @return true if every grant has been written, false if the channel must be written to again once writable
+	 * @throws IOException if the grant can not be written
+	 */
+	boolean grant(int extra) throws IOException {
+		int credits = this.returned.getAndSet(0) + extra;
+		if(credits>0){
+			this.grants.compact();
+			if(this.grants.remaining()>=FrameFormat.creditGrantLength){
+				this.grants.putInt(credits);
+			}
+			else{
+				//Fold the new credits into the last grant still waiting to be written
+				int last = this.grants.position() - FrameFormat.creditGrantLength;
+				this.grants.putInt(last, this.grants.getInt(last) + credits);
+			}
+			this.grants.flip();
+		}
+		return flushGrants();
+	}
+
+	/**
+	 * Returns whether any grant, or the accepted Compressor, is still to be written
+	 * @return true if flushGrants() has anything to write
+	 */
+	boolean hasPendingGrants(){
+		return this.grants.hasRemaining();
+	}
+
+	/**
+	 * Write as much of the pending credit grants as the channel takes without blocking
+	 * @return true if every grant has been written
+	 * @throws IOException if the grant can not be written
+	 */
+	boolean flushGrants() throws IOException {
+		this.channel.write(this.grants);
+		return !this.grants.hasRemaining();
+	}
+
+	/**
+	 * Returns whether the connection is between frames and holds no decoded Objects, so closing it would not lose an Object
+	 * @return true if no frame has been partly received, and every decoded Object has been taken
+	 */
+	boolean isIdle(){
+		return this.length<0 && this.prefixRead==0 && this.decoded.isEmpty();
+	}
+
+	/**
+	 * Close the connection, ignoring any error
+	 */
+	void close(){
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	//Queue the id of the accepted Compressor, behind the initial credits granted on accept
+	private void acceptCompressor(){
+		this.grants.compact();
+		this.grants.put(Compressors.idOf(this.compressor));
+		this.grants.flip();
+	}
+
+	//Decode the frame just completed, returning the number of Objects it held
+	private int decodeFrame() throws IOException {
+		if((this.flags & FrameFormat.compressed)!=0)
+			return decodeCompressed();
+		if(this.flags==FrameFormat.plain){
+			this.decoded.add(decode(this.payload, 0, this.length));
+			return 1;
+		}
+		if(this.flags==FrameFormat.bulk){
+			this.decoded.add(decodeBulk());
+			return 1;
+		}
+		if(this.flags!=FrameFormat.batch)
+			throw new IOException("Error: unknown frame flags " + this.flags);
+		return decodeBatch(this.payload, this.length);
+	}
+
+	//Restore a compressed payload, then decode it as the frame it was compressed from
+	private int decodeCompressed() throws IOException {
+		if(this.compressor==null)
+			throw new IOException("Error: compressed frame on a connection without a compressor!");
+		if(this.length<FrameFormat.compressedHeaderLength)
+			throw new IOException("Error: truncated compressed frame!");
+		int l = FrameFormat.getInt(this.payload, 0);
+		if(l<0 || l>FrameFormat.maxFrameBytes)
+			throw new IOException("Error: invalid original length " + l + " of compressed frame!");
+		if(this.restored.length<l)
+			this.restored = new byte[Math.max(l, this.restored.length * 2)];
+		long start = System.nanoTime();
+		this.compressor.decompress(this.payload, FrameFormat.compressedHeaderLength, this.length - FrameFormat.compressedHeaderLength, this.restored, 0, l);
+		this.metrics.compressionNanos.recordSince(start);
+
+		byte f = (byte)(this.flags & ~FrameFormat.compressed);
+		if(f==FrameFormat.plain){
+			this.decoded.add(decode(this.restored, 0, l));
+			return 1;
+		}
+		if(f!=FrameFormat.batch)
+			throw new IOException("Error: frame flags " + this.flags + " can not be compressed!");
+		return decodeBatch(this.restored, l);
+	}
+
+	//Decode every message of a batch payload
+	private int decodeBatch(byte[] b, int length) throws IOException {
+		if(length<FrameFormat.batchHeaderLength)
+			throw new IOException("Error: truncated batch frame!");
+		int count = FrameFormat.getInt(b, 0);
+		int off = FrameFormat.batchHeaderLength;
+		for(int i = 0;i<count;i++){
+			if(length - off<FrameFormat.batchEntryHeaderLength)
+				throw new IOException("Error: truncated batch frame!");
+			int l = FrameFormat.getInt(b, off);
+			off += FrameFormat.batchEntryHeaderLength;
+			if(l<0 || l>length - off)
+				throw new IOException("Error: invalid message length " + l + " in batch frame!");
+			this.decoded.add(decode(b, off, l));
+			off += l;
+		}
+		return count;
+	}
+	
+	//Decode the message of a bulk frame, and hand it the rest of the payload
+	private Object decodeBulk() throws IOException {
+		if(this.length<FrameFormat.bulkHeaderLength)
+			throw new IOException("Error: truncated bulk frame!");
+		int l = FrameFormat.getInt(this.payload, 0);
+		int off = FrameFormat.bulkHeaderLength;
+		if(l<0 || l>this.length - off)
+			throw new IOException("Error: invalid message length " + l + " in bulk frame!");
+		Object message = decode(this.payload, off, l);
+		if(!(message instanceof BulkTransfer))
+			throw new IOException("Error: bulk frame holds a " + message.getClass().getName() + "!");
+		off += l;
+		ByteBuffer bytes = ByteBuffer.wrap(this.payload, off, this.length - off).slice();
+		//The message keeps the payload buffer, the next frame is read into a new one
+		this.payload = new byte[4096];
+		return ((BulkTransfer)message).withBulk(bytes);
+	}
+	
+	private Object decode(byte[] b, int off, int len) throws IOException {
+		return this.codec.decode(new DataInputStream(new ByteArrayInputStream(b, off, len)));
+	}
+
+	private boolean fillPrefix(ByteBuffer buf, int needed){
+		int n = Math.min(buf.remaining(), needed - this.prefixRead);
+		buf.get(this.prefix, this.prefixRead, n);
+		this.prefixRead += n;
+		return this.prefixRead==needed;
+	}
+
+}
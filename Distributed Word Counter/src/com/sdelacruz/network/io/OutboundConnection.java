@@ -0,0 +1,260 @@
+package com.sdelacruz.network.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+
+import com.sdelacruz.network.codec.Compressor;
+import com.sdelacruz.network.codec.Compressors;
+import com.sdelacruz.network.codec.MessageCodec;
+
+/**
+ * Class depicting a long lived connection from a Sender to one destination.
+ * Many Objects are written over the same Socket, so the TCP handshake and connection header are only
+ * paid once per connection rather than once per Object. Each Object is encoded by the connection's
+ * MessageCodec. Objects written together are coalesced into batch frames, each written and flushed with a
+ * single write to the Socket, see FrameFormat. The bytes sent along with a BulkTransfer are written straight
+ * to the Socket's channel after its frame header, so a segment of a file is never copied into this process.
+ *
+ * Should the Receiver accept the Compressor asked for, a plain or batch frame whose payload reaches the
+ * compression threshold is compressed before it is written, unless compressing does not make it smaller.
+ * Small frames gain little from compression, and are written as they are.
+ *
+ * Each Object needs a credit granted by the Receiver, and a frame holds no more Objects than the credits
+ * held. Once they run out, write() blocks until the Receiver grants more, which it does as the Objects
+ * already sent are polled.
+ *
+ * A connection is only ever used by one SendTask at a time, see Sender.
+ */
+class OutboundConnection {
+
+	private final InetSocketAddress destination;
+	private final Socket socket;
+	private final DataOutputStream out;
+	//Credit grants written back by the Receiver
+	private final DataInputStream in;
+	private final MessageCodec codec;
+	//Compressor accepted by the Receiver, or null, and the smallest payload it is applied to
+	private final Compressor compressor;
+	private final int compressionThreshold;
+	private final ConnectionMetrics metrics;
+	//When encoding of the current frame started, from System.nanoTime()
+	private long frameStart;
+	private int credits = 0;
+	//Objects of the current write() flushed to the Socket so far
+	private int written = 0;
+	//Reused to encode each message before it is framed
+	private final ExposedByteArrayOutputStream encoded;
+	private final DataOutputStream encoder;
+	//Reused to hold each compressed frame
+	private byte[] compressed = new byte[0];
+	private volatile long lastUsed;
+
+	/**
+	 * Opens a new connection to a destination
+	 * @param destination Address and port to connect to
+	 * @param codec Codec to encode every message with
+	 * @param compressor Compressor to ask the Receiver for, or null not to compress
+	 * @param compressionThreshold Smallest payload, in bytes, to compress
+	 * @param metrics Metrics to record bytes and Objects written, and encoding time, in
+	 * @throws IOException if the connection can not be established, or the Receiver does not reply to its header
+	 */
+	OutboundConnection(InetSocketAddress destination, MessageCodec codec, Compressor compressor, int compressionThreshold, ConnectionMetrics metrics) throws IOException {
+		this.destination = destination;
+		this.metrics = metrics;
+		this.codec = codec;
+		this.encoded = new ExposedByteArrayOutputStream(4096);
+		this.encoder = new DataOutputStream(this.encoded);
+		//Opened as a channel, which bulk bytes are transferred to
+		SocketChannel channel = SocketChannel.open(destination);
+		this.socket = channel.socket();
+		try {
+			this.socket.setTcpNoDelay(true);
+			this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+			this.in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+			FrameFormat.writeHeader(this.out, this.codec, compressor);
+			this.out.flush();
+			this.metrics.bytes.add(FrameFormat.headerLength);
+			//The initial credits are granted on accept, ahead of the Compressor accepted
+			this.credits = this.in.readInt();
+			byte accepted = this.in.readByte();
+			this.compressor = accepted==Compressors.idOf(compressor) ? compressor : null;
+			this.compressionThreshold = compressionThreshold;
+		} catch (IOException e) {
+			this.socket.close();
+			throw e;
+		}
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * Write Objects to the connection in order, in as few frames as the credits granted allow
+	 * @param objects Objects to write
+	 * @throws IOException if the connection has failed, see getWritten() for how many Objects were written first
+	 */
+	void write(List<? extends Object> objects) throws IOException {
+		this.written = 0;
+		while(this.written<objects.size()){
+			awaitCredit();
+			int n = Math.min(this.credits, objects.size() - this.written);
+			Object next = objects.get(this.written);
+			if(next instanceof BulkTransfer && ((BulkTransfer)next).getBulkLength()>=0)
+				n = writeBulk((BulkTransfer)next);
+			else if(n==1)
+				n = writePlain(objects.get(this.written));
+			else
+				n = writeBatch(objects, this.written, n);
+			this.out.flush();
+			this.credits -= n;
+			this.written += n;
+			this.metrics.objects.add(n);
+			this.lastUsed = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Returns the number of Objects of the last write() which were flushed to the Socket, so that only the
+	 * rest need to be written again should it fail
+	 * @return Number of Objects written
+	 */
+	int getWritten(){
+		return this.written;
+	}
+
+	//Write one Object as a plain frame
+	private int writePlain(Object o) throws IOException {
+		startFrame(FrameFormat.plain);
+		this.codec.encode(o, this.encoder);
+		this.encoder.flush();
+		endFrame();
+		return 1;
+	}
+
+	//Write up to n Objects from the given index as one batch frame, stopping before any bulk transfer,
+	//returning how many were written
+	private int writeBatch(List<? extends Object> objects, int from, int n) throws IOException {
+		startFrame(FrameFormat.batch);
+		this.encoder.writeInt(0);
+		int count = 0;
+		while(count<n && this.encoded.size() - FrameFormat.frameHeaderLength<FrameFormat.maxBatchBytes
+				&& !(objects.get(from + count) instanceof BulkTransfer && ((BulkTransfer)objects.get(from + count)).getBulkLength()>=0)){
+			//Leave room for the length of the message, filled in once it is encoded
+			int start = this.encoded.size();
+			this.encoder.writeInt(0);
+			this.codec.encode(objects.get(from + count), this.encoder);
+			this.encoder.flush();
+			FrameFormat.putInt(this.encoded.buffer(), start, this.encoded.size() - start - FrameFormat.batchEntryHeaderLength);
+			count++;
+		}
+		FrameFormat.putInt(this.encoded.buffer(), FrameFormat.frameHeaderLength, count);
+		endFrame();
+		return count;
+	}
+
+	//Write a message as a bulk frame, then transfer its bytes
+	private int writeBulk(BulkTransfer o) throws IOException {
+		startFrame(FrameFormat.bulk);
+		this.encoder.writeInt(0);
+		this.codec.encode(o, this.encoder);
+		this.encoder.flush();
+		int headerLength = this.encoded.size() - FrameFormat.frameHeaderLength;
+		long length = (long)headerLength + o.getBulkLength();
+		if(length>Integer.MAX_VALUE)
+			throw new IOException("Error: " + o.getBulkLength() + " bytes is too many to send in one frame!");
+		FrameFormat.putInt(this.encoded.buffer(), FrameFormat.frameHeaderLength, headerLength - FrameFormat.bulkHeaderLength);
+		FrameFormat.putInt(this.encoded.buffer(), 0, (int)length);
+		this.metrics.codecNanos.recordSince(this.frameStart);
+		this.out.write(this.encoded.buffer(), 0, this.encoded.size());
+		//Everything buffered must reach the channel before the bytes which follow it
+		this.out.flush();
+		o.transferBulk(this.socket.getChannel());
+		this.metrics.bytes.add(this.encoded.size() + o.getBulkLength());
+		return 1;
+	}
+
+	//Frames are encoded whole, header included, so each goes to the Socket in one write
+	private void startFrame(byte flags) throws IOException {
+		this.frameStart = System.nanoTime();
+		this.encoded.reset();
+		this.encoder.writeInt(0);
+		this.encoder.writeByte(flags);
+	}
+
+	private void endFrame() throws IOException {
+		this.metrics.codecNanos.recordSince(this.frameStart);
+		int length = this.encoded.size() - FrameFormat.frameHeaderLength;
+		if(this.compressor!=null && length>=this.compressionThreshold && writeCompressed(length))
+			return;
+		FrameFormat.putInt(this.encoded.buffer(), 0, length);
+		this.out.write(this.encoded.buffer(), 0, this.encoded.size());
+		this.metrics.bytes.add(this.encoded.size());
+	}
+
+	//Write the encoded frame with its payload compressed, returns false if that would not make it smaller
+	private boolean writeCompressed(int length) throws IOException {
+		int off = FrameFormat.frameHeaderLength + FrameFormat.compressedHeaderLength;
+		int bound = off + this.compressor.maxCompressedLength(length);
+		if(this.compressed.length<bound)
+			this.compressed = new byte[Math.max(bound, this.compressed.length * 2)];
+		long start = System.nanoTime();
+		int n = this.compressor.compress(this.encoded.buffer(), FrameFormat.frameHeaderLength, length, this.compressed, off);
+		this.metrics.compressionNanos.recordSince(start);
+		if(n + FrameFormat.compressedHeaderLength>=length)
+			return false;
+		FrameFormat.putInt(this.compressed, 0, n + FrameFormat.compressedHeaderLength);
+		this.compressed[4] = (byte)(this.encoded.buffer()[4] | FrameFormat.compressed);
+		FrameFormat.putInt(this.compressed, FrameFormat.frameHeaderLength, length);
+		this.out.write(this.compressed, 0, off + n);
+		this.metrics.bytes.add(off + n);
+		this.metrics.bytesSaved.add(length - n - FrameFormat.compressedHeaderLength);
+		return true;
+	}
+
+	//Take up any grants already received, then block for one if no credit is left
+	private void awaitCredit() throws IOException {
+		while(this.in.available()>=FrameFormat.creditGrantLength)
+			this.credits += this.in.readInt();
+		if(this.credits>0)
+			return;
+		while(this.credits<=0)
+			this.credits += this.in.readInt();
+	}
+
+
+	InetSocketAddress getDestination(){
+		return this.destination;
+	}
+
+	/**
+	 * Returns whether this connection has been unused for at least a given time
+	 * @param idleMillis Idle time, in milliseconds
+	 * @param now Current time, in milliseconds
+	 * @return true if the connection has been idle for idleMillis or longer
+	 */
+	boolean isIdle(long idleMillis, long now){
+		return now - this.lastUsed >= idleMillis;
+	}
+
+	/**
+	 * Close the connection, ignoring any error
+	 */
+	void close(){
+		try {
+			this.out.close();
+		} catch (IOException e) {
+			//Already failed, nothing left to flush
+		}
+		try {
+			this.socket.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -1,89 +1,250 @@
 package com.sdelacruz.network.io;
 
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
+import com.sdelacruz.concurrent.DrainReport;
+import com.sdelacruz.concurrent.Lifecycle;
+import com.sdelacruz.concurrent.PoolDrainer;
+import com.sdelacruz.metrics.Counter;
+import com.sdelacruz.metrics.Gauge;
+import com.sdelacruz.metrics.MetricsRegistry;
+
 /**
  * Class depicting a Receiver object. When executed, will take requests to receive Objects
- * via InputStream from a Sender, and store them in a Queue which can be polled to retrieve them externally
- * a matching port.
- * 
- * The class ensures that no more than one Object is sent to the same destination at any given time,
- * and queues any clashing requests to a current connection.
- * 
- * To use: create instance of Sender, to a given port. Start the thread with .start().
- * To send an Object to a particular InetAddress, call .send(Object o, InetAddress dest).
- * 
+ * from Senders on a given port, and store them in a Queue which can be polled to retrieve them externally.
+ *
+ * Every connection is served by a single thread using a Selector and non-blocking SocketChannels, so
+ * any number of Senders can be connected at once and a slow Sender never holds up the others.
+ * Bytes are read into one shared direct ByteBuffer and collected per connection until a whole frame
+ * has arrived, see InboundConnection.
+ *
+ * Each accepted connection is read until the Sender closes it, so many Objects can be received
+ * over one connection. Objects are decoded with the MessageCodec named in the connection's header,
+ * see FrameFormat. Compressed frames are accepted with any Compressor known to this node.
+ *
+ * Received Objects are queued up to the Receiver's capacity, and each connection is flow controlled by
+ * credits, see FrameFormat: the Sender is granted a number of Objects up front, and granted one more for each
+ * Object polled. Credits are granted back a few at a time, so grants are not written for every Object.
+ * Should the queue still fill up, a connection's decoded Objects are held by the connection, and it is not
+ * read again until there is room for them, so the selector thread never blocks. Either way, a slow consumer
+ * slows its Senders down rather than being sent Objects without limit.
+ *
+ * Metrics are recorded under receiver.port.* in the default MetricsRegistry: bytes and Objects received,
+ * decode and decompression time per frame, connections accepted and failed, and gauges of the Objects queued
+ * and the connections blocked. A connection which fails, whether by an I/O error, an invalid frame or an
+ * Object which can not be decoded, is closed on its own, and the Receiver goes on serving the others.
+ *
+ * To use: create instance of Receiver, to a given port. Start the thread with .start().
+ * Received Objects are retrieved with .poll().
+ *
  * @author Sam Delacruz
  * @version 20-03-2013
  *
  */
-public class Receiver extends Thread {
-	
-	private final int maxThreads = 10;
-	private ServerSocket listen;
+public class Receiver extends Thread implements Lifecycle {
+
+	//How long the selector waits before checking whether the Receiver is draining
+	private static final int idleCheckMillis = 500;
+	//Connections waiting to be accepted, allows many workers to connect at once
+	private static final int acceptBacklog = 1024;
+	private static final int readBufferSize = 64 * 1024;
+	private static final int defaultCapacity = 1024;
+	private static final int defaultCredits = 64;
+
+	private Selector selector;
+	private ServerSocketChannel listen;
+	private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(readBufferSize);
+	private volatile boolean draining = false;
 	private int port;
 
-	private LinkedBlockingQueue<Object> receivedObjects;
-	
-	private ExecutorService threadpool = Executors.newFixedThreadPool(maxThreads);
-	
+	//Only written by the selector thread, and read once it has finished
+	private long drainedObjects = 0;
+	private long droppedConnections = 0;
+
+	private LinkedBlockingQueue<Received> receivedObjects;
+	private final int capacity;
+	//Frames each Sender may have sent and not yet polled
+	private final int credits;
+	//Objects polled from a connection before credits are granted back for them
+	private final int grantBatch;
+	//Connections with credits to grant back, added to by polling threads
+	private final ConcurrentLinkedQueue<InboundConnection> grantable = new ConcurrentLinkedQueue<InboundConnection>();
+	//Connections not read until the queue has room for the Objects they hold, only used by the selector thread
+	private final List<SelectionKey> blocked = new ArrayList<SelectionKey>();
+	private volatile int blockedCount = 0;
+
+	//Metrics of every Receiver on this port
+	private final ConnectionMetrics metrics;
+	private final Counter accepted;
+	private final Counter failed;
+	private final Gauge queuedGauge;
+	private final Gauge blockedGauge;
+	private final String metricsPrefix;
+
 	/**
 	 * Constructs a Receiver on on a specified port
 	 * @param port Port to listen for new requests on
 	 */
 	public Receiver(int port){
+		this(port, null);
+	}
+
+	/**
+	 * Constructs a Receiver on a specified port of one local address, so several nodes can run on
+	 * one machine, each at its own address
+	 * @param port Port to listen for new requests on
+	 * @param address Local address to listen on, or null for every address
+	 */
+	public Receiver(int port, InetAddress address){
+		this(port, address, defaultCapacity, defaultCredits);
+	}
+
+	/**
+	 * Constructs a Receiver on a specified port of one local address, with a bounded queue
+	 * @param port Port to listen for new requests on
+	 * @param address Local address to listen on, or null for every address
+	 * @param capacity Most received Objects queued waiting to be polled
+	 * @param credits Most Objects each Sender may send ahead of them being polled
+	 */
+	public Receiver(int port, InetAddress address, int capacity, int credits){
+		if(capacity<1 || credits<1)
+			throw new IllegalArgumentException("Error: a Receiver needs a capacity and credits of at least 1!");
 		this.port = port;
+		this.capacity = capacity;
+		this.credits = credits;
+		this.grantBatch = Math.max(1, credits / 4);
 		try {
-			listen = new ServerSocket(this.port);
+			this.selector = Selector.open();
+			this.listen = ServerSocketChannel.open();
+			this.listen.bind(new InetSocketAddress(address, this.port), acceptBacklog);
+			this.listen.configureBlocking(false);
+			this.listen.register(this.selector, SelectionKey.OP_ACCEPT);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
-		
-		receivedObjects = new LinkedBlockingQueue<Object>();
+
+		receivedObjects = new LinkedBlockingQueue<Received>(capacity);
+
+		this.metricsPrefix = "receiver." + port + ".";
+		this.metrics = ConnectionMetrics.forReceiver(port);
+		this.accepted = MetricsRegistry.getDefault().counter(this.metricsPrefix + "connectionsAccepted");
+		this.failed = MetricsRegistry.getDefault().counter(this.metricsPrefix + "connectionsFailed");
+		this.queuedGauge = new Gauge(){
+			@Override
+			public long get() {
+				return getQueueDepth();
+			}
+		};
+		this.blockedGauge = new Gauge(){
+			@Override
+			public long get() {
+				return getBlockedConnections();
+			}
+		};
+		MetricsRegistry.getDefault().register(this.metricsPrefix + "queueDepth", this.queuedGauge);
+		MetricsRegistry.getDefault().register(this.metricsPrefix + "blockedConnections", this.blockedGauge);
 	}
-	
+
 	/**
 	 * Returns an Object from a queue of received objects
 	 * @return a received Object
 	 */
 	public Object poll(){
 
-		Object o = null;
+		Received r = null;
 		try {
-			return this.receivedObjects.poll(500,TimeUnit.MILLISECONDS);
+			r = this.receivedObjects.poll(500,TimeUnit.MILLISECONDS);
 		} catch (InterruptedException e) {
-			e.printStackTrace();
+			//Restore the flag, so the polling thread can see it has been interrupted
+			Thread.currentThread().interrupt();
 		}
-		return o;
+		if(r==null)
+			return null;
 		
+		//Hand credits back to the Sender once a batch of its Objects has been polled, and let blocked connections in
+		boolean wake = this.blockedCount>0;
+		if(r.from.returned()==this.grantBatch){
+			this.grantable.add(r.from);
+			wake = true;
+		}
+		if(wake && this.selector!=null)
+			this.selector.wakeup();
+		return r.object;
+
+	}
+
+	/**
+	 * Returns the number of received Objects waiting to be polled
+	 * @return Number of received Objects
+	 */
+	public int getQueueDepth(){
+		return this.receivedObjects.size();
+	}
+
+	/**
+	 * Returns the capacity of the queue of received Objects
+	 * @return Most Objects queued at once
+	 */
+	public int getCapacity(){
+		return this.capacity;
+	}
+
+	/**
+	 * Returns the number of connections not being read, as the queue has no room for the Objects they hold
+	 * @return Number of blocked connections
+	 */
+	public int getBlockedConnections(){
+		return this.blockedCount;
 	}
-	
+
 	/**
 	 * Method to shutdown an active Receiver thread.
-	 * Waits for any tasks currently executing to finish before stopping
+	 * Waits for any Objects currently being received to arrive before stopping
 	 */
-	public synchronized void shutdown(){
-		//initiate shutdown of threadpool
-		this.threadpool.shutdown();
-		//wait for all connections to be closed
-		while(!this.threadpool.isTerminated());
-		//Interrupt the Receiver thread once threadpool is terminated
-		if(this.isAlive())
-			try {
-				this.listen.close();
-			} catch (IOException e) {
-				this.interrupt();
-			}
-		
+	public void shutdown(){
+		drain(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Stop accepting new connections, finish receiving any Objects already partly received until the
+	 * deadline, then stop. Objects already received remain available to poll().
+	 * Connections still part way through an Object at the deadline are reported as dropped.
+	 */
+	@Override
+	public synchronized DrainReport drain(long timeout, TimeUnit unit){
+		long deadline = PoolDrainer.deadline(timeout, unit);
+
+		//The selector thread closes the listening channel, then each connection once it is between frames
+		this.draining = true;
+		if(this.selector!=null)
+			this.selector.wakeup();
+		boolean terminated = PoolDrainer.join(this, deadline);
+		if(!terminated){
+			this.interrupt();
+			PoolDrainer.join(this, PoolDrainer.deadline(idleCheckMillis, TimeUnit.MILLISECONDS));
+		}
+		if(!isAlive())
+			closeAll();
+		MetricsRegistry.getDefault().unregister(this.metricsPrefix + "queueDepth", this.queuedGauge);
+		MetricsRegistry.getDefault().unregister(this.metricsPrefix + "blockedConnections", this.blockedGauge);
+
+		return new DrainReport("Receiver", this.drainedObjects, this.droppedConnections, terminated);
 	}
-	
+
 	/**
 	 * Method for setting a new Port to listen on
 	 * @param newPort
@@ -91,70 +252,232 @@ public class Receiver extends Thread {
 	public void setPort(int newPort){
 		this.port = newPort;
 	}
-	
+
 	public void run(){
-		
-		while(!isInterrupted()){
+
+		if(this.selector==null)
+			return;
+
+		try {
+			while(!isInterrupted()){
+				this.selector.select(idleCheckMillis);
+
+				Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+				while(keys.hasNext()){
+					SelectionKey key = keys.next();
+					keys.remove();
+					if(!key.isValid())
+						continue;
+					if(key.isAcceptable()){
+						accept();
+						continue;
+					}
+					try {
+						if(key.isWritable())
+							flushGrants(key);
+						if(key.isValid() && key.isReadable())
+							read(key);
+					} catch (RuntimeException e) {
+						//A frame the codec or Compressor could not cope with, only this connection is lost
+						fail(key, (InboundConnection)key.attachment(), e);
+					}
+				}
+				grant();
+				unblock();
+
+				if(this.draining && closeIdle())
+					break;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			closeAll();
+		}
+	}
+
+	//Accept every pending connection
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while((channel = this.listen.accept())!=null){
+			InboundConnection c = new InboundConnection(channel, this.metrics);
+			this.accepted.increment();
+			SelectionKey key = null;
 			try {
-				//Listen for a new connection
-				Socket s = listen.accept();
-				this.threadpool.execute(new ReceiveTask(s));
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				key = channel.register(this.selector, SelectionKey.OP_READ, c);
+				//The Sender may send this many Objects before the first is polled
+				if(!c.grant(this.credits))
+					key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
 			} catch (IOException e) {
-				this.interrupt();
+				fail(key, c, e);
 			}
 		}
 	}
-	
-	/**
-	 * Inner class depicting each individual receive operation.
-	 * Given a Socket, an instance of this class will attempt to read an object from its inputstream
-	 * @author Sam Delacruz
-	 * @version 18-03-2013
-	 */
-	private class ReceiveTask implements Runnable{
-		
-		private Socket s;
-		private ObjectInputStream input = null;
 
-		private ReceiveTask(Socket s){
-			this.s = s;
+	//Read once from a ready connection, so every ready connection gets a turn before any is read again
+	private void read(SelectionKey key){
+		InboundConnection c = (InboundConnection)key.attachment();
+		try {
+			this.readBuffer.clear();
+			int n = c.getChannel().read(this.readBuffer);
+			if(n<0){
+				//Sender closed the connection, which only fails it if an Object was cut off
+				if(!c.isIdle())
+					throw new EOFException("Error: connection closed part way through an Object!");
+				key.cancel();
+				c.close();
+				return;
+			}
+			this.readBuffer.flip();
+			this.metrics.bytes.add(n);
+			int decoded = c.consume(this.readBuffer);
+			this.metrics.objects.add(decoded);
+			//Reply to the header with the Compressor accepted
+			if(c.hasPendingGrants() && !c.flushGrants())
+				key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+			if(this.draining)
+				this.drainedObjects += decoded;
+			if(!deliver(c)){
+				//No room for the rest, stop reading until there is
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+				this.blocked.add(key);
+				this.blockedCount = this.blocked.size();
+			}
+		} catch (IOException e) {
+			fail(key, c, e);
 		}
-		
-		@Override
-		public void run() {
-			
-			//Try to initialize inputstream
+	}
+
+	//Queue a connection's decoded Objects while there is room, without blocking, returns true if all were queued
+	private boolean deliver(InboundConnection c){
+		Object o;
+		while((o = c.peekDecoded())!=null){
+			if(!this.receivedObjects.offer(new Received(o, c)))
+				return false;
+			c.takeDecoded();
+		}
+		return true;
+	}
+
+	//Read blocked connections again once the queue has room for every Object they hold
+	private void unblock(){
+		if(this.blocked.isEmpty())
+			return;
+		for(Iterator<SelectionKey> i = this.blocked.iterator();i.hasNext();){
+			SelectionKey key = i.next();
+			if(!key.isValid()){
+				i.remove();
+				continue;
+			}
+			if(!deliver((InboundConnection)key.attachment()))
+				break;
+			key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+			i.remove();
+		}
+		this.blockedCount = this.blocked.size();
+	}
+
+	//Write the credits returned by polling threads back to their Senders
+	private void grant(){
+		InboundConnection c;
+		while((c = this.grantable.poll())!=null){
+			SelectionKey key = c.getChannel().keyFor(this.selector);
+			if(key==null || !key.isValid())
+				continue;
 			try {
-				this.input = new ObjectInputStream(s.getInputStream());
+				if(!c.grant(0))
+					key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
 			} catch (IOException e) {
-				e.printStackTrace();
+				fail(key, c, e);
 			}
-			
-			//Try to read Serialized Object from stream
-			try {
-				Object o = input.readObject();
-				//Try to add read object to queue of received objects held by Receiver
-				try {
-					Receiver.this.receivedObjects.put(o);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
+		}
+	}
+
+	//Finish writing credit grants the channel had no room for
+	private void flushGrants(SelectionKey key){
+		InboundConnection c = (InboundConnection)key.attachment();
+		try {
+			if(c.flushGrants())
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+		} catch (IOException e) {
+			fail(key, c, e);
+		}
+	}
+
+	//Close a connection which failed, so the Receiver goes on serving every other connection
+	private void fail(SelectionKey key, InboundConnection c, Exception e){
+		e.printStackTrace();
+		this.failed.increment();
+		if(key!=null)
+			key.cancel();
+		c.close();
+	}
+
+	/**
+	 * Stop listening, and close every connection which is between frames
+	 * @return true if no connections remain open
+	 */
+	private boolean closeIdle(){
+		boolean open = false;
+		for(SelectionKey key : this.selector.keys()){
+			if(key.channel()==this.listen){
+				key.cancel();
+				closeListen();
+			}
+			else if(key.isValid()){
+				InboundConnection c = (InboundConnection)key.attachment();
+				if(c.isIdle()){
+					key.cancel();
+					c.close();
+				}
+				else {
+					open = true;
 				}
-			} catch (IOException e) {
-				e.printStackTrace();
-			} catch (ClassNotFoundException e) {
-				e.printStackTrace();
 			}
-			
-			try {
-				input.close();
-				s.close();
-			} catch (IOException e) {
-				e.printStackTrace();
+		}
+		return !open;
+	}
+
+	private void closeAll(){
+		closeListen();
+		if(this.selector==null||!this.selector.isOpen())
+			return;
+		for(SelectionKey key : this.selector.keys()){
+			if(key.attachment() instanceof InboundConnection){
+				InboundConnection c = (InboundConnection)key.attachment();
+				if(!c.isIdle())
+					this.droppedConnections++;
+				c.close();
 			}
-			
 		}
-		
+		try {
+			this.selector.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void closeListen(){
+		try {
+			if(this.listen!=null)
+				this.listen.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	//A received Object, and the connection to grant a credit back to once it is polled
+	private static class Received {
+
+		private final Object object;
+		private final InboundConnection from;
+
+		private Received(Object object, InboundConnection from){
+			this.object = object;
+			this.from = from;
+		}
+
 	}
-	
-	
+
 }
@@ -1,56 +1,185 @@
 package com.sdelacruz.network.io;
 
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.net.InetAddress;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import com.sdelacruz.concurrent.BackpressurePolicy;
+import com.sdelacruz.concurrent.DispatchConfig;
+import com.sdelacruz.concurrent.DrainReport;
+import com.sdelacruz.concurrent.Lifecycle;
+import com.sdelacruz.concurrent.PoolDrainer;
+import com.sdelacruz.metrics.Counter;
+import com.sdelacruz.metrics.Gauge;
+import com.sdelacruz.metrics.Histogram;
+import com.sdelacruz.metrics.MetricsRegistry;
+import com.sdelacruz.network.codec.Codecs;
+import com.sdelacruz.network.codec.Compressor;
+import com.sdelacruz.network.codec.MessageCodec;
+
 /**
  * Class depicting a Sender object. When executed, will take requests to send Objects
  * via OutputStream to a destination, assuming the destination is listening for a connection on
  * a matching port.
  * 
- * The class ensures that no more than one Object is sent to the same destination at any given time,
- * and queues any clashing requests to a current connection.
+ * The class ensures that no more than one Object is sent to the same destination at any given time.
+ * Each destination has its own FIFO queue of sends, so Objects reach each destination in the order they
+ * were sent. A destination with queued sends and none in flight is ready, and the dispatcher only ever
+ * takes sends from ready destinations, so a slow destination holds up nothing but its own queue.
+ * 
+ * Sends queued for the same destination are coalesced: up to the batch size of them are taken together
+ * and written over the destination's connection in as few frames as possible, see OutboundConnection.
+ * A linger time may also be set, for which the first send to an idle destination waits for others to
+ * join it, unless the batch size is reached first. See setBatching().
+ * 
+ * Objects are encoded with the Sender's MessageCodec, BinaryCodec by default. JavaSerializationCodec
+ * remains available, e.g. for peers which do not support the binary format, via setCodec(). Frames may
+ * also be compressed, with a Compressor agreed with each Receiver as the connection is opened, see setCompression().
+ * 
+ * Connections are kept open and reused for every Object sent to the same destination. A connection
+ * which fails is reopened once before the Object is given up on, and connections left idle for longer
+ * than the idle timeout are closed.
  * 
  * To use: create instance of Sender, to a given port. Start the thread with .start().
  * To send an Object to a particular InetAddress, call .send(Object o, InetAddress dest).
  * 
+ * If constructed with a DIRECT DispatchConfig, send() submits straight to the threadpool, and the
+ * Sender thread does not need to be started. Once a send finishes, the next send queued for the
+ * same destination is submitted straight away by the thread which finished it, along with any others
+ * queued behind it up to the batch size. Sends are never held back to linger.
+ * 
+ * At most the DispatchConfig's queue capacity of Objects may be accepted by send() and not yet sent.
+ * Once that many are outstanding, send() blocks, or under the REJECT policy throws, until one has been
+ * sent. Each connection may only send as many Objects as its Receiver has granted credits for, see
+ * OutboundConnection, so a slow Receiver holds up the sends to it, then this Sender's callers.
+ * 
+ * Each send in flight holds a pool thread while it blocks on its connection, so the pool's size bounds the
+ * number of destinations sent to at once. A DispatchConfig with the VIRTUAL backend runs a thread for every
+ * send the Sender may hold, so a slow destination never holds up a pool thread another destination needs.
+ * 
+ * Metrics are recorded under sender.port.* in the default MetricsRegistry: bytes and Objects sent, encode and
+ * compression time per frame, connection setup time, the time each SendTask takes, sends given up on,
+ * and gauges of the sends queued and connections open.
+ * 
  * @author Sam Delacruz
  * @version 20-03-2013
  *
  */
-public class Sender extends Thread {
+public class Sender extends Thread implements Lifecycle {
 	
-	private static final int maxThreads = 10;
+	//Sends in flight at once on PLATFORM threads, unless the DispatchConfig sets otherwise
+	private static final int defaultThreads = 10;
+	private static final long defaultIdleTimeout = 30000;
+	private static final int defaultBatchSize = 64;
 	
 	//Port to send all requests on
 	private int port;
 
-	//Stores a list of active connections, which can be checked to prevent clashes
-	private List<InetAddress> activeConnections;
+	//Everything below up to the threadpool is guarded by this Sender
+	//Destinations with a send in flight
+	private final Set<InetAddress> activeConnections;
+	//Sends waiting for their destination, by destination
+	private final Map<InetAddress, SendQueue> sendQueues;
+	//Destinations with queued sends and none in flight, in the order they became ready
+	private final ArrayDeque<InetAddress> ready;
+	private int queuedSends = 0;
+	
+	private ThreadPoolExecutor threadpool;
+	private DispatchConfig dispatch;
+	//One permit per Object which may be accepted and not yet sent
+	private final Semaphore capacity;
+	
+	//Open connections, by destination. Guarded by this Sender
+	private Map<InetSocketAddress, OutboundConnection> connections;
+	private volatile long idleTimeout = defaultIdleTimeout;
+	private volatile MessageCodec codec = Codecs.getDefault();
+	private volatile Compressor compressor = null;
+	private volatile int compressionThreshold = 0;
+	private volatile int batchSize = defaultBatchSize;
+	private volatile long lingerNanos = 0;
+	private ScheduledExecutorService evictor;
 	
-	//A queue of SendTask objects, queued for later sending
-	private BlockingQueue<SendTask> sendQueue;
+	//Metrics of every Sender on this port
+	private final ConnectionMetrics metrics;
+	private final Histogram connectNanos;
+	private final Histogram sendNanos;
+	private final Counter sendFailures;
+	private final Gauge queuedGauge;
+	private final Gauge connectionsGauge;
+	private final String metricsPrefix;
 	
-	private ExecutorService threadpool = Executors.newFixedThreadPool(maxThreads);
+	//Once draining, no new sends are accepted, and queued sends are dispatched as destinations free up
+	private volatile boolean accepting = true;
+	private boolean draining = false;
 	
 	/**
 	 * Constructs a Sender on on a specified port
 	 * @param port Port to send requests to
 	 */
 	public Sender(int port){
+		this(port, DispatchConfig.polling());
+	}
+	
+	/**
+	 * Constructs a Sender on a specified port, with a given way of dispatching sends
+	 * @param port Port to send requests to
+	 * @param dispatch How sends are handed to the threadpool
+	 */
+	public Sender(int port, DispatchConfig dispatch){
 		this.port = port;
-		this.activeConnections = new ArrayList<InetAddress>();
-		this.sendQueue = new LinkedBlockingQueue<SendTask>();
+		this.dispatch = dispatch;
+		this.activeConnections = new HashSet<InetAddress>();
+		//The queues themselves are unbounded, the number of sends they hold is bounded by the capacity permits
+		this.sendQueues = new HashMap<InetAddress, SendQueue>();
+		this.ready = new ArrayDeque<InetAddress>();
+		this.capacity = new Semaphore(this.dispatch.getQueueCapacity());
+		this.threadpool = this.dispatch.newThreadPool(defaultThreads);
+		this.connections = new HashMap<InetSocketAddress, OutboundConnection>();
+		this.metricsPrefix = "sender." + port + ".";
+		MetricsRegistry registry = MetricsRegistry.getDefault();
+		this.metrics = ConnectionMetrics.forSender(port);
+		this.connectNanos = registry.histogram(this.metricsPrefix + "connectNanos");
+		this.sendNanos = registry.histogram(this.metricsPrefix + "sendNanos");
+		this.sendFailures = registry.counter(this.metricsPrefix + "sendFailures");
+		this.queuedGauge = new Gauge(){
+			@Override
+			public long get() {
+				synchronized(Sender.this){
+					return Sender.this.queuedSends;
+				}
+			}
+		};
+		this.connectionsGauge = new Gauge(){
+			@Override
+			public long get() {
+				return getOpenConnections();
+			}
+		};
+		registry.register(this.metricsPrefix + "queuedSends", this.queuedGauge);
+		registry.register(this.metricsPrefix + "openConnections", this.connectionsGauge);
+		this.evictor = Executors.newSingleThreadScheduledExecutor();
+		this.evictor.scheduleWithFixedDelay(new Runnable(){
+			@Override
+			public void run() {
+				evictIdleConnections();
+			}
+		}, 1, 1, TimeUnit.SECONDS);
 	}
 	
 	/**
@@ -58,30 +187,167 @@ public class Sender extends Thread {
 	 * Queues the Object for sending, Sender.run() will try to clear queue
 	 * @param o Object to be sent. Must be serializable
 	 * @param dest Destination address for Object to be sent to
+	 * @throws RejectedExecutionException if the Sender is being drained, or is full under the REJECT policy
 	 */
 	public void send(Object o, InetAddress dest){
-		//Create new SendTask
-		SendTask send = new SendTask(o,dest);
-		try {
-			this.sendQueue.put(send);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+		if(!this.accepting)
+			throw new RejectedExecutionException("Error: Sender is shutting down!");
+		//Check that o is a Serializable object before it is queued
+		if(!(o instanceof Serializable))
+			throw new IllegalArgumentException("Error: attempting to send non-serializable Object!");
+		Serializable object = (Serializable)o;
+		acquire();
+		if(this.dispatch.isDirect()){
+			dispatchDirect(object, dest);
+			return;
+		}
+		synchronized(this){
+			SendQueue queue = enqueue(object, dest);
+			if(this.activeConnections.contains(dest))
+				return;
+			if(queue.objects.size()==1){
+				//First send queued for an idle destination, which is now ready once it has lingered
+				queue.dueAt = System.nanoTime() + this.lingerNanos;
+				this.ready.add(dest);
+				this.notifyAll();
+			}
+			else if(queue.objects.size()==this.batchSize){
+				//A full batch is due straight away
+				this.notifyAll();
+			}
 		}
 	}
 	
+	/**
+	 * Returns the number of Objects accepted by send() and not yet sent
+	 * @return Number of outstanding sends
+	 */
+	public int getQueueDepth(){
+		return this.dispatch.getQueueCapacity() - this.capacity.availablePermits();
+	}
+	
 	/**
 	 * Method to shutdown an active Sender thread.
 	 * Waits for any tasks currently executing to finish before stopping
 	 */
-	public synchronized void shutdown(){
-		//initiate shutdown of threadpool
-		this.threadpool.shutdown();
-		//wait for all connections to be closed
-		while(!this.threadpool.isTerminated());
-		//Interrupt the Sender thread once threadpool is terminated
-		if(this.isAlive())
-		this.interrupt();
-
+	public void shutdown(){
+		drain(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Stop accepting new sends, send every queued Object until the deadline, then stop.
+	 * Sends to the same destination are still made one at a time while draining.
+	 */
+	@Override
+	public DrainReport drain(long timeout, TimeUnit unit){
+		long deadline = PoolDrainer.deadline(timeout, unit);
+		this.accepting = false;
+		long outstanding;
+		synchronized(this){
+			outstanding = this.queuedSends + this.activeConnections.size();
+		}
+		
+		//Stop the dispatcher thread, then dispatch its queued sends as their destinations free up
+		if(this.isAlive()){
+			this.interrupt();
+			PoolDrainer.join(this, deadline);
+		}
+		//From now on, each send finishing submits the next for its destination itself
+		List<SendTask> next = new ArrayList<SendTask>();
+		synchronized(this){
+			this.draining = true;
+			InetAddress dest;
+			while((dest = this.ready.poll())!=null){
+				this.activeConnections.add(dest);
+				next.add(dequeue(dest));
+			}
+		}
+		for(SendTask send : next)
+			execute(send);
+		
+		//Wait for every queued send to finish, or the deadline
+		boolean sent = true;
+		synchronized(this){
+			try {
+				while(this.queuedSends>0||!this.activeConnections.isEmpty()){
+					long nanos = PoolDrainer.remainingNanos(deadline);
+					if(nanos<=0){
+						sent = false;
+						break;
+					}
+					TimeUnit.NANOSECONDS.timedWait(this, nanos);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				sent = false;
+			}
+		}
+		
+		DrainReport pool = PoolDrainer.drain("Sender", this.threadpool, deadline);
+		long dropped = pool.getDropped();
+		synchronized(this){
+			dropped += this.queuedSends;
+			this.capacity.release(this.queuedSends);
+			this.sendQueues.clear();
+			this.ready.clear();
+			this.queuedSends = 0;
+		}
+		
+		this.evictor.shutdownNow();
+		closeAllConnections();
+		MetricsRegistry.getDefault().unregister(this.metricsPrefix + "queuedSends", this.queuedGauge);
+		MetricsRegistry.getDefault().unregister(this.metricsPrefix + "openConnections", this.connectionsGauge);
+		return new DrainReport("Sender", Math.max(0, outstanding - dropped), dropped, sent && pool.isTerminated());
+	}
+	
+	/**
+	 * Method for setting how long a connection may stay unused before it is closed
+	 * @param millis Idle timeout, in milliseconds
+	 */
+	public void setIdleTimeout(long millis){
+		this.idleTimeout = millis;
+	}
+	
+	/**
+	 * Method for setting the codec used to encode Objects. Only applies to connections opened afterwards.
+	 * @param codec MessageCodec to encode Objects with
+	 */
+	public void setCodec(MessageCodec codec){
+		this.codec = codec;
+	}
+	
+	/**
+	 * Method for setting how frames are compressed. Only applies to connections opened afterwards, and
+	 * only to Receivers which accept the Compressor, see FrameFormat.
+	 * @param compressor Compressor to compress frames with, e.g. LZ4Compressor or DeflateCompressor, null not to compress
+	 * @param thresholdBytes Smallest frame payload to compress, as small frames gain little from it
+	 */
+	public void setCompression(Compressor compressor, int thresholdBytes){
+		if(thresholdBytes<0)
+			throw new IllegalArgumentException("Error: a Sender needs a compression threshold of at least 0 bytes!");
+		this.compressor = compressor;
+		this.compressionThreshold = thresholdBytes;
+	}
+	
+	/**
+	 * Method for setting how sends queued for the same destination are coalesced
+	 * @param batchSize Most Objects sent to a destination together, 1 to send each Object on its own
+	 * @param lingerMillis How long the first send to an idle destination may wait for others, 0 not to wait.
+	 * Only applies to POLLING dispatch
+	 */
+	public void setBatching(int batchSize, long lingerMillis){
+		if(batchSize<1 || lingerMillis<0)
+			throw new IllegalArgumentException("Error: a Sender needs a batch size of at least 1, and a linger time of at least 0!");
+		this.batchSize = batchSize;
+		this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+	}
+	
+	/**
+	 * Returns the number of connections currently held open
+	 * @return Number of open connections
+	 */
+	public synchronized int getOpenConnections(){
+		return this.connections.size();
 	}
 	
 	/**
@@ -95,52 +361,213 @@ public class Sender extends Thread {
 	@Override
 	public void run() {
 		
+		//Sends are already submitted straight to the threadpool, nothing to dispatch
+		if(this.dispatch.isDirect())
+			return;
+		
 		//Run as long as the Thread is uninterrupted
 		while(!isInterrupted()){
 				
 				SendTask send = null;
 				
-				try {
-					//Read from the queue
-					send = this.sendQueue.poll(500,TimeUnit.MILLISECONDS);
-				} catch (InterruptedException e) {
-					//Interrupted while waiting for new send task
-					e.printStackTrace();
+				synchronized(this){
+					try {
+						//Wait for a ready destination to be due
+						long nanos = untilDue(System.nanoTime());
+						if(nanos>0)
+							TimeUnit.NANOSECONDS.timedWait(this, nanos);
+					} catch (InterruptedException e) {
+						//Interrupted while waiting for a new send task, restore the flag so the loop ends
+						this.interrupt();
+					}
+					InetAddress dest = takeDue(System.nanoTime());
+					if(dest!=null){
+						//The destination is busy until this send finishes
+						this.activeConnections.add(dest);
+						send = dequeue(dest);
+					}
 				}
 				
 				if(send!=null){
-					//Check that we aren't already connected to host address
-					if(!this.getActiveConnections().contains(send.address)){
-						//Add the address to list of active connections
-						this.getActiveConnections().add(send.address);
-						//Start the task
-						this.threadpool.execute(send);
-					}
-					//Otherwise, requeue the task for later sending
-					else{
-						try {
-							this.sendQueue.put(send);
-						} catch (InterruptedException e) {
-							e.printStackTrace();
-						}
-					}
+					//Start the task, outside the lock as the threadpool may block while full
+					execute(send);
 				}
 			
 		}
 
 	}
 	
+	//Start a send straight away if its destination is free, otherwise queue it behind the current send
+	private void dispatchDirect(Serializable object, InetAddress dest){
+		synchronized(this){
+			if(this.activeConnections.contains(dest)){
+				enqueue(object, dest);
+				return;
+			}
+			this.activeConnections.add(dest);
+		}
+		//Submitted outside the lock, as the backpressure policy may block
+		try {
+			this.threadpool.execute(new SendTask(Collections.singletonList(object), dest));
+		} catch (RejectedExecutionException e) {
+			this.capacity.release();
+			sendFinished(dest);
+			throw e;
+		}
+	}
+	
+	//Submit sends taken from their destination's queue, dropping them if the threadpool refuses them
+	private void execute(SendTask send){
+		try {
+			this.threadpool.execute(send);
+		} catch (RejectedExecutionException e) {
+			//Drop the sends, and move on to any others for this destination
+			e.printStackTrace();
+			this.capacity.release(send.objects.size());
+			sendFinished(send.address);
+		}
+	}
+	
+	//Queue a send behind its destination, returning the destination's queue
+	private SendQueue enqueue(Serializable object, InetAddress dest){
+		SendQueue queue = this.sendQueues.get(dest);
+		if(queue==null){
+			queue = new SendQueue();
+			this.sendQueues.put(dest, queue);
+		}
+		queue.objects.add(object);
+		this.queuedSends++;
+		return queue;
+	}
+	
+	//Take the next batch of sends queued for a destination, forgetting the destination's queue once it is empty
+	private SendTask dequeue(InetAddress dest){
+		SendQueue queue = this.sendQueues.get(dest);
+		if(queue==null)
+			return null;
+		int n = Math.min(queue.objects.size(), this.batchSize);
+		List<Serializable> batch = new ArrayList<Serializable>(n);
+		for(int i = 0;i<n;i++)
+			batch.add(queue.objects.poll());
+		if(queue.objects.isEmpty())
+			this.sendQueues.remove(dest);
+		this.queuedSends -= n;
+		return new SendTask(batch, dest);
+	}
+	
+	//Returns whether a ready destination's sends should be taken now
+	private boolean isDue(InetAddress dest, long now){
+		SendQueue queue = this.sendQueues.get(dest);
+		return now - queue.dueAt>=0 || queue.objects.size()>=this.batchSize;
+	}
+	
+	//Returns how long until a ready destination is due, or 0 if one already is
+	private long untilDue(long now){
+		InetAddress first = this.ready.peek();
+		if(first==null)
+			return TimeUnit.MILLISECONDS.toNanos(500);
+		//Lingering destinations become ready in order, so the first is the first to stop lingering
+		for(InetAddress dest : this.ready){
+			if(isDue(dest, now))
+				return 0;
+		}
+		return this.sendQueues.get(first).dueAt - now;
+	}
+	
+	//Take the first ready destination which is due, or return null if none are
+	private InetAddress takeDue(long now){
+		for(Iterator<InetAddress> i = this.ready.iterator();i.hasNext();){
+			InetAddress dest = i.next();
+			if(isDue(dest, now)){
+				i.remove();
+				return dest;
+			}
+		}
+		return null;
+	}
+	
+	//Take a permit for a new send, waiting for one unless the REJECT policy is in use
+	private void acquire(){
+		if(this.dispatch.getPolicy()==BackpressurePolicy.REJECT){
+			if(!this.capacity.tryAcquire())
+				throw new RejectedExecutionException("Error: Sender has " + this.dispatch.getQueueCapacity() + " sends outstanding!");
+			return;
+		}
+		try {
+			this.capacity.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException("Error: interrupted while waiting for Sender capacity!", e);
+		}
+	}
+	
+	//Called once a send completes, readies its destination again, or starts its next send straight away
+	private void sendFinished(InetAddress address){
+		SendTask next = null;
+		synchronized(this){
+			if(!this.dispatch.isDirect() && !this.draining){
+				this.activeConnections.remove(address);
+				SendQueue queue = this.sendQueues.get(address);
+				if(queue!=null){
+					//These sends have already waited for the one before them, so are due straight away
+					queue.dueAt = System.nanoTime();
+					this.ready.add(address);
+					this.notifyAll();
+				}
+				return;
+			}
+			next = dequeue(address);
+			if(next==null)
+				this.activeConnections.remove(address);
+			//Wake drain(), which waits for every send to finish
+			this.notifyAll();
+		}
+		
+		if(next!=null)
+			execute(next);
+	}
+	
 	/*
 	 * BEGIN - Synchronized private methods for accessing fields
 	 */
-	private synchronized void deactivateConnection(InetAddress address) {
-
-		this.getActiveConnections().remove(address);
-		
+	private synchronized OutboundConnection getConnection(InetSocketAddress destination){
+		return this.connections.get(destination);
 	}
 	
-	private synchronized List<InetAddress> getActiveConnections(){
-		return this.activeConnections;
+	private synchronized void putConnection(OutboundConnection c){
+		this.connections.put(c.getDestination(), c);
+	}
+	
+	private synchronized void removeConnection(OutboundConnection c){
+		if(this.connections.get(c.getDestination())==c)
+			this.connections.remove(c.getDestination());
+	}
+	
+	//Close connections which have been idle too long, unless a send to them is in progress
+	private void evictIdleConnections(){
+		List<OutboundConnection> evicted = new ArrayList<OutboundConnection>();
+		long now = System.currentTimeMillis();
+		synchronized(this){
+			for(Iterator<OutboundConnection> i = this.connections.values().iterator();i.hasNext();){
+				OutboundConnection c = i.next();
+				if(c.isIdle(this.idleTimeout, now) && !this.activeConnections.contains(c.getDestination().getAddress())){
+					i.remove();
+					evicted.add(c);
+				}
+			}
+		}
+		for(OutboundConnection c : evicted)
+			c.close();
+	}
+	
+	private void closeAllConnections(){
+		List<OutboundConnection> open;
+		synchronized(this){
+			open = new ArrayList<OutboundConnection>(this.connections.values());
+			this.connections.clear();
+		}
+		for(OutboundConnection c : open)
+			c.close();
 	}
 	
 	
@@ -149,6 +576,16 @@ public class Sender extends Thread {
 	 */
 	
 	
+	/**
+	 * Inner class depicting the sends waiting for one destination, in the order they were sent.
+	 * Once due, or once batchSize of them are waiting, up to batchSize are taken as a single SendTask.
+	 */
+	private static class SendQueue {
+		private final ArrayDeque<Serializable> objects = new ArrayDeque<Serializable>();
+		//When the destination's sends are due once it is ready, from System.nanoTime()
+		private long dueAt;
+	}
+	
 	/**
 	 * Inner class depicting each individual send operation.
 	 * Given an Object and a destination, an instance of this class will attempt to send the object
@@ -160,71 +597,61 @@ public class Sender extends Thread {
 		private InetAddress address = null;
 		private int port;
 		
-		private Socket s = null;
-		
-		private ObjectOutputStream out = null;
+		private List<Serializable> objects = null;
 		
-		private Serializable object = null;
-		
-		private SendTask(Object o, InetAddress dest){
+		private SendTask(List<Serializable> objects, InetAddress dest){
 			this.address = dest;
 			this.port = Sender.this.port;
-			//Check that o is a Serializable object before execution of run() begins.
-			if(o instanceof Serializable){
-				this.object = (Serializable)o;
-			}
-			
-			else
-				throw new IllegalArgumentException("Error: attempting to send non-serializable Object!");
+			this.objects = objects;
 		}
 		
 		@Override
 		public void run() {
 			
-			//Try to connect to receiver
-			try {
-				this.s = new Socket(this.address,this.port);
-			} catch (IOException e) {
-				//Error connecting to receiver
-				e.printStackTrace();
-			}
+			InetSocketAddress destination = new InetSocketAddress(this.address, this.port);
+			//Objects already written, which are not written again after reconnecting
+			int written = 0;
+			long start = System.nanoTime();
 			
-			//Check that connection has been established
-			if(s!=null){
-				//Try to open OutputStream
-				try {
-					this.out = new ObjectOutputStream(this.s.getOutputStream());
-				} catch (IOException e) {
-					//Error opening ObjectOutputStream
-					e.printStackTrace();
-				}
-				
-				//Check that outputstream has been setup
-				if(out!=null){
-					//Try to send the Object via outputstream
+			try {
+				//Reuse the open connection to this destination, if there is one
+				OutboundConnection c = Sender.this.getConnection(destination);
+				if(c!=null){
 					try {
-						out.writeObject(this.object);
+						c.write(this.objects);
+						return;
 					} catch (IOException e) {
-						//Error sending Object
-						e.printStackTrace();
+						//The receiver may have closed the connection, reconnect once and try again
+						written = c.getWritten();
+						Sender.this.removeConnection(c);
+						c.close();
+						c = null;
 					}
-					
-					//Close the stream
-					try {
-						out.close();
-						s.close();
-					} catch (IOException e) {
-						//error closing stream
-						e.printStackTrace();
+				}
+				
+				try {
+					long connectStart = System.nanoTime();
+					c = new OutboundConnection(destination, Sender.this.codec, Sender.this.compressor, Sender.this.compressionThreshold, Sender.this.metrics);
+					Sender.this.connectNanos.recordSince(connectStart);
+					Sender.this.putConnection(c);
+					c.write(this.objects.subList(written, this.objects.size()));
+				} catch (IOException e) {
+					//Error connecting to receiver, or sending the Objects
+					e.printStackTrace();
+					Sender.this.sendFailures.add(this.objects.size() - written - (c==null ? 0 : c.getWritten()));
+					if(c!=null){
+						Sender.this.removeConnection(c);
+						c.close();
 					}
 				}
+			} finally {
+				Sender.this.sendNanos.recordSince(start);
+				Sender.this.capacity.release(this.objects.size());
+				//Remove this connection from the list of active connections
+				Sender.this.sendFinished(this.address);
 			}
-			//Remove this connection from the list of active connections
-			Sender.this.deactivateConnection(this.address);
 		}
 		
 	}
 
-
-
 }
@@ -1,5 +1,10 @@
 package com.sdelacruz.network.objectprocessing;
 
+import java.util.concurrent.TimeUnit;
+
+import com.sdelacruz.concurrent.DrainReport;
+import com.sdelacruz.concurrent.Lifecycle;
+import com.sdelacruz.concurrent.PoolDrainer;
 import com.sdelacruz.network.io.Receiver;
 
 /**
@@ -7,11 +12,15 @@ import com.sdelacruz.network.io.Receiver;
  * @author Sam Delacruz
  * @version 20-03-2013
  */
-public class ObjectPoller extends Thread {
+public class ObjectPoller extends Thread implements Lifecycle {
 	
 	private ObjectProcessor objProcessor;
 	private Receiver receiver;
 	
+	//Once draining, the poller stops as soon as the Receiver has nothing left to poll
+	private volatile boolean draining = false;
+	private volatile long forwarded = 0;
+	
 	/**
 	 * Creates a new ObjectPoller, given an ObjectProcessor to submit objects to, and a BlockingQueue to poll
 	 * @param p An ObjectProcessor to submit objects to
@@ -34,11 +43,35 @@ public class ObjectPoller extends Thread {
 		this.interrupt();
 	}
 	
+	/**
+	 * Forward every Object still held by the Receiver to the ObjectProcessor until the deadline, then stop.
+	 * Objects left in the Receiver at the deadline are reported as dropped.
+	 */
+	@Override
+	public synchronized DrainReport drain(long timeout, TimeUnit unit){
+		long deadline = PoolDrainer.deadline(timeout, unit);
+		long forwardedBefore = this.forwarded;
+		this.draining = true;
+		
+		boolean terminated = !this.isAlive() || PoolDrainer.join(this, deadline);
+		if(!terminated)
+			this.interrupt();
+		
+		return new DrainReport("ObjectPoller", this.forwarded - forwardedBefore, this.receiver.getQueueDepth(), terminated);
+	}
+	
 	@Override
 	public void run(){
 		while(!isInterrupted()){
 			
-			this.objProcessor.process(this.receiver.poll());
+			Object o = this.receiver.poll();
+			if(o==null){
+				if(this.draining)
+					break;
+				continue;
+			}
+			this.objProcessor.process(o);
+			this.forwarded++;
 			
 		}
 	}
@@ -1,11 +1,21 @@
 package com.sdelacruz.network.objectprocessing;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import com.sdelacruz.concurrent.DispatchConfig;
+import com.sdelacruz.concurrent.DrainReport;
+import com.sdelacruz.concurrent.Lifecycle;
+import com.sdelacruz.concurrent.PoolDrainer;
+import com.sdelacruz.metrics.Counter;
+import com.sdelacruz.metrics.Gauge;
+import com.sdelacruz.metrics.Histogram;
+import com.sdelacruz.metrics.MetricsRegistry;
 import com.sdelacruz.network.INetworkController;
 
 
@@ -14,24 +24,61 @@ import com.sdelacruz.network.INetworkController;
  * Queue new Objects to be processed with process(Object o)
  * The Objects will be executed by an instance of an implementation of ProcessTask
  * The type of ProcessTask must be defined by the ProcessTaskFactory passed as an argument to the ObjectProcessor constructor
+ * If constructed with a DIRECT DispatchConfig, tasks are submitted straight to the threadpool, and the
+ * ObjectProcessor thread does not need to be started.
+ * Metrics are recorded under objectprocessor.* in the default MetricsRegistry: tasks completed, how long
+ * each task was queued and ran for, and a gauge of the tasks queued.
  * @author Sam Delacruz
  * @version 20-03-2013
  *
  */
-public class ObjectProcessor extends Thread{
-	private int maxThreads = 10;
+public class ObjectProcessor extends Thread implements Lifecycle {
+	//Tasks run at once on PLATFORM threads, unless the DispatchConfig sets otherwise
+	private static final int defaultThreads = 10;
 	private ProcessTaskFactory pTaskFactory;
 	private INetworkController networkController;
-	private ExecutorService threadpool;
+	private ThreadPoolExecutor threadpool;
+	private DispatchConfig dispatch;
+	private volatile boolean accepting = true;
 	
 	private BlockingQueue<ProcessTask> taskQueue;
 	
+	//Metrics shared by every ObjectProcessor
+	private final Counter tasksCompleted;
+	private final Histogram queueNanos;
+	private final Histogram taskNanos;
+	private final Gauge queuedGauge;
+	
 
 	public ObjectProcessor(ProcessTaskFactory f, INetworkController c){
+		this(f, c, DispatchConfig.polling());
+	}
+	
+	/**
+	 * Constructs an ObjectProcessor with a given way of dispatching tasks
+	 * @param f ProcessTaskFactory creating a ProcessTask for each Object
+	 * @param c NetworkController of this ObjectProcessor
+	 * @param dispatch How tasks are handed to the threadpool
+	 */
+	public ObjectProcessor(ProcessTaskFactory f, INetworkController c, DispatchConfig dispatch){
 		this.pTaskFactory = f;
 		this.networkController = c;
-		this.taskQueue = new LinkedBlockingQueue<ProcessTask>();
-		this.threadpool = Executors.newFixedThreadPool(this.maxThreads);
+		this.dispatch = dispatch;
+		//Bounded, so the ObjectPoller blocks while tasks are behind, and stops taking Objects from its Receiver
+		this.taskQueue = new LinkedBlockingQueue<ProcessTask>(this.dispatch.getQueueCapacity());
+		this.threadpool = this.dispatch.newThreadPool(defaultThreads);
+		
+		MetricsRegistry registry = MetricsRegistry.getDefault();
+		this.tasksCompleted = registry.counter("objectprocessor.tasksCompleted");
+		this.queueNanos = registry.histogram("objectprocessor.queueNanos");
+		this.taskNanos = registry.histogram("objectprocessor.taskNanos");
+		this.queuedGauge = new Gauge(){
+			@Override
+			public long get() {
+				return getQueueDepth();
+			}
+		};
+		registry.register("objectprocessor.queueDepth", this.queuedGauge);
 	}
 	
 	/**
@@ -44,13 +91,23 @@ public class ObjectProcessor extends Thread{
 	
 	/**
 	 * Method to submit an Object to be processed
+	 * With DIRECT dispatch, a RejectedExecutionException is thrown if the REJECT policy refuses the task
+	 * A RejectedExecutionException is also thrown once the ObjectProcessor is being drained
 	 * @param o Object to be Processed
 	 */
 	public void process(Object o){
 		
 		if(o!=null){
+			if(!this.accepting)
+				throw new RejectedExecutionException("Error: ObjectProcessor is shutting down!");
+			
 			ProcessTask task = this.pTaskFactory.newTask(o, this);
 			
+			if(this.dispatch.isDirect()){
+				this.threadpool.execute(task);
+				return;
+			}
+			
 			try {
 				this.taskQueue.put(task);
 			} catch (InterruptedException e) {
@@ -59,23 +116,62 @@ public class ObjectProcessor extends Thread{
 		}
 	}
 	
+	/**
+	 * Returns the number of Objects submitted and not yet being processed
+	 * @return Number of queued tasks
+	 */
+	public int getQueueDepth(){
+		return this.taskQueue.size() + this.threadpool.getQueue().size();
+	}
+	
 	/**
 	 * Method to shutdown an active ObjectProcessor thread.
-	 * Waits for any tasks currently executing to finish before stopping
+	 * Waits for any tasks currently queued or executing to finish before stopping
 	 */
-	public synchronized void shutdown(){
-		//initiate shutdown of threadpool
-		this.threadpool.shutdown();
-		//wait for all connections to be closed
-		while(!this.threadpool.isTerminated());
-		//Interrupt the Sender thread once threadpool is terminated
-		if(this.isAlive())
-		this.interrupt();
-
+	public void shutdown(){
+		drain(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Stop accepting new Objects, process every queued Object until the deadline, then stop.
+	 */
+	@Override
+	public synchronized DrainReport drain(long timeout, TimeUnit unit){
+		long deadline = PoolDrainer.deadline(timeout, unit);
+		this.accepting = false;
+		
+		//Stop the dispatcher thread, then hand its queued tasks straight to the threadpool
+		if(this.isAlive()){
+			this.interrupt();
+			PoolDrainer.join(this, deadline);
+		}
+		List<ProcessTask> queued = new ArrayList<ProcessTask>();
+		this.taskQueue.drainTo(queued);
+		for(ProcessTask task : queued)
+			this.threadpool.execute(task);
+		
+		DrainReport report = PoolDrainer.drain("ObjectProcessor", this.threadpool, deadline);
+		MetricsRegistry.getDefault().unregister("objectprocessor.queueDepth", this.queuedGauge);
+		return report;
+	}
+	
+	/**
+	 * Record the metrics of a task which has finished running
+	 * @param submitted When the task was submitted, from System.nanoTime()
+	 * @param started When the task started running
+	 */
+	void completed(long submitted, long started){
+		this.queueNanos.record(started - submitted);
+		this.taskNanos.recordSince(started);
+		this.tasksCompleted.increment();
 	}
 	
 	public void run() {
 		
+		//Tasks are already submitted straight to the threadpool, nothing to dispatch
+		if(this.dispatch.isDirect())
+			return;
+		
 		//Run as long as the Thread is uninterrupted
 		while(!isInterrupted()){
 		
@@ -85,8 +181,8 @@ public class ObjectProcessor extends Thread{
 					//Read from the queue
 					task = this.taskQueue.poll(500,TimeUnit.MILLISECONDS);
 				} catch (InterruptedException e) {
-					//Interrupted while waiting for new send task
-					e.printStackTrace();
+					//Interrupted while waiting for a new task, restore the flag so the loop ends
+					this.interrupt();
 				}
 				
 				if(task!=null){
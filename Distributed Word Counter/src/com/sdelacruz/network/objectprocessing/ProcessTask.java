@@ -15,6 +15,8 @@ public abstract class ProcessTask implements Runnable {
 	
 	protected Object processObject;
 	protected ObjectProcessor objectProcessor;
+	//When the task was created, which is when its Object was submitted
+	private final long submitted = System.nanoTime();
 	
 	protected ProcessTask(Object o, ObjectProcessor p){
 		this.processObject = o;
@@ -24,7 +26,12 @@ public abstract class ProcessTask implements Runnable {
 	@Override
 	public void run() {
 		
-		process(this.processObject);
+		long started = System.nanoTime();
+		try {
+			process(this.processObject);
+		} finally {
+			this.objectProcessor.completed(this.submitted, started);
+		}
 
 	}
 	
@@ -0,0 +1,117 @@
+package com.sdelacruz.wordcounter;
+
+import java.io.Serializable;
+
+/**
+ * Class depicting a Count-Min Sketch of word counts.
+ * Each word is counted in one counter of every row, picked by its hash, and its count estimated as the
+ * smallest of those counters. Estimates are never below the true count, and exceed it by at most
+ * e/width of the total count with probability at least 1 - e^-depth.
+ *
+ * Sketches of the same size are merged by adding their counters, so partial counts can be sketched
+ * separately and merged anywhere.
+ *
+ * This class is not thread safe.
+ *
+ */
+public class CountMinSketch implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int width;
+	private final int depth;
+	private final int mask;
+	//Row r holds counters r * width to (r + 1) * width - 1
+	private final long[] counters;
+	private long total = 0;
+
+	/**
+	 * Constructs an empty CountMinSketch
+	 * @param width Counters per row, a power of two
+	 * @param depth Number of rows
+	 */
+	public CountMinSketch(int width, int depth){
+		this.width = width;
+		this.depth = depth;
+		this.mask = width - 1;
+		this.counters = new long[width * depth];
+	}
+
+	/**
+	 * Count a word a number of times
+	 * @param hash Hash of the word, see WordSketch.hash(String)
+	 * @param count Number of times to count the word
+	 */
+	public void add(long hash, long count){
+		int h1 = (int)hash;
+		int h2 = (int)(hash >>> 32);
+		for(int r = 0;r<this.depth;r++)
+			this.counters[r * this.width + ((h1 + r * h2) & this.mask)] += count;
+		this.total += count;
+	}
+
+	/**
+	 * Returns the estimated count of a word, never below its true count
+	 * @param hash Hash of the word, see WordSketch.hash(String)
+	 * @return Estimated count
+	 */
+	public long estimate(long hash){
+		int h1 = (int)hash;
+		int h2 = (int)(hash >>> 32);
+		long min = Long.MAX_VALUE;
+		for(int r = 0;r<this.depth;r++)
+			min = Math.min(min, this.counters[r * this.width + ((h1 + r * h2) & this.mask)]);
+		return min;
+	}
+
+	/**
+	 * Add every counter of another sketch of the same size to this one
+	 * @param other Sketch to merge
+	 */
+	public void merge(CountMinSketch other){
+		if(other.width!=this.width || other.depth!=this.depth)
+			throw new IllegalArgumentException("Error: only sketches of the same size can be merged!");
+		for(int i = 0;i<this.counters.length;i++)
+			this.counters[i] += other.counters[i];
+		this.total += other.total;
+	}
+
+	/**
+	 * Returns the most an estimate should exceed its word's true count, e/width of the total count
+	 * @return Error bound, holding with probability at least 1 - e^-depth
+	 */
+	public long getErrorBound(){
+		return (long)Math.ceil(Math.E / this.width * this.total);
+	}
+
+	public long getTotal(){
+		return this.total;
+	}
+
+	public int getWidth(){
+		return this.width;
+	}
+
+	public int getDepth(){
+		return this.depth;
+	}
+
+	/**
+	 * Returns the counters of the sketch, row by row, for encoding
+	 * @return The sketch's counters, which should not be modified
+	 */
+	public long[] getCounters(){
+		return this.counters;
+	}
+
+	/**
+	 * Set the counters and total of an empty sketch, as read by a codec
+	 * @param counters Counters row by row, width * depth of them
+	 * @param total Total count of the sketch
+	 */
+	public void load(long[] counters, long total){
+		System.arraycopy(counters, 0, this.counters, 0, this.counters.length);
+		this.total = total;
+	}
+
+}
@@ -0,0 +1,32 @@
+package com.sdelacruz.wordcounter;
+
+/**
+ * Interface defining a CountReducer. A CountReducer merges partial WordCountTables, as they are
+ * completed, into a single global count.
+ *
+ * Implementations must allow reduce(WordCountTable) to be called by many threads at once.
+ *
+ */
+public interface CountReducer {
+
+	/**
+	 * Merge a partial count into the global count.
+	 * The partial table is not retained, so the caller may clear and reuse it afterwards.
+	 * @param partial Partial count to merge
+	 */
+	void reduce(WordCountTable partial);
+
+	/**
+	 * Returns a copy of the global count as it currently stands.
+	 * Partial counts being reduced concurrently may or may not be included.
+	 * @return A new table holding the current global count
+	 */
+	WordCountTable snapshot();
+
+	/**
+	 * Returns the global count. Should only be called once no more partial counts are being reduced.
+	 * @return A table holding the global count
+	 */
+	WordCountTable result();
+
+}
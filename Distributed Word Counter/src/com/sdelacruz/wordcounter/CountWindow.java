@@ -0,0 +1,88 @@
+package com.sdelacruz.wordcounter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class depicting a window of time a WindowedCountReducer keeps a running count over.
+ * A window is made of slices of equal length, and moves forward a whole slice at a time. A tumbling
+ * window has a single slice, so starts again from nothing once its length has passed; a sliding
+ * window of n slices covers the last n - 1 whole slices and the slice in progress.
+ *
+ */
+public class CountWindow {
+
+	private final long lengthMillis;
+	private final long slideMillis;
+
+	private CountWindow(long lengthMillis, long slideMillis){
+		if(slideMillis<1 || lengthMillis<slideMillis)
+			throw new IllegalArgumentException("Error: a window must be at least as long as its slide, and longer than 0!");
+		if(lengthMillis % slideMillis!=0)
+			throw new IllegalArgumentException("Error: a window's length must be a whole number of slides!");
+		this.lengthMillis = lengthMillis;
+		this.slideMillis = slideMillis;
+	}
+
+	/**
+	 * Returns a tumbling window, counting from nothing again each time its length passes
+	 * @param length Length of the window
+	 * @param unit Unit of length
+	 * @return A tumbling CountWindow
+	 */
+	public static CountWindow tumbling(long length, TimeUnit unit){
+		long millis = unit.toMillis(length);
+		return new CountWindow(millis, millis);
+	}
+
+	/**
+	 * Returns a sliding window, moving forward by one slide at a time
+	 * @param length Length of the window, a whole number of slides
+	 * @param slide How far the window moves at a time, which is also how late a count may expire
+	 * @param unit Unit of length and slide
+	 * @return A sliding CountWindow
+	 */
+	public static CountWindow sliding(long length, long slide, TimeUnit unit){
+		return new CountWindow(unit.toMillis(length), unit.toMillis(slide));
+	}
+
+	public long getLengthMillis(){
+		return this.lengthMillis;
+	}
+
+	public long getSlideMillis(){
+		return this.slideMillis;
+	}
+
+	/**
+	 * Returns the number of slices the window is made of
+	 * @return Length divided by slide, 1 for a tumbling window
+	 */
+	public int getSlices(){
+		return (int)(this.lengthMillis / this.slideMillis);
+	}
+
+	public boolean isTumbling(){
+		return this.lengthMillis==this.slideMillis;
+	}
+
+	@Override
+	public boolean equals(Object o){
+		if(!(o instanceof CountWindow))
+			return false;
+		CountWindow other = (CountWindow)o;
+		return this.lengthMillis==other.lengthMillis && this.slideMillis==other.slideMillis;
+	}
+
+	@Override
+	public int hashCode(){
+		return (int)(this.lengthMillis * 31 + this.slideMillis);
+	}
+
+	@Override
+	public String toString(){
+		if(isTumbling())
+			return "tumbling " + this.lengthMillis + "ms";
+		return "sliding " + this.lengthMillis + "ms by " + this.slideMillis + "ms";
+	}
+
+}
@@ -0,0 +1,20 @@
+package com.sdelacruz.wordcounter;
+
+/**
+ * Engines a WordCounter can use to count a String[] submitted with countWords(String[]).
+ *
+ */
+public enum CountingEngine {
+
+	/**
+	 * Each String[] is counted as a single task by one thread of the WordCounter's threadpool
+	 */
+	THREAD_POOL,
+
+	/**
+	 * Each String[] is recursively split by a ForkJoinPool, so one large array is counted by every
+	 * available thread, with the partial counts merged on the way back up
+	 */
+	FORK_JOIN
+
+}
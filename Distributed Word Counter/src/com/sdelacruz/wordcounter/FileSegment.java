@@ -0,0 +1,141 @@
+package com.sdelacruz.wordcounter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class depicting a FileSegment: a range of bytes within a file.
+ * Segments created by split(File, int) start and end on word boundaries, so each one can be
+ * tokenized independently of the others, as do the parts of a segment cut with head(long).
+ *
+ */
+public class FileSegment implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	//A single mapping can not be larger than this
+	private static final long maxSegmentLength = Integer.MAX_VALUE;
+	//Number of bytes read at a time while looking for a word boundary
+	private static final int scanSize = 4096;
+
+	private final String path;
+	private final long offset;
+	private final long length;
+
+	/**
+	 * Constructs a FileSegment
+	 * @param path Path of the file
+	 * @param offset Offset of the first byte of the segment
+	 * @param length Number of bytes in the segment
+	 */
+	public FileSegment(String path, long offset, long length){
+		this.path = path;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	public String getPath(){
+		return this.path;
+	}
+
+	public long getOffset(){
+		return this.offset;
+	}
+
+	public long getLength(){
+		return this.length;
+	}
+
+	/**
+	 * Split a file into roughly equal segments which begin and end on word boundaries.
+	 * More segments than requested are returned if a segment would be too large to map.
+	 * @param file File to split
+	 * @param segments Number of segments wanted
+	 * @return List of segments covering the whole file, in order
+	 * @throws IOException if the file can not be read
+	 */
+	public static List<FileSegment> split(File file, int segments) throws IOException {
+
+		List<FileSegment> split = new ArrayList<FileSegment>();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			long target = Math.max(1, size / Math.max(1, segments));
+			if(target>maxSegmentLength - scanSize)
+				target = maxSegmentLength - scanSize;
+
+			ByteBuffer scan = ByteBuffer.allocate(scanSize);
+			long start = 0;
+			while(start<size){
+				long end = nextBoundary(channel, scan, Math.min(size, start + target), size);
+				split.add(new FileSegment(file.getPath(), start, end - start));
+				start = end;
+			}
+		} finally {
+			raf.close();
+		}
+
+		return split;
+	}
+
+	/**
+	 * Returns the first part of this segment, ending on the first word boundary at least length bytes in.
+	 * Only the bytes from there to the boundary are read.
+	 * @param length Least number of bytes wanted
+	 * @return The first part of the segment, or the whole segment if it has no word boundary that far in
+	 * @throws IOException if the file can not be read
+	 */
+	public FileSegment head(long length) throws IOException {
+		if(length>=this.length)
+			return this;
+		RandomAccessFile raf = new RandomAccessFile(this.path, "r");
+		try {
+			long end = nextBoundary(raf.getChannel(), ByteBuffer.allocate(scanSize), this.offset + Math.max(0, length),
+					this.offset + this.length);
+			return new FileSegment(this.path, this.offset, end - this.offset);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Returns the rest of this segment following its first part
+	 * @param head First part of this segment, see head(long)
+	 * @return The rest of the segment, which is empty if head is the whole segment
+	 */
+	public FileSegment after(FileSegment head){
+		return new FileSegment(this.path, this.offset + head.length, this.length - head.length);
+	}
+
+	//Returns the position just after the first delimiter at or following position, or the end
+	private static long nextBoundary(FileChannel channel, ByteBuffer scan, long position, long end) throws IOException {
+		while(position<end){
+			scan.clear();
+			if(scan.capacity()>end - position)
+				scan.limit((int)(end - position));
+			int read = channel.read(scan, position);
+			if(read<=0)
+				break;
+			for(int n = 0;n<read;n++){
+				if(WordTokenizer.isDelimiter(scan.get(n)))
+					return position + n + 1;
+			}
+			position += read;
+		}
+		return end;
+	}
+
+	@Override
+	public String toString(){
+		return this.path + "[" + this.offset + "+" + this.length + "]";
+	}
+
+}
@@ -0,0 +1,111 @@
+package com.sdelacruz.wordcounter;
+
+import java.io.Serializable;
+
+/**
+ * Class depicting a HyperLogLog estimate of the number of distinct words counted.
+ * The first precision bits of each word's hash pick a register, which keeps the longest run of leading
+ * zeros seen in the rest of the hash. The harmonic mean of the registers estimates the number of distinct
+ * hashes, with a standard error of about 1.04/sqrt(2^precision); small counts are estimated by linear counting.
+ *
+ * Sketches of the same precision are merged by keeping the larger of each pair of registers.
+ *
+ * This class is not thread safe.
+ *
+ */
+public class HyperLogLog implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int precision;
+	private final byte[] registers;
+
+	/**
+	 * Constructs an empty HyperLogLog
+	 * @param precision Bits of each hash used to pick a register, between 4 and 18
+	 */
+	public HyperLogLog(int precision){
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	/**
+	 * Record a word
+	 * @param hash Hash of the word, see WordSketch.hash(String)
+	 */
+	public void add(long hash){
+		int register = (int)(hash >>> (64 - this.precision));
+		//Leading zeros of the remaining bits, with a guard bit so an all zero remainder is bounded
+		long rest = (hash << this.precision) | (1L << (this.precision - 1));
+		byte rank = (byte)(Long.numberOfLeadingZeros(rest) + 1);
+		if(rank>this.registers[register])
+			this.registers[register] = rank;
+	}
+
+	/**
+	 * Keep the larger of each pair of registers of this and another sketch of the same precision
+	 * @param other Sketch to merge
+	 */
+	public void merge(HyperLogLog other){
+		if(other.precision!=this.precision)
+			throw new IllegalArgumentException("Error: only sketches of the same precision can be merged!");
+		for(int i = 0;i<this.registers.length;i++){
+			if(other.registers[i]>this.registers[i])
+				this.registers[i] = other.registers[i];
+		}
+	}
+
+	/**
+	 * Returns the estimated number of distinct words recorded
+	 * @return Estimated number of distinct words
+	 */
+	public long estimate(){
+		int m = this.registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for(byte r : this.registers){
+			sum += 1.0 / (1L << r);
+			if(r==0)
+				zeros++;
+		}
+		double estimate = alpha(m) * m * m / sum;
+		//Linear counting is more accurate while many registers are still empty
+		if(estimate<=2.5 * m && zeros>0)
+			estimate = m * Math.log((double)m / zeros);
+		return Math.round(estimate);
+	}
+
+	public int getPrecision(){
+		return this.precision;
+	}
+
+	/**
+	 * Returns the registers of the sketch, for encoding
+	 * @return The sketch's registers, which should not be modified
+	 */
+	public byte[] getRegisters(){
+		return this.registers;
+	}
+
+	/**
+	 * Set the registers of an empty sketch, as read by a codec
+	 * @param registers 2^precision registers
+	 */
+	public void load(byte[] registers){
+		System.arraycopy(registers, 0, this.registers, 0, this.registers.length);
+	}
+
+	private static double alpha(int m){
+		switch(m){
+		case 16:
+			return 0.673;
+		case 32:
+			return 0.697;
+		case 64:
+			return 0.709;
+		default:
+			return 0.7213 / (1 + 1.079 / m);
+		}
+	}
+
+}
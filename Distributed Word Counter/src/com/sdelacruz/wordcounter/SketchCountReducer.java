@@ -0,0 +1,60 @@
+package com.sdelacruz.wordcounter;
+
+/**
+ * CountReducer keeping only a WordSketch of the global count, so its memory is fixed by the sketch's
+ * SketchSpec however many words and distinct words are counted.
+ * Passing one to a WordCounter puts the WordCounter in sketch mode: each task still counts its own
+ * words exactly, and only the sketch is kept once the task's count is merged.
+ *
+ * A sketch can not list the words it has counted, so snapshot() and result() return empty tables.
+ * Counts are read from the sketch returned by getSketch() instead.
+ *
+ */
+public class SketchCountReducer implements CountReducer {
+
+	private final WordSketch sketch;
+
+	/**
+	 * Constructs a SketchCountReducer
+	 * @param spec Size of the sketch
+	 */
+	public SketchCountReducer(SketchSpec spec){
+		this.sketch = spec.newSketch();
+	}
+
+	@Override
+	public synchronized void reduce(WordCountTable partial) {
+		this.sketch.add(partial);
+	}
+
+	/**
+	 * Merge another sketch, such as a worker's sketch of its counts
+	 * @param other Sketch of the same spec
+	 */
+	public synchronized void reduce(WordSketch other) {
+		this.sketch.merge(other);
+	}
+
+	public SketchSpec getSpec() {
+		return this.sketch.getSpec();
+	}
+
+	/**
+	 * Returns a copy of the sketch as it currently stands
+	 * @return A new WordSketch
+	 */
+	public synchronized WordSketch getSketch() {
+		return new WordSketch(this.sketch);
+	}
+
+	@Override
+	public WordCountTable snapshot() {
+		return new WordCountTable();
+	}
+
+	@Override
+	public WordCountTable result() {
+		return snapshot();
+	}
+
+}
@@ -0,0 +1,107 @@
+package com.sdelacruz.wordcounter;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+
+/**
+ * Class depicting the size of a WordSketch. Sketches can only be merged with sketches of the same spec.
+ *
+ * A Count-Min Sketch of width w and depth d overestimates each word's count by at most e/w of the total
+ * count, with probability at least 1 - e^-d, in 8wd bytes. A HyperLogLog of precision p estimates the
+ * number of distinct words with a standard error of about 1.04/sqrt(2^p), in 2^p bytes.
+ *
+ */
+public class SketchSpec implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	//Most counters a Count-Min Sketch may hold, so they always fit in a single array
+	public static final int maxCounters = 1 << 28;
+
+	private final int width;
+	private final int depth;
+	private final int precision;
+
+	/**
+	 * Constructs a SketchSpec
+	 * @param width Counters per row of the Count-Min Sketch, a power of two
+	 * @param depth Rows of the Count-Min Sketch, at most maxCounters / width
+	 * @param precision Bits of each hash used to pick a HyperLogLog register, between 4 and 18
+	 */
+	public SketchSpec(int width, int depth, int precision){
+		check(width, depth, precision);
+		this.width = width;
+		this.depth = depth;
+		this.precision = precision;
+	}
+
+	private static void check(int width, int depth, int precision){
+		if(width<1 || Integer.bitCount(width)!=1)
+			throw new IllegalArgumentException("Error: Count-Min Sketch width must be a power of two!");
+		if(depth<1)
+			throw new IllegalArgumentException("Error: Count-Min Sketch depth must be at least one!");
+		if((long)width * depth>maxCounters)
+			throw new IllegalArgumentException("Error: Count-Min Sketch can hold at most " + maxCounters + " counters!");
+		if(precision<4 || precision>18)
+			throw new IllegalArgumentException("Error: HyperLogLog precision must be between 4 and 18!");
+	}
+
+	//A deserialized spec is checked as the constructor would, as it sizes every sketch made from it
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		try {
+			check(this.width, this.depth, this.precision);
+		} catch (IllegalArgumentException e) {
+			throw new InvalidObjectException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns a new, empty sketch of this spec
+	 * @return A new WordSketch
+	 */
+	public WordSketch newSketch(){
+		return new WordSketch(this);
+	}
+
+	public int getWidth(){
+		return this.width;
+	}
+
+	public int getDepth(){
+		return this.depth;
+	}
+
+	public int getPrecision(){
+		return this.precision;
+	}
+
+	/**
+	 * Returns the memory taken by a sketch of this spec
+	 * @return Size of the sketch's counters and registers in bytes
+	 */
+	public long getBytes(){
+		return 8L * this.width * this.depth + (1 << this.precision);
+	}
+
+	@Override
+	public boolean equals(Object o){
+		if(!(o instanceof SketchSpec))
+			return false;
+		SketchSpec other = (SketchSpec)o;
+		return this.width==other.width && this.depth==other.depth && this.precision==other.precision;
+	}
+
+	@Override
+	public int hashCode(){
+		return (this.width * 31 + this.depth) * 31 + this.precision;
+	}
+
+	@Override
+	public String toString(){
+		return String.format("cms %dx%d, hll p=%d (%d bytes)", this.depth, this.width, this.precision, getBytes());
+	}
+
+}
@@ -0,0 +1,93 @@
+package com.sdelacruz.wordcounter;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * CountReducer holding the global count in a lock-striped shared table.
+ * Words are divided between a number of stripes by hash, each stripe being a WordCountTable guarded
+ * by its own lock, so partial counts from different threads are merged concurrently.
+ * A reducing thread takes whichever stripes are free first, and only blocks once every stripe it
+ * still needs is held by another thread.
+ *
+ */
+public class StripedCountReducer implements CountReducer {
+
+	private final WordCountTable[] stripes;
+	private final ReentrantLock[] locks;
+
+	/**
+	 * Constructs a StripedCountReducer
+	 * @param stripes Number of stripes, usually a small multiple of the number of reducing threads
+	 */
+	public StripedCountReducer(int stripes){
+		if(stripes<1)
+			throw new IllegalArgumentException("Error: a StripedCountReducer needs at least one stripe!");
+		this.stripes = new WordCountTable[stripes];
+		this.locks = new ReentrantLock[stripes];
+		for(int n = 0;n<stripes;n++){
+			this.stripes[n] = new WordCountTable();
+			this.locks[n] = new ReentrantLock();
+		}
+	}
+
+	@Override
+	public void reduce(WordCountTable partial) {
+
+		int count = this.stripes.length;
+		boolean[] merged = new boolean[count];
+		int remaining = count;
+
+		while(remaining>0){
+			int blockOn = -1;
+			//Merge every stripe which is not locked by another thread
+			for(int n = 0;n<count;n++){
+				if(!merged[n]){
+					if(this.locks[n].tryLock()){
+						try {
+							this.stripes[n].mergeStripe(partial, n, count);
+						} finally {
+							this.locks[n].unlock();
+						}
+						merged[n] = true;
+						remaining--;
+					}
+					else if(blockOn<0){
+						blockOn = n;
+					}
+				}
+			}
+			//Every remaining stripe is busy, so wait for one of them rather than spinning
+			if(blockOn>=0){
+				this.locks[blockOn].lock();
+				try {
+					this.stripes[blockOn].mergeStripe(partial, blockOn, count);
+				} finally {
+					this.locks[blockOn].unlock();
+				}
+				merged[blockOn] = true;
+				remaining--;
+			}
+		}
+
+	}
+
+	@Override
+	public WordCountTable snapshot() {
+		WordCountTable snapshot = new WordCountTable();
+		for(int n = 0;n<this.stripes.length;n++){
+			this.locks[n].lock();
+			try {
+				snapshot.merge(this.stripes[n]);
+			} finally {
+				this.locks[n].unlock();
+			}
+		}
+		return snapshot;
+	}
+
+	@Override
+	public WordCountTable result() {
+		return snapshot();
+	}
+
+}
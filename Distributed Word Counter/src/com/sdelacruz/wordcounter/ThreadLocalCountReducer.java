@@ -0,0 +1,59 @@
+package com.sdelacruz.wordcounter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CountReducer giving each reducing thread its own accumulator table.
+ * Partial counts are merged into the calling thread's accumulator without contention, and the
+ * accumulators are only merged with each other when a snapshot or the result is requested.
+ *
+ */
+public class ThreadLocalCountReducer implements CountReducer {
+
+	//Every accumulator created so far, so they can be found again when merging
+	private final List<WordCountTable> accumulators;
+
+	private final ThreadLocal<WordCountTable> accumulator = new ThreadLocal<WordCountTable>(){
+		@Override
+		protected WordCountTable initialValue(){
+			WordCountTable table = new WordCountTable();
+			synchronized(accumulators){
+				accumulators.add(table);
+			}
+			return table;
+		}
+	};
+
+	public ThreadLocalCountReducer(){
+		this.accumulators = new ArrayList<WordCountTable>();
+	}
+
+	@Override
+	public void reduce(WordCountTable partial) {
+		WordCountTable table = this.accumulator.get();
+		//Only contended while a snapshot is being taken
+		synchronized(table){
+			table.merge(partial);
+		}
+	}
+
+	@Override
+	public WordCountTable snapshot() {
+		WordCountTable snapshot = new WordCountTable();
+		synchronized(this.accumulators){
+			for(WordCountTable table : this.accumulators){
+				synchronized(table){
+					snapshot.merge(table);
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	@Override
+	public WordCountTable result() {
+		return snapshot();
+	}
+
+}
@@ -0,0 +1,58 @@
+package com.sdelacruz.wordcounter;
+
+/**
+ * CountReducer keeping only a TopKSummary of the global count, so its memory is bounded by the
+ * summary's capacity rather than by the number of distinct words counted.
+ * Passing one to a WordCounter puts the WordCounter in top-k mode: each task still counts its own
+ * words exactly, and only the summary is kept once the task's count is merged.
+ *
+ * snapshot() and result() return the summary's estimates, see TopKSummary for their error bound.
+ *
+ */
+public class TopKCountReducer implements CountReducer {
+
+	private final TopKSummary summary;
+
+	/**
+	 * Constructs a TopKCountReducer
+	 * @param capacity Capacity of the summary, a few times the largest k to be asked for
+	 */
+	public TopKCountReducer(int capacity){
+		this.summary = new TopKSummary(capacity);
+	}
+
+	@Override
+	public synchronized void reduce(WordCountTable partial) {
+		this.summary.add(partial);
+	}
+
+	/**
+	 * Merge the counts of another summary, such as a worker's summary of its counts
+	 * @param counts Counts held by the other summary
+	 * @param total Number of words the other summary summarises
+	 */
+	public synchronized void reduce(WordCountTable counts, long total) {
+		this.summary.add(counts, total);
+	}
+
+	/**
+	 * Returns a copy of the summary as it currently stands
+	 * @return A new TopKSummary
+	 */
+	public synchronized TopKSummary getSummary() {
+		TopKSummary copy = new TopKSummary(this.summary);
+		copy.compact();
+		return copy;
+	}
+
+	@Override
+	public WordCountTable snapshot() {
+		return getSummary().getCounts();
+	}
+
+	@Override
+	public WordCountTable result() {
+		return snapshot();
+	}
+
+}
@@ -0,0 +1,233 @@
+package com.sdelacruz.wordcounter;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Class depicting a mergeable Misra-Gries summary of a word count, for finding the most frequent words
+ * in bounded memory.
+ *
+ * Counts are added exactly until the summary holds more than twice its capacity, then shrunk back to
+ * capacity by taking the count of the word ranked capacity + 1 off every count, see WordCountTable.shrink(int).
+ * Each shrink takes at least capacity + 1 times that amount off the summed counts, so however many
+ * summaries are added or merged, and in whatever order, every estimate is at most
+ * (total - sum of estimates) / (capacity + 1) below the word's true count, and never above it.
+ * That bound is at most total / (capacity + 1), and is returned by getErrorBound().
+ *
+ * Any word counted more often than the error bound is held by the summary. The words which may be
+ * among the true top k are given by candidates(int); counting just those words again exactly with
+ * recount(Collection, String[][]) gives the true top k whenever covers(int) is true.
+ *
+ * This class is not thread safe; see TopKCountReducer.
+ *
+ */
+public class TopKSummary implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int capacity;
+	private final WordCountTable counts;
+	//Number of words summarised, counted or not
+	private long total = 0;
+
+	/**
+	 * Constructs an empty TopKSummary
+	 * @param capacity Number of words the summary is shrunk to, a few times the largest k to be asked for
+	 */
+	public TopKSummary(int capacity){
+		if(capacity<1)
+			throw new IllegalArgumentException("Error: a TopKSummary needs a capacity of at least one word!");
+		this.capacity = capacity;
+		this.counts = new WordCountTable(capacity * 2);
+	}
+
+	/**
+	 * Constructs a copy of another TopKSummary
+	 * @param other Summary to copy
+	 */
+	public TopKSummary(TopKSummary other){
+		this(other.capacity);
+		this.counts.merge(other.counts);
+		this.total = other.total;
+	}
+
+	/**
+	 * Add an exact count to the summary
+	 * @param partial Count to add, which is not retained
+	 */
+	public void add(WordCountTable partial){
+		add(partial, partial.total());
+	}
+
+	/**
+	 * Add the counts of another summary, such as one received from a worker
+	 * @param summary Counts held by the other summary, which are not retained
+	 * @param total Number of words the other summary summarises
+	 */
+	public void add(WordCountTable summary, long total){
+		this.counts.merge(summary);
+		this.total += total;
+		//Shrinking sorts every count, so the table is let grow to twice capacity between shrinks
+		if(this.counts.size()>this.capacity * 2)
+			this.counts.shrink(this.capacity);
+	}
+
+	/**
+	 * Merge another summary into this one
+	 * @param other Summary to merge
+	 */
+	public void merge(TopKSummary other){
+		add(other.counts, other.total);
+	}
+
+	/**
+	 * Shrink the summary to at most capacity words, as before it is sent
+	 */
+	public void compact(){
+		this.counts.shrink(this.capacity);
+	}
+
+	/**
+	 * Returns the estimated count of a word, which is never above its true count
+	 * @param word Word to look up
+	 * @return Estimated count, 0 if the word is not held
+	 */
+	public long estimate(String word){
+		return this.counts.get(word);
+	}
+
+	/**
+	 * Returns the most any estimate can be below the true count of its word
+	 * @return Error bound of every estimate
+	 */
+	public long getErrorBound(){
+		return (this.total - this.counts.total()) / (this.capacity + 1);
+	}
+
+	public long getTotal(){
+		return this.total;
+	}
+
+	public int getCapacity(){
+		return this.capacity;
+	}
+
+	/**
+	 * Returns the words held and their estimated counts, at most twice capacity words
+	 * @return The summary's table, which should not be modified
+	 */
+	public WordCountTable getCounts(){
+		return this.counts;
+	}
+
+	/**
+	 * Returns the k words with the highest estimates, highest first
+	 * @param k Number of words
+	 * @return Up to k words
+	 */
+	public List<String> top(int k){
+		List<String> ranked = ranked();
+		return new ArrayList<String>(ranked.subList(0, Math.min(k, ranked.size())));
+	}
+
+	/**
+	 * Returns whether top(k) holds the true top k words, without a recount:
+	 * the kth estimate must be no lower than the true count of any word ranked below it could be
+	 * @param k Number of words
+	 * @return true if the estimates alone decide the top k
+	 */
+	public boolean isCertain(int k){
+		List<String> ranked = ranked();
+		long error = getErrorBound();
+		if(error==0)
+			return true;
+		if(ranked.size()<k)
+			return false;
+		long kth = estimate(ranked.get(k - 1));
+		long next = ranked.size()>k ? estimate(ranked.get(k)) : 0;
+		return kth>=next + error;
+	}
+
+	/**
+	 * Returns the words which may be among the true top k, those whose estimate plus the error bound
+	 * reaches the kth highest estimate
+	 * @param k Number of words
+	 * @return Words to recount
+	 */
+	public Set<String> candidates(int k){
+		List<String> ranked = ranked();
+		Set<String> candidates = new HashSet<String>();
+		if(ranked.isEmpty())
+			return candidates;
+		long kth = estimate(ranked.get(Math.min(k, ranked.size()) - 1));
+		long error = getErrorBound();
+		for(String word : ranked){
+			if(estimate(word) + error<kth)
+				break;
+			candidates.add(word);
+		}
+		return candidates;
+	}
+
+	/**
+	 * Returns whether candidates(k) holds every word of the true top k. A word not held by the summary
+	 * may have been counted up to the error bound times, so may only be ranked in the top k if that reaches
+	 * the kth highest estimate.
+	 * @param k Number of words
+	 * @return true if recounting the candidates gives the true top k
+	 */
+	public boolean covers(int k){
+		long error = getErrorBound();
+		if(error==0)
+			return true;
+		List<String> ranked = ranked();
+		return ranked.size()>=k && error<estimate(ranked.get(k - 1));
+	}
+
+	/**
+	 * Count a set of words exactly, ignoring every other word, as a second pass over the words summarised
+	 * @param candidates Words to count
+	 * @param batches Words to count them in
+	 * @return Exact counts of the candidates
+	 */
+	public static WordCountTable recount(Collection<String> candidates, String[]... batches){
+		Set<String> wanted = candidates instanceof Set ? (Set<String>)candidates : new HashSet<String>(candidates);
+		WordCountTable table = new WordCountTable(wanted.size());
+		for(String[] words : batches){
+			for(String word : words){
+				if(word!=null && wanted.contains(word))
+					table.increment(word);
+			}
+		}
+		return table;
+	}
+
+	//Words held, highest estimate first, ties broken by word so the order is stable
+	private List<String> ranked(){
+		final List<String> ranked = new ArrayList<String>(this.counts.size());
+		this.counts.forEach(new WordCountTable.Visitor(){
+			@Override
+			public void visit(String word, long count) {
+				ranked.add(word);
+			}
+		});
+		Collections.sort(ranked, new Comparator<String>(){
+			@Override
+			public int compare(String a, String b) {
+				long ca = counts.get(a);
+				long cb = counts.get(b);
+				if(ca!=cb)
+					return ca>cb ? -1 : 1;
+				return a.compareTo(b);
+			}
+		});
+		return ranked;
+	}
+
+}
@@ -0,0 +1,181 @@
+package com.sdelacruz.wordcounter;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CountReducer keeping a running count of the words reduced over each of a number of CountWindows,
+ * such as the last minute, 5 minutes and hour. Passing one to a WordCounter fed continuously, e.g. with
+ * countStream(Reader), puts the WordCounter in streaming mode: each completed count is stamped with the
+ * time it is reduced, and can be queried per window at any time with top(CountWindow, int).
+ *
+ * Each window keeps one table per slice, and the running count of the window as the sum of its slices.
+ * A completed count is merged into the window's current slice and its running count. As time moves past a
+ * slice, that slice's table is taken off the running count and emptied for reuse, so expiring old counts
+ * only costs the distinct words of the slice expiring, and no words are ever counted twice.
+ * Windows are moved forward by every reduce and every query, so no thread is needed to expire them.
+ *
+ * Completed counts are also passed on to a CountReducer of the count of all time, if one is given, which
+ * snapshot() and result() return; otherwise they return empty tables.
+ *
+ */
+public class WindowedCountReducer implements CountReducer {
+
+	private final CountReducer allTime;
+	//Guarded by the reducer's monitor
+	private final Map<CountWindow, WindowState> windows;
+
+	/**
+	 * Constructs a WindowedCountReducer
+	 * @param allTime CountReducer of the count of all time, or null to keep only the windows
+	 * @param windows Windows to keep a running count over
+	 */
+	public WindowedCountReducer(CountReducer allTime, CountWindow... windows){
+		if(windows.length==0)
+			throw new IllegalArgumentException("Error: a WindowedCountReducer needs at least one window!");
+		this.allTime = allTime;
+		this.windows = new LinkedHashMap<CountWindow, WindowState>();
+		long now = now();
+		for(CountWindow w : windows)
+			this.windows.put(w, new WindowState(w, now));
+	}
+
+	@Override
+	public void reduce(WordCountTable partial) {
+		if(this.allTime!=null)
+			this.allTime.reduce(partial);
+		synchronized(this){
+			long now = now();
+			for(WindowState w : this.windows.values())
+				w.add(partial, now);
+		}
+	}
+
+	/**
+	 * Returns the words with the highest counts in a window as it currently stands
+	 * @param window One of the reducer's windows
+	 * @param k Number of words
+	 * @return At most k words and their counts, highest first
+	 */
+	public synchronized List<Map.Entry<String, Long>> top(CountWindow window, int k){
+		return state(window).running.top(k);
+	}
+
+	/**
+	 * Returns the count of a word in a window as it currently stands
+	 * @param window One of the reducer's windows
+	 * @param word Word to look up
+	 * @return Count of the word
+	 */
+	public synchronized long get(CountWindow window, String word){
+		return state(window).running.get(word);
+	}
+
+	/**
+	 * Returns a copy of the count of a window as it currently stands
+	 * @param window One of the reducer's windows
+	 * @return A new table holding the window's count
+	 */
+	public synchronized WordCountTable snapshot(CountWindow window){
+		WordCountTable copy = new WordCountTable();
+		copy.merge(state(window).running);
+		return copy;
+	}
+
+	/**
+	 * Returns the count of the last tumbling window to have closed
+	 * @param window One of the reducer's tumbling windows
+	 * @return A table holding the count of the last closed window, empty if none has closed yet
+	 */
+	public synchronized WordCountTable closed(CountWindow window){
+		if(!window.isTumbling())
+			throw new IllegalArgumentException("Error: only a tumbling window closes!");
+		return state(window).closed;
+	}
+
+	@Override
+	public WordCountTable snapshot() {
+		return this.allTime==null ? new WordCountTable() : this.allTime.snapshot();
+	}
+
+	@Override
+	public WordCountTable result() {
+		return this.allTime==null ? new WordCountTable() : this.allTime.result();
+	}
+
+	/**
+	 * Returns the time counts are stamped with and windows are moved forward to
+	 * @return Current time in milliseconds
+	 */
+	protected long now(){
+		return System.currentTimeMillis();
+	}
+
+	//Move a window forward to the current time before it is read
+	private WindowState state(CountWindow window){
+		WindowState w = this.windows.get(window);
+		if(w==null)
+			throw new IllegalArgumentException("Error: " + window + " is not kept by this reducer!");
+		w.advance(now());
+		return w;
+	}
+
+	//Slices of one window, the running count of the window, and the index of the current slice
+	private static class WindowState {
+
+		private final long slideMillis;
+		//Slice n is held in slices[n % slices.length], null for a tumbling window
+		private final WordCountTable[] slices;
+		private WordCountTable running;
+		//Last closed tumbling window
+		private WordCountTable closed;
+		private long slice;
+
+		private WindowState(CountWindow window, long now){
+			this.slideMillis = window.getSlideMillis();
+			this.slices = window.isTumbling() ? null : new WordCountTable[window.getSlices()];
+			if(this.slices!=null){
+				for(int n = 0;n<this.slices.length;n++)
+					this.slices[n] = new WordCountTable();
+			}
+			this.running = new WordCountTable();
+			this.closed = new WordCountTable();
+			this.slice = now / this.slideMillis;
+		}
+
+		private void add(WordCountTable partial, long now){
+			advance(now);
+			if(this.slices!=null)
+				this.slices[(int)(this.slice % this.slices.length)].merge(partial);
+			this.running.merge(partial);
+		}
+
+		private void advance(long now){
+			long target = now / this.slideMillis;
+			if(target<=this.slice)
+				return;
+			if(this.slices==null){
+				//A tumbling window with nothing counted since it closed has an empty closed count
+				this.closed = target==this.slice + 1 ? this.running : new WordCountTable();
+				this.running = new WordCountTable();
+			}
+			else if(target - this.slice>=this.slices.length){
+				//Every slice has expired
+				for(WordCountTable s : this.slices)
+					s.clear();
+				this.running.clear();
+			}
+			else{
+				for(long n = this.slice + 1;n<=target;n++){
+					WordCountTable expired = this.slices[(int)(n % this.slices.length)];
+					this.running.subtract(expired);
+					expired.clear();
+				}
+			}
+			this.slice = target;
+		}
+
+	}
+
+}
@@ -0,0 +1,532 @@
+package com.sdelacruz.wordcounter;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Class depicting a word to count table.
+ * Words are stored in a single open addressing (linear probing) table, with the hash of each word
+ * cached alongside it and counts held in a primitive long[], so no entry objects or boxed counts
+ * are created while counting.
+ *
+ * Tables can be merged into one another, which makes them suitable both for counting a single batch
+ * of words and for reducing many partial counts into one result.
+ *
+ * This class is not thread safe; callers sharing a table between threads must synchronize externally.
+ *
+ */
+public class WordCountTable implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int defaultCapacity = 64;
+
+	//Highest count first, then by word
+	private static final Comparator<Map.Entry<String, Long>> ranking = new Comparator<Map.Entry<String, Long>>(){
+		@Override
+		public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+			int byCount = Long.compare(b.getValue(), a.getValue());
+			return byCount!=0 ? byCount : a.getKey().compareTo(b.getKey());
+		}
+	};
+
+	private transient String[] keys;
+	private transient int[] hashes;
+	private transient long[] counts;
+	private transient int size;
+	private transient int mask;
+	private transient int resizeAt;
+
+	/**
+	 * Visitor used to iterate over the entries of a WordCountTable
+	 */
+	public interface Visitor {
+
+		/**
+		 * Called once for each word held in the table
+		 * @param word The word
+		 * @param count Number of times the word was counted
+		 */
+		void visit(String word, long count);
+
+	}
+
+	/**
+	 * Constructs an empty WordCountTable with a default capacity
+	 */
+	public WordCountTable(){
+		this(defaultCapacity);
+	}
+
+	/**
+	 * Constructs an empty WordCountTable sized to hold a number of distinct words without resizing
+	 * @param expectedSize Expected number of distinct words
+	 */
+	public WordCountTable(int expectedSize){
+		allocate(capacityFor(expectedSize));
+	}
+
+	/**
+	 * Count a single occurrence of a word. Null words are ignored.
+	 * @param word Word to be counted
+	 */
+	public void increment(String word){
+		if(word!=null)
+			addHashed(word, spread(word.hashCode()), 1);
+	}
+
+	/**
+	 * Count every word in an array. Null words are ignored.
+	 * @param words Words to be counted
+	 * @return Number of words counted
+	 */
+	public int incrementAll(String[] words){
+		if(words==null)
+			return 0;
+		return incrementAll(words, 0, words.length);
+	}
+
+	/**
+	 * Count the words in a range of an array. Null words are ignored.
+	 * @param words Words to be counted
+	 * @param from Index of the first word to count (inclusive)
+	 * @param to Index of the last word to count (exclusive)
+	 * @return Number of words counted
+	 */
+	public int incrementAll(String[] words, int from, int to){
+		int counted = 0;
+		for(int n = from;n<to;n++){
+			String word = words[n];
+			if(word!=null){
+				addHashed(word, spread(word.hashCode()), 1);
+				counted++;
+			}
+		}
+		return counted;
+	}
+
+	/**
+	 * Add a number of occurrences of a word. Null words are ignored.
+	 * @param word Word to be counted
+	 * @param count Number of occurrences to add
+	 */
+	public void add(String word, long count){
+		if(word!=null)
+			addHashed(word, spread(word.hashCode()), count);
+	}
+
+	/**
+	 * Count a single occurrence of a word held in a range of a char[].
+	 * A new String is only created the first time the word is seen, so the buffer can be reused
+	 * by the caller as soon as this method returns.
+	 * @param buf Buffer holding the word
+	 * @param off Offset of the first char of the word
+	 * @param len Number of chars in the word
+	 */
+	public void increment(char[] buf, int off, int len){
+		//Same hash as String.hashCode(), so words added either way end up in the same slot
+		int h = 0;
+		for(int n = off;n<off+len;n++)
+			h = 31 * h + buf[n];
+		int hash = spread(h);
+		for(int i = hash & this.mask;;i = (i + 1) & this.mask){
+			String key = this.keys[i];
+			if(key==null){
+				addHashed(new String(buf, off, len), hash, 1);
+				return;
+			}
+			if(this.hashes[i]==hash && matches(key, buf, off, len)){
+				this.counts[i]++;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of times a word has been counted
+	 * @param word Word to look up
+	 * @return Count for the word, or 0 if the word has not been counted
+	 */
+	public long get(String word){
+		if(word==null)
+			return 0;
+		int hash = spread(word.hashCode());
+		for(int i = hash & this.mask;;i = (i + 1) & this.mask){
+			String key = this.keys[i];
+			if(key==null)
+				return 0;
+			if(this.hashes[i]==hash && key.equals(word))
+				return this.counts[i];
+		}
+	}
+
+	/**
+	 * Returns the number of distinct words in the table
+	 * @return Number of distinct words
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * Returns whether the table holds no words
+	 * @return true if no words have been counted
+	 */
+	public boolean isEmpty(){
+		return this.size==0;
+	}
+
+	/**
+	 * Returns the sum of all counts in the table
+	 * @return Total number of words counted
+	 */
+	public long total(){
+		long total = 0;
+		for(int i = 0;i<this.keys.length;i++){
+			if(this.keys[i]!=null)
+				total += this.counts[i];
+		}
+		return total;
+	}
+
+	/**
+	 * Add every count held in another table to this table.
+	 * Cached hashes are reused, so no word is rehashed while merging.
+	 * @param other Table to merge into this one
+	 */
+	public void merge(WordCountTable other){
+		if(other==null||other==this)
+			return;
+		String[] otherKeys = other.keys;
+		for(int i = 0;i<otherKeys.length;i++){
+			if(otherKeys[i]!=null)
+				addHashed(otherKeys[i], other.hashes[i], other.counts[i]);
+		}
+	}
+
+	/**
+	 * Take every count held in another table off this table, removing words left with a count of 0 or less.
+	 * The table is rebuilt smaller once it is mostly empty, so a table which words are taken off as well as
+	 * added to, such as a running count over a window of time, does not keep the size of its largest burst.
+	 * @param other Table of counts to take off
+	 */
+	public void subtract(WordCountTable other){
+		if(other==null)
+			return;
+		if(other==this){
+			clear();
+			return;
+		}
+		String[] otherKeys = other.keys;
+		for(int i = 0;i<otherKeys.length;i++){
+			if(otherKeys[i]!=null)
+				subtractHashed(otherKeys[i], other.hashes[i], other.counts[i]);
+		}
+		if(this.keys.length>defaultCapacity && this.size * 8<this.keys.length)
+			rehash(capacityFor(this.size));
+	}
+
+	/**
+	 * Returns the k words with the highest counts, highest first, ties broken by word
+	 * @param k Number of words
+	 * @return At most k words and their counts
+	 */
+	public List<Map.Entry<String, Long>> top(int k){
+		List<Map.Entry<String, Long>> top = new ArrayList<Map.Entry<String, Long>>();
+		if(k<1)
+			return top;
+		//Min-heap of the best k so far, so each word is compared with the lowest of them
+		PriorityQueue<Map.Entry<String, Long>> heap = new PriorityQueue<Map.Entry<String, Long>>(k, Collections.reverseOrder(ranking));
+		for(int i = 0;i<this.keys.length;i++){
+			if(this.keys[i]==null)
+				continue;
+			if(heap.size()<k){
+				heap.add(new AbstractMap.SimpleImmutableEntry<String, Long>(this.keys[i], this.counts[i]));
+			}
+			else{
+				Map.Entry<String, Long> lowest = heap.peek();
+				if(this.counts[i]>lowest.getValue() || (this.counts[i]==lowest.getValue() && this.keys[i].compareTo(lowest.getKey())<0)){
+					heap.poll();
+					heap.add(new AbstractMap.SimpleImmutableEntry<String, Long>(this.keys[i], this.counts[i]));
+				}
+			}
+		}
+		top.addAll(heap);
+		Collections.sort(top, ranking);
+		return top;
+	}
+
+	/**
+	 * Add the counts held in another table to this table, for only those words belonging to one stripe.
+	 * Words are assigned to stripes by their hash, see stripeOf(String, int).
+	 * @param other Table to merge into this one
+	 * @param stripe Stripe to merge
+	 * @param stripes Total number of stripes
+	 */
+	public void mergeStripe(WordCountTable other, int stripe, int stripes){
+		if(other==null||other==this)
+			return;
+		String[] otherKeys = other.keys;
+		for(int i = 0;i<otherKeys.length;i++){
+			if(otherKeys[i]!=null && stripe(other.hashes[i], stripes)==stripe)
+				addHashed(otherKeys[i], other.hashes[i], other.counts[i]);
+		}
+	}
+
+	/**
+	 * Split the table into one new table per stripe, in a single pass.
+	 * Words are assigned to stripes by their hash, see stripeOf(String, int), so tables partitioned on
+	 * different nodes agree on which stripe holds each word.
+	 * @param stripes Number of stripes
+	 * @return A table for each stripe, holding the words of that stripe
+	 */
+	public WordCountTable[] partition(int stripes){
+		WordCountTable[] parts = new WordCountTable[stripes];
+		for(int n = 0;n<stripes;n++)
+			parts[n] = new WordCountTable(this.size / stripes);
+		for(int i = 0;i<this.keys.length;i++){
+			if(this.keys[i]!=null)
+				parts[stripe(this.hashes[i], stripes)].addHashed(this.keys[i], this.hashes[i], this.counts[i]);
+		}
+		return parts;
+	}
+
+	/**
+	 * Split the table into new tables of at most maxWords words each, in a single pass
+	 * @param maxWords Most words held by any one of the tables
+	 * @return The tables, together holding every word of this table, or none if this table is empty
+	 */
+	public WordCountTable[] split(int maxWords){
+		maxWords = Math.max(1, maxWords);
+		WordCountTable[] parts = new WordCountTable[(this.size + maxWords - 1) / maxWords];
+		int part = -1;
+		for(int i = 0;i<this.keys.length;i++){
+			if(this.keys[i]==null)
+				continue;
+			if(part<0 || parts[part].size==maxWords){
+				part++;
+				parts[part] = new WordCountTable(Math.min(maxWords, this.size - part * maxWords));
+			}
+			parts[part].addHashed(this.keys[i], this.hashes[i], this.counts[i]);
+		}
+		return parts;
+	}
+
+	/**
+	 * Reduce the table to at most capacity words, as a Misra-Gries summary does: the count of the word
+	 * ranked capacity + 1 is taken off every count, and words left with none are removed.
+	 * @param capacity Most words to keep
+	 * @return The amount taken off each count, 0 if the table already held at most capacity words
+	 */
+	public long shrink(int capacity){
+		if(this.size<=capacity)
+			return 0;
+		long[] sorted = new long[this.size];
+		int n = 0;
+		for(int i = 0;i<this.keys.length;i++){
+			if(this.keys[i]!=null)
+				sorted[n++] = this.counts[i];
+		}
+		Arrays.sort(sorted);
+		long cut = sorted[this.size - capacity - 1];
+
+		String[] oldKeys = this.keys;
+		int[] oldHashes = this.hashes;
+		long[] oldCounts = this.counts;
+		allocate(capacityFor(capacity));
+		this.size = 0;
+		for(int i = 0;i<oldKeys.length;i++){
+			if(oldKeys[i]!=null && oldCounts[i]>cut)
+				addHashed(oldKeys[i], oldHashes[i], oldCounts[i] - cut);
+		}
+		return cut;
+	}
+
+	/**
+	 * Returns the stripe a word belongs to, when words are divided between a number of stripes
+	 * @param word Word to look up
+	 * @param stripes Total number of stripes
+	 * @return Stripe of the word, between 0 and stripes - 1
+	 */
+	public static int stripeOf(String word, int stripes){
+		return stripe(spread(word.hashCode()), stripes);
+	}
+
+	/**
+	 * Remove all words from the table, keeping its current capacity so it can be reused
+	 */
+	public void clear(){
+		if(this.size>0){
+			Arrays.fill(this.keys, null);
+			Arrays.fill(this.counts, 0);
+			this.size = 0;
+		}
+	}
+
+	/**
+	 * Visit every word and count held in the table, in no particular order
+	 * @param v Visitor to call for each entry
+	 */
+	public void forEach(Visitor v){
+		for(int i = 0;i<this.keys.length;i++){
+			if(this.keys[i]!=null)
+				v.visit(this.keys[i], this.counts[i]);
+		}
+	}
+
+	/**
+	 * Copy the contents of the table into a new Map
+	 * @return A Map of words to counts
+	 */
+	public Map<String,Long> toMap(){
+		Map<String,Long> map = new HashMap<String,Long>(this.size * 2);
+		for(int i = 0;i<this.keys.length;i++){
+			if(this.keys[i]!=null)
+				map.put(this.keys[i], this.counts[i]);
+		}
+		return map;
+	}
+
+	private void addHashed(String word, int hash, long count){
+		for(int i = hash & this.mask;;i = (i + 1) & this.mask){
+			String key = this.keys[i];
+			if(key==null){
+				this.keys[i] = word;
+				this.hashes[i] = hash;
+				this.counts[i] = count;
+				if(++this.size>this.resizeAt)
+					resize();
+				return;
+			}
+			if(this.hashes[i]==hash && (key==word || key.equals(word))){
+				this.counts[i] += count;
+				return;
+			}
+		}
+	}
+
+	private void subtractHashed(String word, int hash, long count){
+		for(int i = hash & this.mask;;i = (i + 1) & this.mask){
+			String key = this.keys[i];
+			if(key==null)
+				return;
+			if(this.hashes[i]==hash && (key==word || key.equals(word))){
+				this.counts[i] -= count;
+				if(this.counts[i]<=0)
+					remove(i);
+				return;
+			}
+		}
+	}
+
+	//Empty a slot, shifting back later words of the same run which would otherwise no longer be found
+	private void remove(int slot){
+		int gap = slot;
+		for(int i = (slot + 1) & this.mask;this.keys[i]!=null;i = (i + 1) & this.mask){
+			int home = this.hashes[i] & this.mask;
+			//Move the word into the gap unless its home slot lies cyclically after the gap, up to i
+			if(((i - home) & this.mask)>=((i - gap) & this.mask)){
+				this.keys[gap] = this.keys[i];
+				this.hashes[gap] = this.hashes[i];
+				this.counts[gap] = this.counts[i];
+				gap = i;
+			}
+		}
+		this.keys[gap] = null;
+		this.counts[gap] = 0;
+		this.size--;
+	}
+
+	private static int spread(int h){
+		//Mix the high bits into the low bits, as the table index only uses the low bits
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		return h ^ (h >>> 13);
+	}
+
+	//Uses the high bits of the hash, the low bits decide the slot within each stripe's own table
+	private static int stripe(int hash, int stripes){
+		return ((hash >>> 16) & 0x7FFF) % stripes;
+	}
+
+	private static boolean matches(String key, char[] buf, int off, int len){
+		if(key.length()!=len)
+			return false;
+		for(int n = 0;n<len;n++){
+			if(key.charAt(n)!=buf[off+n])
+				return false;
+		}
+		return true;
+	}
+
+	private static int capacityFor(int expectedSize){
+		int capacity = defaultCapacity;
+		//Keep the table at most half full
+		while(capacity < expectedSize * 2 && capacity < (1 << 30))
+			capacity <<= 1;
+		return capacity;
+	}
+
+	private void allocate(int capacity){
+		this.keys = new String[capacity];
+		this.hashes = new int[capacity];
+		this.counts = new long[capacity];
+		this.mask = capacity - 1;
+		this.resizeAt = capacity >>> 1;
+	}
+
+	private void resize(){
+		rehash(this.keys.length << 1);
+	}
+
+	private void rehash(int capacity){
+		String[] oldKeys = this.keys;
+		int[] oldHashes = this.hashes;
+		long[] oldCounts = this.counts;
+		allocate(capacity);
+		for(int n = 0;n<oldKeys.length;n++){
+			if(oldKeys[n]!=null){
+				int i = oldHashes[n] & this.mask;
+				while(this.keys[i]!=null)
+					i = (i + 1) & this.mask;
+				this.keys[i] = oldKeys[n];
+				this.hashes[i] = oldHashes[n];
+				this.counts[i] = oldCounts[n];
+			}
+		}
+	}
+
+	//Only the words and counts are written, the table layout is rebuilt when read
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(this.size);
+		for(int i = 0;i<this.keys.length;i++){
+			if(this.keys[i]!=null){
+				out.writeUTF(this.keys[i]);
+				out.writeLong(this.counts[i]);
+			}
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		int n = in.readInt();
+		allocate(capacityFor(n));
+		for(int i = 0;i<n;i++){
+			String word = in.readUTF();
+			addHashed(word, spread(word.hashCode()), in.readLong());
+		}
+	}
+
+}
@@ -1,24 +1,182 @@
 package com.sdelacruz.wordcounter;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
-public class WordCounter extends Thread {
+import com.sdelacruz.concurrent.BackpressurePolicy;
+import com.sdelacruz.concurrent.DispatchConfig;
+import com.sdelacruz.concurrent.DrainReport;
+import com.sdelacruz.concurrent.Lifecycle;
+import com.sdelacruz.concurrent.PoolDrainer;
+import com.sdelacruz.metrics.Counter;
+import com.sdelacruz.metrics.Gauge;
+import com.sdelacruz.metrics.Histogram;
+import com.sdelacruz.metrics.MetricsRegistry;
+
+public class WordCounter extends Thread implements Lifecycle {
 
 	private BlockingQueue<WordCounterTask> taskQueue;
-	private BlockingQueue<Map<String,Integer>> completedCounts;
-	private ExecutorService threadpool;
-	private final int maxThreads = 10;
+	//Task the dispatcher thread held when drain() interrupted it, read by drain() once the thread has finished
+	private WordCounterTask undispatched = null;
+	private BlockingQueue<WordCountTable> completedCounts;
+	private ThreadPoolExecutor threadpool;
+	//Threads in the pool, one per core by default as counting is CPU bound
+	private final int threads;
+	
+	//Arrays of at most this many words are counted by a single fork/join task
+	private static final int forkJoinThreshold = 1 << 16;
+	
+	private final CountingEngine engine;
+	private final DispatchConfig dispatch;
+	private ForkJoinPool forkJoinPool;
+	//The ForkJoinPool's own queues are unbounded, so the String[]s handed to it and not yet counted are bounded here
+	private Semaphore forkJoinPermits;
+	
+	//When set, completed counts are merged here instead of being queued in completedCounts
+	private final CountReducer reducer;
+	
+	//Number of tasks submitted but not yet completed, and whether new tasks are accepted, guarded by pendingLock
+	private final Object pendingLock = new Object();
+	private long pending = 0;
+	private boolean accepting = true;
+	
+	//Metrics shared by every WordCounter, recorded once per task so counting itself is not slowed
+	private final Counter wordsCounted;
+	private final Counter tasksCompleted;
+	private final Histogram queueNanos;
+	private final Histogram taskNanos;
+	private final Gauge queuedGauge;
+	private final Gauge pendingGauge;
+	
+	//Each pool thread keeps one tokenizer, so stream buffers are reused between tasks
+	private final ThreadLocal<WordTokenizer> tokenizers = new ThreadLocal<WordTokenizer>(){
+		@Override
+		protected WordTokenizer initialValue(){
+			return new WordTokenizer();
+		}
+	};
+	
+	//Each pool thread keeps one table to count into before reducing
+	private final ThreadLocal<WordCountTable> scratchTables = new ThreadLocal<WordCountTable>(){
+		@Override
+		protected WordCountTable initialValue(){
+			return new WordCountTable();
+		}
+	};
+	
+	/**
+	 * Listener given the count of words submitted with countWords(String[], CountListener)
+	 */
+	public interface CountListener {
+		
+		/**
+		 * Called by the counting thread once the words have been counted
+		 * @param wordcount A new table holding the count, owned by the listener from now on
+		 */
+		void counted(WordCountTable wordcount);
+		
+	}
+	
+	/**
+	 * CountListener also given the number of words counted, so it need not count them again.
+	 * Tasks which do not keep track of their words call counted(WordCountTable) instead.
+	 */
+	public interface TotalListener extends CountListener {
+		
+		/**
+		 * Called by the counting thread once the words have been counted
+		 * @param wordcount A new table holding the count, owned by the listener from now on
+		 * @param words Number of words counted
+		 */
+		void counted(WordCountTable wordcount, long words);
+		
+	}
 	
 	public WordCounter(){
-		this.taskQueue = new LinkedBlockingQueue<WordCounterTask>();
-		this.completedCounts = new LinkedBlockingQueue<Map<String,Integer>>();
-		this.threadpool = Executors.newFixedThreadPool(this.maxThreads);
+		this(null);
+	}
+	
+	/**
+	 * Constructs a WordCounter which merges every completed count into one global count
+	 * @param reducer CountReducer to merge completed counts with, or null to queue them for pollCompletedCounts()
+	 */
+	public WordCounter(CountReducer reducer){
+		this(reducer, CountingEngine.THREAD_POOL, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Constructs a WordCounter using a given engine to count String[]s
+	 * @param reducer CountReducer to merge completed counts with, or null to queue them for pollCompletedCounts()
+	 * @param engine CountingEngine to count String[]s submitted with countWords(String[])
+	 * @param parallelism Number of threads used by the FORK_JOIN engine
+	 */
+	public WordCounter(CountReducer reducer, CountingEngine engine, int parallelism){
+		this(reducer, engine, parallelism, DispatchConfig.polling());
+	}
+	
+	/**
+	 * Constructs a WordCounter using a given engine and way of dispatching tasks.
+	 * With DIRECT dispatch, tasks are submitted straight to the threadpool and the WordCounter thread
+	 * does not need to be started. The threadpool has a PLATFORM thread per core, unless the DispatchConfig
+	 * sets otherwise.
+	 * @param reducer CountReducer to merge completed counts with, or null to queue them for pollCompletedCounts()
+	 * @param engine CountingEngine to count String[]s submitted with countWords(String[])
+	 * @param parallelism Number of threads used by the FORK_JOIN engine
+	 * @param dispatch How tasks are handed to the threadpool
+	 */
+	public WordCounter(CountReducer reducer, CountingEngine engine, int parallelism, DispatchConfig dispatch){
+		this.reducer = reducer;
+		this.engine = engine;
+		this.dispatch = dispatch;
+		//Both queues are bounded, so submitting threads block while the pool is behind, and pool threads
+		//block while completed counts are not polled
+		this.taskQueue = new LinkedBlockingQueue<WordCounterTask>(this.dispatch.getQueueCapacity());
+		this.completedCounts = new LinkedBlockingQueue<WordCountTable>(this.dispatch.getQueueCapacity());
+		this.threads = this.dispatch.getThreads(Runtime.getRuntime().availableProcessors());
+		this.threadpool = this.dispatch.newThreadPool(this.threads);
+		if(this.engine==CountingEngine.FORK_JOIN){
+			this.forkJoinPool = new ForkJoinPool(parallelism);
+			this.forkJoinPermits = new Semaphore(this.dispatch.getQueueCapacity());
+		}
+		
+		MetricsRegistry registry = MetricsRegistry.getDefault();
+		this.wordsCounted = registry.counter("wordcounter.wordsCounted");
+		this.tasksCompleted = registry.counter("wordcounter.tasksCompleted");
+		this.queueNanos = registry.histogram("wordcounter.queueNanos");
+		this.taskNanos = registry.histogram("wordcounter.taskNanos");
+		this.queuedGauge = new Gauge(){
+			@Override
+			public long get() {
+				return getQueueDepth();
+			}
+		};
+		this.pendingGauge = new Gauge(){
+			@Override
+			public long get() {
+				return getPendingTasks();
+			}
+		};
+		registry.register("wordcounter.queueDepth", this.queuedGauge);
+		registry.register("wordcounter.pendingTasks", this.pendingGauge);
 	}
 	
 	/**
@@ -26,37 +184,228 @@ public class WordCounter extends Thread {
 	 * @param words Words to be Counted
 	 */
 	public void countWords(String[] words){
+		countWords(words, null);
+	}
+	
+	/**
+	 * Submit a String[] of words for counting, handing its count to a listener rather than delivering it
+	 * @param words Words to be Counted
+	 * @param listener Given the count of the words by the counting thread, or null to deliver it as usual
+	 */
+	public void countWords(String[] words, CountListener listener){
 		if(words!=null&&words.length>0){
-			try {
-				this.taskQueue.put(new WordCounterTask(words));
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
+			if(this.engine==CountingEngine.FORK_JOIN)
+				submit(new ForkJoinRootTask(words, listener));
+			else
+				submit(new ArrayCountTask(words, listener));
+		}
+		else if(listener!=null){
+			listener.counted(new WordCountTable());
+		}
+	}
+	
+	/**
+	 * Submit a stream of whitespace separated words for counting.
+	 * The stream is read incrementally by a single pool thread, and only distinct words are turned
+	 * into Strings. The Reader is closed once it has been read.
+	 * @param in Reader supplying the words to be counted
+	 */
+	public void countStream(Reader in){
+		if(in!=null){
+			submit(new StreamCountTask(in));
+		}
+	}
+	
+	/**
+	 * Submit a channel of UTF-8 encoded, whitespace separated words for counting, e.g. a FileChannel
+	 * or a SocketChannel. The channel is closed once it has been read.
+	 * @param in Channel supplying the words to be counted
+	 */
+	public void countStream(ReadableByteChannel in){
+		if(in!=null)
+			countStream(Channels.newReader(in, Charset.forName("UTF-8").newDecoder(), -1));
+	}
+	
+	/**
+	 * Submit a UTF-8 encoded file of whitespace separated words for counting.
+	 * The file is split into one segment per pool thread, and each segment is mapped into memory
+	 * and tokenized in place, so the file is never read onto the heap.
+	 * One completed count is produced per segment, unless a CountReducer is in use.
+	 * @param file File to be counted
+	 * @return Number of segments submitted, i.e. the number of completed counts to expect
+	 * @throws IOException if the file can not be read
+	 */
+	public int countFile(File file) throws IOException {
+		int submitted = 0;
+		for(FileSegment segment : FileSegment.split(file, this.threads)){
+			if(segment.getLength()>0 && submit(new SegmentCountTask(segment, null)))
+				submitted++;
 		}
+		return submitted;
+	}
+	
+	/**
+	 * Submit one segment of a UTF-8 encoded file of whitespace separated words for counting, mapping it
+	 * into memory as for countFile(File)
+	 * @param segment Segment to be counted, starting and ending on word boundaries
+	 * @param listener Given the count of the segment by the counting thread, or null to deliver it as usual
+	 */
+	public void countSegment(FileSegment segment, CountListener listener){
+		if(segment.getLength()>0)
+			submit(new SegmentCountTask(segment, listener));
+		else if(listener!=null)
+			listener.counted(new WordCountTable());
+	}
+	
+	/**
+	 * Submit a buffer of UTF-8 encoded, whitespace separated words for counting.
+	 * The bytes are tokenized in place, see WordTokenizer.tokenize(ByteBuffer, WordCountTable).
+	 * @param bytes Bytes to be counted, from the buffer's position to its limit. The buffer itself is not changed
+	 * @param listener Given the count of the bytes by the counting thread, or null to deliver it as usual
+	 */
+	public void countBytes(ByteBuffer bytes, CountListener listener){
+		if(bytes!=null&&bytes.hasRemaining())
+			submit(new BufferCountTask(bytes.duplicate(), listener));
+		else if(listener!=null)
+			listener.counted(new WordCountTable());
 	}
 	
 	/**
 	 * Method to shutdown an active WordCounter thread.
-	 * Waits for any tasks currently executing to finish before stopping
+	 * Waits for any tasks currently queued or executing to finish before stopping
+	 */
+	public void shutdown(){
+		drain(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Stop accepting new words, count every queued task until the deadline, then stop.
+	 * Tasks not completed by the deadline are dropped, and anyone waiting in awaitResult() is released
+	 * with the count as it stands.
 	 */
-	public synchronized void shutdown(){
-		//initiate shutdown of threadpool
+	@Override
+	public synchronized DrainReport drain(long timeout, TimeUnit unit){
+		
+		long deadline = PoolDrainer.deadline(timeout, unit);
+		long outstanding;
+		synchronized(this.pendingLock){
+			this.accepting = false;
+			outstanding = this.pending;
+		}
+		
+		//Stop the dispatcher thread, then hand its queued tasks straight to the threadpool
+		List<WordCounterTask> queued = new ArrayList<WordCounterTask>();
+		if(this.isAlive()){
+			this.interrupt();
+			if(PoolDrainer.join(this, deadline) && this.undispatched!=null)
+				queued.add(this.undispatched);
+		}
+		//The pool's queue is bounded, so tasks are queued only while there is room before the deadline, rather
+		//than through its RejectedExecutionHandler, which may block for as long as it takes. Tasks left over are
+		//never run, and so are counted as dropped below
+		this.taskQueue.drainTo(queued);
+		try {
+			for(WordCounterTask task : queued){
+				if(!this.threadpool.getQueue().offer(task, PoolDrainer.remainingNanos(deadline), TimeUnit.NANOSECONDS))
+					break;
+				this.threadpool.prestartAllCoreThreads();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
 		this.threadpool.shutdown();
-		//wait for all connections to be closed
-		while(!this.threadpool.isTerminated());
-		//Interrupt the Sender thread once threadpool is terminated
-		if(this.isAlive())
-		this.interrupt();
-
+		if(this.forkJoinPool!=null)
+			this.forkJoinPool.shutdown();
+		
+		boolean terminated = false;
+		try {
+			terminated = this.threadpool.awaitTermination(PoolDrainer.remainingNanos(deadline), TimeUnit.NANOSECONDS);
+			if(this.forkJoinPool!=null)
+				terminated &= this.forkJoinPool.awaitTermination(PoolDrainer.remainingNanos(deadline), TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		if(!terminated){
+			this.threadpool.shutdownNow();
+			if(this.forkJoinPool!=null)
+				this.forkJoinPool.shutdownNow();
+		}
+		
+		long dropped;
+		synchronized(this.pendingLock){
+			dropped = this.pending;
+			this.pending = 0;
+			this.pendingLock.notifyAll();
+		}
+		MetricsRegistry.getDefault().unregister("wordcounter.queueDepth", this.queuedGauge);
+		MetricsRegistry.getDefault().unregister("wordcounter.pendingTasks", this.pendingGauge);
+		return new DrainReport("WordCounter", Math.max(0, outstanding - dropped), dropped, terminated);
 	}
 	
 	/**
-	 * Poll for completed WordCount maps
+	 * Wait for every submitted task to complete, then return the global count.
+	 * Only available when this WordCounter was constructed with a CountReducer.
+	 * @return The global count of all words submitted so far
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public WordCountTable awaitResult() throws InterruptedException {
+		checkReducer();
+		synchronized(this.pendingLock){
+			while(this.pending>0)
+				this.pendingLock.wait();
+		}
+		return this.reducer.result();
+	}
+	
+	/**
+	 * Returns a copy of the global count as it currently stands, without waiting for running tasks.
+	 * Only available when this WordCounter was constructed with a CountReducer.
+	 * @return The global count of all tasks completed so far
+	 */
+	public WordCountTable snapshot(){
+		checkReducer();
+		return this.reducer.snapshot();
+	}
+	
+	/**
+	 * Returns the number of submitted tasks which have not yet completed
+	 * @return Number of pending tasks
+	 */
+	public long getPendingTasks(){
+		synchronized(this.pendingLock){
+			return this.pending;
+		}
+	}
+	
+	/**
+	 * Returns the number of tasks submitted and not yet started, whether queued for the dispatcher thread
+	 * or for the threadpool
+	 * @return Number of queued tasks
+	 */
+	public int getQueueDepth(){
+		int forkJoinQueued = this.forkJoinPool!=null ? this.forkJoinPool.getQueuedSubmissionCount() : 0;
+		return this.taskQueue.size() + this.threadpool.getQueue().size() + forkJoinQueued;
+	}
+
+	/**
+	 * Returns the number of completed counts waiting for pollCompletedCounts()
+	 * Once the queue is full, counting threads wait for a count to be polled before delivering theirs.
+	 * @return Number of completed counts
+	 */
+	public int getCompletedQueueDepth(){
+		return this.completedCounts.size();
+	}
+
+	/**
+	 * Poll for completed WordCount tables.
+	 * Always returns null when this WordCounter was constructed with a CountReducer.
 	 * @return Completed WordCount
 	 */
-	public Map<String,Integer> pollCompletedCounts(){
+	public WordCountTable pollCompletedCounts(){
 		
-		Map<String,Integer> toReturn = null;
+		WordCountTable toReturn = null;
 		
 		 try {
 			toReturn = this.completedCounts.poll(500, TimeUnit.MILLISECONDS);
@@ -69,8 +418,105 @@ public class WordCounter extends Thread {
 		
 	}
 	
+	private void checkReducer(){
+		if(this.reducer==null)
+			throw new IllegalStateException("Error: WordCounter was not constructed with a CountReducer!");
+	}
+	
+	//Count a new task as pending, unless the WordCounter is being drained
+	private void accept(){
+		synchronized(this.pendingLock){
+			if(!this.accepting)
+				throw new RejectedExecutionException("Error: WordCounter is shutting down!");
+			this.pending++;
+		}
+	}
+	
+	//Queue a task, counting it as pending until it completes
+	private boolean submit(WordCounterTask task){
+		accept();
+		if(this.dispatch.isDirect()){
+			try {
+				this.threadpool.execute(task);
+				return true;
+			} catch (RejectedExecutionException e) {
+				//Rejected by the backpressure policy, pass the rejection on to the caller
+				completed();
+				throw e;
+			}
+		}
+		try {
+			this.taskQueue.put(task);
+			return true;
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			completed();
+			return false;
+		}
+	}
+	
+	//Hand a String[] to the ForkJoinPool, counting it as pending until it completes. Once queueCapacity of them
+	//are outstanding, the BackpressurePolicy is applied as it is to the threadpool, and POLLING blocks
+	private void submit(ForkJoinRootTask task){
+		accept();
+		BackpressurePolicy policy = this.dispatch.isDirect() ? this.dispatch.getPolicy() : BackpressurePolicy.BLOCK;
+		try {
+			if(!this.forkJoinPermits.tryAcquire()){
+				if(policy==BackpressurePolicy.REJECT)
+					throw new RejectedExecutionException("Error: WordCounter queue is full!");
+				if(policy==BackpressurePolicy.CALLER_RUNS){
+					//The caller waits for the count, which slows it down just as counting it itself would
+					this.forkJoinPool.invoke(task);
+					return;
+				}
+				this.forkJoinPermits.acquire();
+			}
+			task.permitted = true;
+			this.forkJoinPool.execute(task);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			completed();
+			throw new RejectedExecutionException("Error: interrupted while waiting for queue space!", e);
+		} catch (RejectedExecutionException e) {
+			//The pool is shutting down or full, the task will never run
+			if(task.permitted)
+				this.forkJoinPermits.release();
+			completed();
+			throw e;
+		}
+	}
+	
+	//Hand a completed count to the reducer, or queue it for pollCompletedCounts()
+	private void deliver(WordCountTable wordcount){
+		if(this.reducer!=null){
+			this.reducer.reduce(wordcount);
+		}
+		else{
+			try {
+				this.completedCounts.put(wordcount);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	private void completed(){
+		synchronized(this.pendingLock){
+			//Tasks dropped by drain() have already been written off
+			if(this.pending==0)
+				return;
+			this.pending--;
+			if(this.pending==0)
+				this.pendingLock.notifyAll();
+		}
+	}
+	
 	public void run() {
 		
+		//Tasks are already submitted straight to the threadpool, nothing to dispatch
+		if(this.dispatch.isDirect())
+			return;
+		
 		//Run as long as the Thread is uninterrupted
 		while(!isInterrupted()){
 		
@@ -80,54 +526,278 @@ public class WordCounter extends Thread {
 					//Read from the queue
 					task = this.taskQueue.poll(500,TimeUnit.MILLISECONDS);
 				} catch (InterruptedException e) {
-					//Interrupted while waiting for new send task
-					e.printStackTrace();
+					//Interrupted while waiting for a new task, restore the flag so the loop ends
+					this.interrupt();
 				}
 				
 				if(task!=null){
-					//Start the task
-					this.threadpool.execute(task);
+					try {
+						//Start the task
+						this.threadpool.execute(task);
+					} catch (RejectedExecutionException e) {
+						//Interrupted by drain() while waiting for room, which takes the task back
+						this.undispatched = task;
+						this.interrupt();
+					}
 				}
 			
 		}
 
 	}
 	
-	private class WordCounterTask implements Runnable{
-		
-		private String[] words;
-		
-		private WordCounterTask(String[] words){
-			this.words = words;
-		}
+	/**
+	 * Abstract inner class depicting a single counting task.
+	 * Subclasses count one source of words into a table, which is then either queued as a completed
+	 * count, or merged by the CountReducer. When reducing, each pool thread reuses one scratch table.
+	 */
+	private abstract class WordCounterTask implements Runnable{
 
+		//When set, given the count instead of it being delivered
+		protected CountListener listener = null;
+		//Words counted, set by count()
+		protected long words = 0;
+		private final long submitted = System.nanoTime();
+		
 		@Override
 		public void run() {
 			
-			if(words!=null&&words.length>0){
-				Map<String,Integer> wordcount = new HashMap<String,Integer>();
-				
-				for(String word : this.words){
-					Integer count = wordcount.get(word);
-					if(count!=null){
-						count += 1;
-					}
-					
-					else{
-						wordcount.put(word, 1);
+			long started = System.nanoTime();
+			try {
+				if(this.listener!=null){
+					WordCountTable wordcount = new WordCountTable();
+					if(count(wordcount)){
+						if(this.listener instanceof TotalListener)
+							((TotalListener)this.listener).counted(wordcount, this.words);
+						else
+							this.listener.counted(wordcount);
 					}
 				}
 				
+				else if(reducer==null){
+					WordCountTable wordcount = new WordCountTable();
+					if(count(wordcount))
+						deliver(wordcount);
+				}
+				
+				else{
+					WordCountTable wordcount = scratchTables.get();
+					try {
+						if(count(wordcount))
+							deliver(wordcount);
+					} finally {
+						wordcount.clear();
+					}
+				}
+			} finally {
+				queueNanos.record(started - this.submitted);
+				taskNanos.recordSince(started);
+				wordsCounted.add(this.words);
+				tasksCompleted.increment();
+				completed();
+			}
+			
+		}
+		
+		/**
+		 * Count the words of this task
+		 * @param wordcount Empty table to count the words into
+		 * @return true if the words were counted, false if the count should be discarded
+		 */
+		protected abstract boolean count(WordCountTable wordcount);
+		
+	}
+	
+	//Counts a String[] of words
+	private class ArrayCountTask extends WordCounterTask{
+		
+		private String[] array;
+		
+		private ArrayCountTask(String[] words, CountListener listener){
+			this.array = words;
+			this.listener = listener;
+		}
+
+		@Override
+		protected boolean count(WordCountTable wordcount) {
+			this.words = wordcount.incrementAll(this.array);
+			return true;
+		}
+		
+	}
+	
+	//Counts the words read from a stream, then closes it
+	private class StreamCountTask extends WordCounterTask{
+		
+		private Reader stream;
+		
+		private StreamCountTask(Reader stream){
+			this.stream = stream;
+		}
+
+		@Override
+		protected boolean count(WordCountTable wordcount) {
+			boolean counted = false;
+			try {
+				this.words = tokenizers.get().tokenize(this.stream, wordcount);
+				counted = true;
+			} catch (IOException e) {
+				//Error reading stream, discard the partial count
+				e.printStackTrace();
+			}
+			
+			try {
+				this.stream.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return counted;
+		}
+		
+	}
+	
+	//Counts the words of one segment of a file, by mapping the segment into memory
+	private class SegmentCountTask extends WordCounterTask{
+		
+		private FileSegment segment;
+		
+		private SegmentCountTask(FileSegment segment, CountListener listener){
+			this.segment = segment;
+			this.listener = listener;
+		}
+
+		@Override
+		protected boolean count(WordCountTable wordcount) {
+			boolean counted = false;
+			RandomAccessFile raf = null;
+			try {
+				raf = new RandomAccessFile(this.segment.getPath(), "r");
+				MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+						this.segment.getOffset(), this.segment.getLength());
+				this.words = tokenizers.get().tokenize(mapped, wordcount);
+				counted = true;
+			} catch (IOException e) {
+				//Error mapping segment, discard the partial count
+				e.printStackTrace();
+			}
+			
+			if(raf!=null){
 				try {
-					completedCounts.put(wordcount);
-				} catch (InterruptedException e) {
+					raf.close();
+				} catch (IOException e) {
 					e.printStackTrace();
 				}
-				
 			}
+			return counted;
+		}
+		
+	}
+	
+	//Counts the words of a buffer of bytes in place
+	private class BufferCountTask extends WordCounterTask{
+		
+		private ByteBuffer bytes;
+		
+		private BufferCountTask(ByteBuffer bytes, CountListener listener){
+			this.bytes = bytes;
+			this.listener = listener;
+		}
+
+		@Override
+		protected boolean count(WordCountTable wordcount) {
+			this.words = tokenizers.get().tokenize(this.bytes, wordcount);
+			return true;
+		}
+		
+	}
+	
+	//Counts a whole String[] on the ForkJoinPool, then delivers the merged count
+	private class ForkJoinRootTask extends RecursiveAction{
+		
+		private static final long serialVersionUID = 1L;
+		
+		private String[] words;
+		private CountListener listener;
+		//Words counted, leaving out nulls
+		private long counted = 0;
+		private final long submitted = System.nanoTime();
+		//Set if the task holds one of the forkJoinPermits, released once it completes
+		private boolean permitted = false;
+		
+		private ForkJoinRootTask(String[] words, CountListener listener){
+			this.words = words;
+			this.listener = listener;
+		}
+
+		@Override
+		protected void compute() {
+			long started = System.nanoTime();
+			try {
+				ForkJoinCountTask count = new ForkJoinCountTask(this.words, 0, this.words.length);
+				WordCountTable wordcount = count.compute();
+				this.counted = count.counted;
+				if(this.listener instanceof TotalListener)
+					((TotalListener)this.listener).counted(wordcount, this.counted);
+				else if(this.listener!=null)
+					this.listener.counted(wordcount);
+				else
+					deliver(wordcount);
+			} finally {
+				if(this.permitted)
+					forkJoinPermits.release();
+				queueNanos.record(started - this.submitted);
+				taskNanos.recordSince(started);
+				wordsCounted.add(this.counted);
+				tasksCompleted.increment();
+				completed();
+			}
+		}
+		
+	}
+	
+	/**
+	 * Inner class depicting a recursive fork/join count of a range of a String[].
+	 * Ranges larger than the threshold are split in half, one half is forked and the other counted
+	 * by the current thread, and the smaller of the two resulting tables is merged into the larger.
+	 */
+	private static class ForkJoinCountTask extends RecursiveTask<WordCountTable>{
+		
+		private static final long serialVersionUID = 1L;
+		
+		private String[] words;
+		private int from;
+		private int to;
+		//Words counted, leaving out nulls, set once computed
+		private int counted = 0;
+		
+		private ForkJoinCountTask(String[] words, int from, int to){
+			this.words = words;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected WordCountTable compute() {
 			
+			if(this.to - this.from <= forkJoinThreshold){
+				WordCountTable wordcount = new WordCountTable();
+				this.counted = wordcount.incrementAll(this.words, this.from, this.to);
+				return wordcount;
+			}
 			
+			int middle = (this.from + this.to) >>> 1;
+			ForkJoinCountTask left = new ForkJoinCountTask(this.words, this.from, middle);
+			left.fork();
+			ForkJoinCountTask rest = new ForkJoinCountTask(this.words, middle, this.to);
+			WordCountTable right = rest.compute();
+			WordCountTable joined = left.join();
+			this.counted = left.counted + rest.counted;
 			
+			if(joined.size()<right.size()){
+				right.merge(joined);
+				return right;
+			}
+			joined.merge(right);
+			return joined;
 		}
 		
 	}
@@ -0,0 +1,133 @@
+package com.sdelacruz.wordcounter;
+
+import java.io.Serializable;
+
+/**
+ * Class depicting a fixed size sketch of a word count: a CountMinSketch estimating the count of each
+ * word, and a HyperLogLog estimating the number of distinct words. Its size is set by its SketchSpec,
+ * whatever the number of words or distinct words counted, and sketches of the same spec can be merged
+ * in any order, so workers can send a sketch of their counts instead of the counts themselves.
+ *
+ * This class is not thread safe; see SketchCountReducer.
+ *
+ */
+public class WordSketch implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final SketchSpec spec;
+	private final CountMinSketch counts;
+	private final HyperLogLog distinct;
+
+	/**
+	 * Constructs an empty WordSketch
+	 * @param spec Size of the sketch
+	 */
+	public WordSketch(SketchSpec spec){
+		this.spec = spec;
+		this.counts = new CountMinSketch(spec.getWidth(), spec.getDepth());
+		this.distinct = new HyperLogLog(spec.getPrecision());
+	}
+
+	/**
+	 * Constructs a copy of another WordSketch
+	 * @param other Sketch to copy
+	 */
+	public WordSketch(WordSketch other){
+		this(other.spec);
+		merge(other);
+	}
+
+	/**
+	 * Count a word a number of times
+	 * @param word Word to count
+	 * @param count Number of times to count it
+	 */
+	public void add(String word, long count){
+		long hash = hash(word);
+		this.counts.add(hash, count);
+		this.distinct.add(hash);
+	}
+
+	/**
+	 * Add every word and count of a table to the sketch
+	 * @param partial Count to add, which is not retained
+	 */
+	public void add(WordCountTable partial){
+		partial.forEach(new WordCountTable.Visitor(){
+			@Override
+			public void visit(String word, long count) {
+				add(word, count);
+			}
+		});
+	}
+
+	/**
+	 * Merge another sketch of the same spec into this one
+	 * @param other Sketch to merge
+	 */
+	public void merge(WordSketch other){
+		if(!this.spec.equals(other.spec))
+			throw new IllegalArgumentException("Error: only sketches of the same spec can be merged!");
+		this.counts.merge(other.counts);
+		this.distinct.merge(other.distinct);
+	}
+
+	/**
+	 * Returns the estimated count of a word, never below its true count, see CountMinSketch
+	 * @param word Word to look up
+	 * @return Estimated count
+	 */
+	public long estimate(String word){
+		return this.counts.estimate(hash(word));
+	}
+
+	/**
+	 * Returns the estimated number of distinct words counted, see HyperLogLog
+	 * @return Estimated number of distinct words
+	 */
+	public long distinct(){
+		return this.distinct.estimate();
+	}
+
+	/**
+	 * Returns the total number of words counted, which is exact
+	 * @return Total count
+	 */
+	public long getTotal(){
+		return this.counts.getTotal();
+	}
+
+	public SketchSpec getSpec(){
+		return this.spec;
+	}
+
+	public CountMinSketch getCountMinSketch(){
+		return this.counts;
+	}
+
+	public HyperLogLog getHyperLogLog(){
+		return this.distinct;
+	}
+
+	/**
+	 * Returns a 64 bit hash of a word, the same on every node
+	 * String.hashCode() has only 32 bits, too few to tell apart the distinct words of a large corpus.
+	 * @param word Word to hash
+	 * @return Hash of the word
+	 */
+	public static long hash(String word){
+		//FNV-1a over the chars, then the MurmurHash3 finaliser to spread every bit
+		long h = 0xcbf29ce484222325L;
+		for(int n = 0;n<word.length();n++){
+			h ^= word.charAt(n);
+			h *= 0x100000001b3L;
+		}
+		h ^= (h >>> 33);
+		h *= 0xff51afd7ed558ccdL;
+		h ^= (h >>> 33);
+		h *= 0xc4ceb9fe1a85ec53L;
+		return h ^ (h >>> 33);
+	}
+
+}
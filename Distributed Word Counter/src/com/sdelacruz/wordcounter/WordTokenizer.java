@@ -0,0 +1,238 @@
+package com.sdelacruz.wordcounter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+/**
+ * Class depicting a streaming WordTokenizer.
+ * Reads chars from a Reader into a reusable buffer, splits them into whitespace separated words
+ * and counts each word straight into a WordCountTable, without creating a String for every word.
+ *
+ * The buffer only grows if a single word is longer than it, so memory use does not depend on the
+ * length of the input. A WordTokenizer may be reused for many inputs, but not by more than one
+ * thread at a time.
+ *
+ * UTF-8 bytes, e.g. a mapped file, can be tokenized in place with tokenize(ByteBuffer, WordCountTable).
+ * Only ASCII whitespace separates words in this mode, as multi-byte whitespace can not be found
+ * without decoding every byte. Such bytes can be cut on word boundaries with boundary(ByteBuffer, int).
+ *
+ */
+public class WordTokenizer {
+
+	private static final int defaultBufferSize = 8192;
+
+	private char[] buffer;
+
+	/**
+	 * Constructs a WordTokenizer with a default buffer size
+	 */
+	public WordTokenizer(){
+		this(defaultBufferSize);
+	}
+
+	/**
+	 * Constructs a WordTokenizer with a given buffer size
+	 * @param bufferSize Number of chars to read from the input at a time
+	 */
+	public WordTokenizer(int bufferSize){
+		this.buffer = new char[Math.max(bufferSize, 16)];
+	}
+
+	/**
+	 * Returns whether a char separates two words
+	 * @param c char to check
+	 * @return true if c is not part of a word
+	 */
+	public static boolean isDelimiter(char c){
+		return Character.isWhitespace(c);
+	}
+
+	/**
+	 * Returns whether a UTF-8 encoded byte separates two words.
+	 * Bytes of multi-byte sequences are never delimiters.
+	 * @param b byte to check
+	 * @return true if b is an ASCII whitespace char
+	 */
+	public static boolean isDelimiter(byte b){
+		//Every ASCII whitespace char is at or below a space
+		return b>=0 && b<=' ' && isDelimiter((char)b);
+	}
+
+	/**
+	 * Returns the index of a UTF-8 encoded ByteBuffer just after the first delimiter at or following an index,
+	 * so bytes cut there can be tokenized independently of each other
+	 * @param in Buffer to search, up to its limit
+	 * @param index Index to search from
+	 * @return Index following a delimiter, or the buffer's limit if there is none
+	 */
+	public static int boundary(ByteBuffer in, int index){
+		int limit = in.limit();
+		for(int n = Math.max(index, 0);n<limit;n++){
+			if(isDelimiter(in.get(n)))
+				return n + 1;
+		}
+		return limit;
+	}
+
+	/**
+	 * Returns the number of words in the remaining bytes of a UTF-8 encoded ByteBuffer, without decoding any of them
+	 * @param in Buffer to count, from its position to its limit, which is left unchanged
+	 * @return Number of words
+	 */
+	public static long countWords(ByteBuffer in){
+		long words = 0;
+		boolean inWord = false;
+		int limit = in.limit();
+		for(int n = in.position();n<limit;n++){
+			boolean delimiter = isDelimiter(in.get(n));
+			if(!delimiter && !inWord)
+				words++;
+			inWord = !delimiter;
+		}
+		return words;
+	}
+
+	/**
+	 * Read a Reader until it is exhausted, counting every word into a table.
+	 * The Reader is not closed.
+	 * @param in Reader to tokenize
+	 * @param table Table to count words into
+	 * @return Number of words counted
+	 * @throws IOException if reading from the Reader fails
+	 */
+	public long tokenize(Reader in, WordCountTable table) throws IOException {
+
+		long words = 0;
+		//Number of chars at the start of the buffer belonging to a word split by the last read
+		int carried = 0;
+		int read;
+
+		while((read = in.read(this.buffer, carried, this.buffer.length - carried)) != -1){
+			int end = carried + read;
+			int start = 0;
+			for(int n = carried;n<end;n++){
+				if(isDelimiter(this.buffer[n])){
+					if(n>start){
+						table.increment(this.buffer, start, n - start);
+						words++;
+					}
+					start = n + 1;
+				}
+			}
+			//Move the unfinished word to the front of the buffer, the next read continues after it
+			carried = end - start;
+			if(start>0)
+				System.arraycopy(this.buffer, start, this.buffer, 0, carried);
+			//A single word fills the buffer, so make room for the rest of it
+			if(carried==this.buffer.length){
+				char[] larger = new char[this.buffer.length * 2];
+				System.arraycopy(this.buffer, 0, larger, 0, carried);
+				this.buffer = larger;
+			}
+		}
+
+		//Count the last word, if the input did not end with a delimiter
+		if(carried>0){
+			table.increment(this.buffer, 0, carried);
+			words++;
+		}
+		return words;
+
+	}
+
+	/**
+	 * Tokenize the remaining bytes of a UTF-8 encoded ByteBuffer, counting every word into a table.
+	 * Words are decoded from the buffer in place, so no copy of the input is made.
+	 * @param in Buffer to tokenize, read from its position to its limit
+	 * @param table Table to count words into
+	 * @return Number of words counted
+	 */
+	public long tokenize(ByteBuffer in, WordCountTable table){
+
+		long words = 0;
+		int limit = in.limit();
+		int start = -1;
+
+		for(int n = in.position();n<limit;n++){
+			if(isDelimiter(in.get(n))){
+				if(start>=0){
+					countBytes(in, start, n, table);
+					words++;
+					start = -1;
+				}
+			}
+			else if(start<0){
+				start = n;
+			}
+		}
+
+		//Count the last word, if the input did not end with a delimiter
+		if(start>=0){
+			countBytes(in, start, limit, table);
+			words++;
+		}
+
+		in.position(limit);
+		return words;
+
+	}
+
+	//Decode the UTF-8 bytes of one word into the char buffer, then count it
+	private void countBytes(ByteBuffer in, int from, int to, WordCountTable table){
+
+		//A word never decodes to more chars than it has bytes
+		if(this.buffer.length<to - from)
+			this.buffer = new char[Math.max(to - from, this.buffer.length * 2)];
+
+		char[] chars = this.buffer;
+		int len = 0;
+		int n = from;
+		while(n<to){
+			int b = in.get(n++);
+			if(b>=0){
+				chars[len++] = (char)b;
+				continue;
+			}
+			int extra;
+			int cp;
+			if((b & 0xE0)==0xC0){
+				extra = 1;
+				cp = b & 0x1F;
+			}
+			else if((b & 0xF0)==0xE0){
+				extra = 2;
+				cp = b & 0x0F;
+			}
+			else if((b & 0xF8)==0xF0){
+				extra = 3;
+				cp = b & 0x07;
+			}
+			else{
+				//Stray continuation byte or invalid lead byte
+				chars[len++] = '\uFFFD';
+				continue;
+			}
+			boolean valid = true;
+			for(int e = 0;e<extra;e++){
+				if(n>=to || (in.get(n) & 0xC0)!=0x80){
+					valid = false;
+					break;
+				}
+				cp = (cp << 6) | (in.get(n++) & 0x3F);
+			}
+			if(!valid)
+				chars[len++] = '\uFFFD';
+			else if(cp>=0x10000){
+				chars[len++] = Character.highSurrogate(cp);
+				chars[len++] = Character.lowSurrogate(cp);
+			}
+			else
+				chars[len++] = (char)cp;
+		}
+
+		table.increment(chars, 0, len);
+
+	}
+
+}
@@ -0,0 +1,60 @@
+package com.sdelacruz.wordcounter.network;
+
+import java.io.Serializable;
+
+/**
+ * Message sent by a worker to its master once an attempt at a WordChunk has been counted, or when a
+ * chunk still queued on the worker has been given back in answer to a ChunkCancel.
+ * Unless the worker is shuffling, the worker holds on to the chunk's count until the master answers with
+ * a ChunkCommit, committing only the first attempt at each chunk to be acknowledged.
+ * Each acknowledgement also carries the number of chunks the worker can count at once.
+ *
+ */
+public class ChunkAck implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long chunkId;
+	private final int attempt;
+	private final boolean cancelled;
+	private final boolean held;
+	private final int slots;
+
+	/**
+	 * Constructs a ChunkAck
+	 * @param chunkId Id of the chunk
+	 * @param attempt Attempt number of the chunk
+	 * @param cancelled true if the chunk was given back without being counted
+	 * @param held true if the worker holds the chunk's count until it is committed or aborted, false if
+	 * cancelled or already sent to the reducers
+	 * @param slots Number of chunks the worker counts at once
+	 */
+	public ChunkAck(long chunkId, int attempt, boolean cancelled, boolean held, int slots){
+		this.chunkId = chunkId;
+		this.attempt = attempt;
+		this.cancelled = cancelled;
+		this.held = held;
+		this.slots = slots;
+	}
+
+	public long getChunkId(){
+		return this.chunkId;
+	}
+
+	public int getAttempt(){
+		return this.attempt;
+	}
+
+	public boolean isCancelled(){
+		return this.cancelled;
+	}
+
+	public boolean isHeld(){
+		return this.held;
+	}
+
+	public int getSlots(){
+		return this.slots;
+	}
+
+}
@@ -0,0 +1,36 @@
+package com.sdelacruz.wordcounter.network;
+
+import java.io.Serializable;
+
+/**
+ * Message asking a worker to give back an attempt at a WordChunk it has not yet started counting,
+ * either so it can be reassigned or because another attempt has already been counted.
+ * A worker which has already started the attempt ignores the request.
+ *
+ */
+public class ChunkCancel implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long chunkId;
+	private final int attempt;
+
+	/**
+	 * Constructs a ChunkCancel
+	 * @param chunkId Id of the chunk to give back
+	 * @param attempt Attempt number of the chunk
+	 */
+	public ChunkCancel(long chunkId, int attempt){
+		this.chunkId = chunkId;
+		this.attempt = attempt;
+	}
+
+	public long getChunkId(){
+		return this.chunkId;
+	}
+
+	public int getAttempt(){
+		return this.attempt;
+	}
+
+}
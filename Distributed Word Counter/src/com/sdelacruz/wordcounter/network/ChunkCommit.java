@@ -0,0 +1,44 @@
+package com.sdelacruz.wordcounter.network;
+
+import java.io.Serializable;
+
+/**
+ * Message sent by a master in answer to a ChunkAck whose count the worker holds.
+ * A committed count is combined into the worker's count of the chunk's job, an aborted count, of an attempt
+ * at a chunk another worker was first to count, is thrown away. So a chunk counted twice is never counted
+ * twice in a JobResult.
+ *
+ */
+public class ChunkCommit implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long chunkId;
+	private final int attempt;
+	private final boolean commit;
+
+	/**
+	 * Constructs a ChunkCommit
+	 * @param chunkId Id of the chunk
+	 * @param attempt Attempt number of the chunk
+	 * @param commit true to combine the attempt's count into its job, false to throw it away
+	 */
+	public ChunkCommit(long chunkId, int attempt, boolean commit){
+		this.chunkId = chunkId;
+		this.attempt = attempt;
+		this.commit = commit;
+	}
+
+	public long getChunkId(){
+		return this.chunkId;
+	}
+
+	public int getAttempt(){
+		return this.attempt;
+	}
+
+	public boolean isCommit(){
+		return this.commit;
+	}
+
+}
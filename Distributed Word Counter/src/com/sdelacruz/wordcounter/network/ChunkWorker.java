@@ -0,0 +1,424 @@
+package com.sdelacruz.wordcounter.network;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.sdelacruz.concurrent.DrainReport;
+import com.sdelacruz.concurrent.Lifecycle;
+import com.sdelacruz.concurrent.PoolDrainer;
+import com.sdelacruz.network.INetworkController;
+import com.sdelacruz.network.NetworkModel;
+import com.sdelacruz.wordcounter.SketchSpec;
+import com.sdelacruz.wordcounter.TopKSummary;
+import com.sdelacruz.wordcounter.WordCountTable;
+import com.sdelacruz.wordcounter.WordCounter;
+import com.sdelacruz.wordcounter.WordSketch;
+import com.sdelacruz.wordcounter.WordTokenizer;
+
+/**
+ * Class depicting the worker side of a WorkScheduler.
+ * WordChunks received from the master are queued, and handed to the node's WordCounter a few at a
+ * time. Each chunk is counted on its own, then either shuffled to the reducers, or held until the master
+ * answers the chunk's ChunkAck with a ChunkCommit. Committed counts are combined into a single count per job,
+ * aborted counts, of chunks another worker was first to count, are thrown away. Once the master sends a
+ * JobCollect, the combined count of the job is sent back to it as JobResults of at most maxResultWords words.
+ * Chunks of a job in top-k mode are combined into a TopKSummary instead, so the worker's memory and its
+ * result are bounded by the summary's capacity. Chunks of a job in sketch mode are combined into a WordSketch,
+ * sent whole as a single JobSketch of a fixed size.
+ * Chunks of bytes, see WordChunk, are tokenized in place, and a sub-master hands them to its scheduler as bytes.
+ * Chunks still queued can be given back to the master with cancel(long, int), as they have not been counted.
+ *
+ * A node with workers of its own is a sub-master: rather than counting a chunk itself, it hands the chunk
+ * to its own WorkScheduler, and holds the merged count of its branch as the chunk's count. So each level of
+ * the tree sends its master one result per job, whatever the number of nodes below it. In sketch mode the
+ * branch's merged sketch is held instead. While shuffling,
+ * chunks are counted locally, as the reducers can only tell two attempts at a chunk apart by its id.
+ *
+ */
+public class ChunkWorker implements Lifecycle {
+
+	//Most words sent to the master in any one JobResult
+	private static final int maxResultWords = 1 << 13;
+
+	private final INetworkController networkController;
+	private final ShuffleCountReducer shuffle;
+	//Number of chunks handed to the WordCounter at once
+	private final int slots;
+
+	//Guarded by the ChunkWorker's monitor
+	private final Deque<WordChunk> queued;
+	//Counts of chunks acknowledged and not yet committed or aborted, by chunk id
+	private final Map<Long, HeldCount> held;
+	private final Map<Long, JobCount> jobs;
+	private int running = 0;
+	private boolean accepting = true;
+	private long counted = 0;
+
+	/**
+	 * Constructs a ChunkWorker counting one chunk per available processor at once
+	 * @param c NetworkController of this node, holding the WordCounter and the Sender to the master
+	 * @param shuffle Sends the count of each chunk to the reducers while shuffling
+	 */
+	public ChunkWorker(INetworkController c, ShuffleCountReducer shuffle){
+		this(c, shuffle, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructs a ChunkWorker
+	 * @param c NetworkController of this node, holding the WordCounter and the Sender to the master
+	 * @param shuffle Sends the count of each chunk to the reducers while shuffling
+	 * @param slots Number of chunks handed to the WordCounter at once
+	 */
+	public ChunkWorker(INetworkController c, ShuffleCountReducer shuffle, int slots){
+		this.networkController = c;
+		this.shuffle = shuffle;
+		this.slots = Math.max(1, slots);
+		this.queued = new ArrayDeque<WordChunk>();
+		this.held = new HashMap<Long, HeldCount>();
+		this.jobs = new HashMap<Long, JobCount>();
+	}
+
+	/**
+	 * Queue a chunk to be counted
+	 * A RejectedExecutionException is thrown once the ChunkWorker is being drained
+	 * @param chunk Chunk received from the master
+	 */
+	public void accept(WordChunk chunk){
+		List<WordChunk> started;
+		synchronized(this){
+			if(!this.accepting)
+				throw new RejectedExecutionException("Error: ChunkWorker is shutting down!");
+			this.queued.add(chunk);
+			started = takeQueued();
+		}
+		start(started);
+	}
+
+	/**
+	 * Give a chunk back to the master, if it has not yet been started
+	 * @param chunkId Id of the chunk
+	 * @param attempt Attempt number of the chunk
+	 */
+	public void cancel(long chunkId, int attempt){
+		ChunkAck ack = null;
+		synchronized(this){
+			Iterator<WordChunk> it = this.queued.iterator();
+			while(it.hasNext()){
+				WordChunk chunk = it.next();
+				if(chunk.getChunkId()==chunkId && chunk.getAttempt()==attempt){
+					it.remove();
+					ack = new ChunkAck(chunkId, attempt, true, false, slots(isSubMaster()));
+					notifyAll();
+					break;
+				}
+			}
+		}
+		if(ack!=null)
+			sendToMaster(ack);
+	}
+
+	/**
+	 * Combine a held count into the count of its job, or throw it away
+	 * @param commit Answer of the master to the chunk's acknowledgement
+	 */
+	public void commit(ChunkCommit commit){
+		JobCount job;
+		synchronized(this){
+			HeldCount h = this.held.get(commit.getChunkId());
+			if(h==null || h.attempt!=commit.getAttempt())
+				return;
+			this.held.remove(commit.getChunkId());
+			if(!commit.isCommit())
+				return;
+			job = job(h.jobId);
+			job.add(h);
+			job.commits++;
+			if(!job.isCollectable())
+				return;
+			this.jobs.remove(h.jobId);
+		}
+		sendResult(job);
+	}
+
+	/**
+	 * Send the combined count of a job to the master, once every committed count of the job has been combined
+	 * @param collect Request of the master for the job's count
+	 */
+	public void collect(JobCollect collect){
+		JobCount job;
+		synchronized(this){
+			job = job(collect.getJobId());
+			job.source = collect.getSource();
+			job.expectedCommits = collect.getCommits();
+			if(!job.isCollectable())
+				return;
+			this.jobs.remove(collect.getJobId());
+		}
+		sendResult(job);
+	}
+
+	/**
+	 * Returns the number of chunks received and not yet counted
+	 * @return Number of queued and running chunks
+	 */
+	public synchronized int getQueueDepth(){
+		return this.queued.size() + this.running;
+	}
+
+	/**
+	 * Stop accepting chunks, and count those already received until the deadline.
+	 * Chunks still queued at the deadline are reported as dropped, as are counts not yet committed, and jobs
+	 * not yet collected, which the master can no longer ask for once this node's Receivers are drained.
+	 */
+	@Override
+	public synchronized DrainReport drain(long timeout, TimeUnit unit){
+		long deadline = PoolDrainer.deadline(timeout, unit);
+		this.accepting = false;
+		long countedBefore = this.counted;
+		try {
+			while(this.running>0 || !this.queued.isEmpty()){
+				long nanos = PoolDrainer.remainingNanos(deadline);
+				if(nanos==0)
+					break;
+				TimeUnit.NANOSECONDS.timedWait(this, nanos);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		long dropped = this.running + this.queued.size() + this.held.size() + this.jobs.size();
+		this.queued.clear();
+		this.held.clear();
+		this.jobs.clear();
+		return new DrainReport("ChunkWorker", this.counted - countedBefore, dropped, dropped==0);
+	}
+
+	//Take the queued chunks there are free slots for, counted as running until they are finished
+	private List<WordChunk> takeQueued(){
+		List<WordChunk> started = new ArrayList<WordChunk>();
+		int slots = slots(isSubMaster());
+		while(this.running<slots && !this.queued.isEmpty()){
+			started.add(this.queued.poll());
+			this.running++;
+		}
+		return started;
+	}
+
+	//Hand chunks taken with takeQueued() to the WordCounter, or to a sub-master's WorkScheduler, outside the
+	//monitor, as either may block while full
+	private void start(List<WordChunk> started){
+		boolean delegate = isSubMaster();
+		for(int n = 0;n<started.size();n++){
+			WordChunk chunk = started.get(n);
+			ChunkListener listener = new ChunkListener(chunk);
+			try {
+				if(delegate && chunk.getBytes()!=null)
+					this.networkController.getWorkScheduler().submit(chunk.getBytes(), chunk.getSummaryCapacity(),
+							chunk.getSketchSpec(), listener);
+				else if(delegate)
+					this.networkController.getWorkScheduler().submit(chunk.getWords(), chunk.getSummaryCapacity(),
+							chunk.getSketchSpec(), listener);
+				else if(chunk.getBytes()!=null)
+					this.networkController.getWordCounter().countBytes(chunk.getBytes(), listener);
+				else
+					this.networkController.getWordCounter().countWords(chunk.getWords(), listener);
+			} catch (RejectedExecutionException e) {
+				//WordCounter or WorkScheduler is shutting down, the master will not hear back about this chunk.
+				//The chunks not yet handed over are queued again
+				e.printStackTrace();
+				synchronized(this){
+					for(int m = started.size() - 1;m>n;m--)
+						this.queued.addFirst(started.get(m));
+					this.running -= started.size() - n;
+					notifyAll();
+				}
+				return;
+			}
+		}
+	}
+
+	//Either the count of the chunk is given, or a sub-master's sketch of it. words is -1 unless the WordCounter counted them
+	private void finished(WordChunk chunk, WordCountTable wordcount, WordSketch sketch, long words){
+		//Shuffled counts go straight to the reducers, otherwise the count is held until the master commits it
+		boolean shuffled = wordcount!=null && this.shuffle.shuffle(chunk.getChunkId(), wordcount);
+		HeldCount count = null;
+		if(!shuffled)
+			count = new HeldCount(chunk, wordcount, sketch, words>=0 ? words : countWords(chunk));
+		ChunkAck ack;
+		List<WordChunk> started;
+		synchronized(this){
+			if(!shuffled)
+				this.held.put(chunk.getChunkId(), count);
+			this.running--;
+			this.counted++;
+			ack = new ChunkAck(chunk.getChunkId(), chunk.getAttempt(), false, !shuffled, slots(isSubMaster()));
+			started = takeQueued();
+			notifyAll();
+		}
+		//Sent outside the monitor, as the Sender blocks while full
+		sendToMaster(ack);
+		start(started);
+	}
+
+	//Words of a chunk, for the counts the WordCounter did not count the words of, such as a sub-master's
+	private static long countWords(WordChunk chunk){
+		if(chunk.getBytes()!=null)
+			return WordTokenizer.countWords(chunk.getBytes());
+		long total = 0;
+		for(String word : chunk.getWords()){
+			if(word!=null)
+				total++;
+		}
+		return total;
+	}
+
+	private boolean isSubMaster(){
+		NetworkModel model = this.networkController.getNetworkModel();
+		return !model.getWorkers().isEmpty() && !model.isShuffling();
+	}
+
+	//A sub-master's chunks are each split across its whole branch, so it takes one per worker at once
+	private int slots(boolean delegate){
+		if(!delegate)
+			return this.slots;
+		return Math.max(this.slots, this.networkController.getNetworkModel().getWorkers().size());
+	}
+
+	private JobCount job(long jobId){
+		JobCount job = this.jobs.get(jobId);
+		if(job==null){
+			job = new JobCount(jobId);
+			this.jobs.put(jobId, job);
+		}
+		return job;
+	}
+
+	//Send a job's count in parts, each merged by the master as it arrives
+	private void sendResult(JobCount job){
+		if(job.sketch!=null){
+			sendToMaster(new JobSketch(job.jobId, job.source, job.sketch));
+			return;
+		}
+		WordCountTable counts = job.counts;
+		if(job.summary!=null){
+			job.summary.compact();
+			counts = job.summary.getCounts();
+		}
+		WordCountTable[] parts = counts.split(maxResultWords);
+		if(parts.length==0)
+			parts = new WordCountTable[]{ counts };
+		for(int n = 0;n<parts.length;n++)
+			sendToMaster(new JobResult(job.jobId, job.source, n, parts.length, n==0 ? job.total : 0, parts[n]));
+	}
+
+	//Method to send an Object to this Node's master
+	private void sendToMaster(Object o){
+		NetworkModel model = this.networkController.getNetworkModel();
+		this.networkController.getSender(model.getMasterSendPort()).send(o, model.getMasterInet());
+	}
+
+	//Count of a chunk, acknowledged to the master and awaiting its ChunkCommit
+	private static class HeldCount {
+
+		private final long jobId;
+		private final int attempt;
+		private final int summaryCapacity;
+		private final SketchSpec sketchSpec;
+		private final WordCountTable counts;
+		//Set instead of counts for a sub-master's chunk in sketch mode
+		private final WordSketch sketch;
+		//Words of the chunk counted, which a sub-master's summarised count no longer adds up to
+		private final long total;
+
+		private HeldCount(WordChunk chunk, WordCountTable counts, WordSketch sketch, long total){
+			this.jobId = chunk.getJobId();
+			this.attempt = chunk.getAttempt();
+			this.summaryCapacity = chunk.getSummaryCapacity();
+			this.sketchSpec = chunk.getSketchSpec();
+			this.counts = counts;
+			this.sketch = sketch;
+			this.total = total;
+		}
+
+	}
+
+	//Hands the count or sketch of a chunk back to the ChunkWorker, with the words counted when the WordCounter gives them
+	private class ChunkListener implements WorkScheduler.SketchListener, WordCounter.TotalListener {
+
+		private final WordChunk chunk;
+
+		private ChunkListener(WordChunk chunk){
+			this.chunk = chunk;
+		}
+
+		@Override
+		public void counted(WordCountTable wordcount) {
+			finished(this.chunk, wordcount, null, -1);
+		}
+
+		@Override
+		public void counted(WordCountTable wordcount, long words) {
+			finished(this.chunk, wordcount, null, words);
+		}
+
+		@Override
+		public void sketched(WordSketch sketch) {
+			finished(this.chunk, null, sketch, -1);
+		}
+
+	}
+
+	//Combined count of the committed chunks of a job
+	private static class JobCount {
+
+		private final long jobId;
+		private final WordCountTable counts;
+		//Kept instead of counts in top-k mode
+		private TopKSummary summary;
+		//Kept instead of counts in sketch mode
+		private WordSketch sketch;
+		private long total = 0;
+		private int commits = 0;
+		//Set by the master's JobCollect
+		private int source = -1;
+		private int expectedCommits = -1;
+
+		private JobCount(long jobId){
+			this.jobId = jobId;
+			this.counts = new WordCountTable();
+		}
+
+		private void add(HeldCount h){
+			if(h.sketchSpec!=null){
+				if(this.sketch==null)
+					this.sketch = h.sketchSpec.newSketch();
+				if(h.sketch!=null)
+					this.sketch.merge(h.sketch);
+				else
+					this.sketch.add(h.counts);
+			}
+			else if(h.summaryCapacity>0){
+				if(this.summary==null)
+					this.summary = new TopKSummary(h.summaryCapacity);
+				this.summary.add(h.counts, h.total);
+			}
+			else{
+				this.counts.merge(h.counts);
+			}
+			this.total += h.total;
+		}
+
+		//ChunkCommits and the JobCollect may be processed in any order
+		private boolean isCollectable(){
+			return this.expectedCommits>=0 && this.commits>=this.expectedCommits;
+		}
+
+	}
+
+}
@@ -0,0 +1,57 @@
+package com.sdelacruz.wordcounter.network;
+
+import java.io.Serializable;
+
+import com.sdelacruz.wordcounter.WordCountTable;
+
+/**
+ * Message holding the part of a partial count belonging to one shard, sent by a worker to the reducer
+ * node responsible for that shard. Every word in the table belongs to the shard, see WordCountTable.partition(int).
+ *
+ * Shards of a WordChunk carry the chunk's id. Every attempt at a chunk produces the same shards, so a
+ * reducer merges only the first shard it receives for each chunk id.
+ *
+ */
+public class CountShard implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	//Chunk id of shards not counted from a WordChunk, which are never duplicated
+	public static final long noChunk = -1;
+
+	private final long chunkId;
+	private final int shard;
+	private final int shards;
+	private final WordCountTable counts;
+
+	/**
+	 * Constructs a CountShard
+	 * @param chunkId Id of the WordChunk counted, or noChunk
+	 * @param shard Index of the shard
+	 * @param shards Total number of shards the count was partitioned into
+	 * @param counts Counts of the words belonging to the shard
+	 */
+	public CountShard(long chunkId, int shard, int shards, WordCountTable counts){
+		this.chunkId = chunkId;
+		this.shard = shard;
+		this.shards = shards;
+		this.counts = counts;
+	}
+
+	public long getChunkId(){
+		return this.chunkId;
+	}
+
+	public int getShard(){
+		return this.shard;
+	}
+
+	public int getShards(){
+		return this.shards;
+	}
+
+	public WordCountTable getCounts(){
+		return this.counts;
+	}
+
+}
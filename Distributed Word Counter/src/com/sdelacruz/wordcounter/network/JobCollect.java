@@ -0,0 +1,43 @@
+package com.sdelacruz.wordcounter.network;
+
+import java.io.Serializable;
+
+/**
+ * Message sent by a master to each worker holding committed counts of a job, once every chunk of the job
+ * has been counted. The worker answers with its combined count of the job, as JobResults, once it has
+ * received as many ChunkCommits for the job as the master has sent it.
+ *
+ */
+public class JobCollect implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long jobId;
+	private final int source;
+	private final int commits;
+
+	/**
+	 * Constructs a JobCollect
+	 * @param jobId Id of the job
+	 * @param source Index of the worker among those the job is collected from, returned in every JobResult
+	 * @param commits Number of chunks of the job committed on the worker
+	 */
+	public JobCollect(long jobId, int source, int commits){
+		this.jobId = jobId;
+		this.source = source;
+		this.commits = commits;
+	}
+
+	public long getJobId(){
+		return this.jobId;
+	}
+
+	public int getSource(){
+		return this.source;
+	}
+
+	public int getCommits(){
+		return this.commits;
+	}
+
+}
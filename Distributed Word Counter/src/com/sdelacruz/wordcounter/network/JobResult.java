@@ -0,0 +1,68 @@
+package com.sdelacruz.wordcounter.network;
+
+import java.io.Serializable;
+
+import com.sdelacruz.wordcounter.WordCountTable;
+
+/**
+ * Message holding one part of a worker's combined count of a job, sent in answer to a JobCollect.
+ * The count is split into parts of a bounded number of words, so no single frame grows with the
+ * vocabulary of the job, and the master can merge each part as it arrives.
+ * In top-k mode the count is the worker's TopKSummary of the job, and the first part carries the
+ * number of words it summarises, so the master can keep the summary's error bound.
+ *
+ */
+public class JobResult implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long jobId;
+	private final int source;
+	private final int part;
+	private final int parts;
+	private final long total;
+	private final WordCountTable counts;
+
+	/**
+	 * Constructs a JobResult
+	 * @param jobId Id of the job
+	 * @param source Index of the worker, as given in the JobCollect
+	 * @param part Index of this part
+	 * @param parts Total number of parts sent by the worker for the job
+	 * @param total Number of words counted by the worker for the job, given in the first part only
+	 * @param counts Counts of the words in this part
+	 */
+	public JobResult(long jobId, int source, int part, int parts, long total, WordCountTable counts){
+		this.jobId = jobId;
+		this.source = source;
+		this.part = part;
+		this.parts = parts;
+		this.total = total;
+		this.counts = counts;
+	}
+
+	public long getJobId(){
+		return this.jobId;
+	}
+
+	public int getSource(){
+		return this.source;
+	}
+
+	public int getPart(){
+		return this.part;
+	}
+
+	public int getParts(){
+		return this.parts;
+	}
+
+	public long getTotal(){
+		return this.total;
+	}
+
+	public WordCountTable getCounts(){
+		return this.counts;
+	}
+
+}
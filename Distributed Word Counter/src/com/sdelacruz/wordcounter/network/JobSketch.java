@@ -0,0 +1,44 @@
+package com.sdelacruz.wordcounter.network;
+
+import java.io.Serializable;
+
+import com.sdelacruz.wordcounter.WordSketch;
+
+/**
+ * Message holding a worker's sketch of its combined count of a job in sketch mode, sent in answer to a
+ * JobCollect in place of JobResults. A sketch's size is fixed by its SketchSpec, so it is always sent whole.
+ *
+ */
+public class JobSketch implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long jobId;
+	private final int source;
+	private final WordSketch sketch;
+
+	/**
+	 * Constructs a JobSketch
+	 * @param jobId Id of the job
+	 * @param source Index of the worker, as given in the JobCollect
+	 * @param sketch Sketch of the worker's count of the job
+	 */
+	public JobSketch(long jobId, int source, WordSketch sketch){
+		this.jobId = jobId;
+		this.source = source;
+		this.sketch = sketch;
+	}
+
+	public long getJobId(){
+		return this.jobId;
+	}
+
+	public int getSource(){
+		return this.source;
+	}
+
+	public WordSketch getSketch(){
+		return this.sketch;
+	}
+
+}
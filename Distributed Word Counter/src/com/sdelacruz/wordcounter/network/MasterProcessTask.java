@@ -3,12 +3,7 @@ package com.sdelacruz.wordcounter.network;
 import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
-import java.util.Deque;
-import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.LinkedBlockingDeque;
 
-import com.sdelacruz.network.io.NetworkUtils;
 import com.sdelacruz.network.objectprocessing.ObjectProcessor;
 import com.sdelacruz.network.objectprocessing.ProcessTask;
 
@@ -31,7 +26,7 @@ public class MasterProcessTask extends ProcessTask {
 				
 				try {
 					//Send the Master this machine's InetAddress to confirm connection
-					this.sendToMaster(NetworkUtils.getInetAddress());
+					this.sendToMaster(this.objectProcessor.getNetworkController().getNetworkModel().getLocalInet());
 					
 				} catch (SocketException e) {
 					e.printStackTrace();
@@ -43,11 +38,10 @@ public class MasterProcessTask extends ProcessTask {
 			else {
 				//Set the stored master inet to the one received
 				this.objectProcessor.getNetworkController().getNetworkModel().setMasterInet(receivedAddress);
-				//Increment ports, so we can communicate with new master
-				this.objectProcessor.getNetworkController().getNetworkModel().incrementPorts();
+				//Every node listens on the same ports, at its own address, so the ports stay as they are
 				try {
 					//Send InetAddress to new master, see if we can become a worker for it.
-					this.sendToMaster(NetworkUtils.getInetAddress());
+					this.sendToMaster(this.objectProcessor.getNetworkController().getNetworkModel().getLocalInet());
 				} catch (SocketException e) {
 					e.printStackTrace();
 				} catch (UnknownHostException e) {
@@ -55,57 +49,41 @@ public class MasterProcessTask extends ProcessTask {
 				}
 			}
 		} 
-		//Received some words to count
+		//Received some words to count, hand them out to this node's workers
 		else if(o instanceof String[]){
-			String[] words = (String[])o;
-			List<InetAddress> idlers = this.objectProcessor.getNetworkController().getNetworkModel().getIdleWorkers();
-			if(idlers.size()>0){
-				Deque<String[]> toSend = splitWordsByWorkerCount(words, idlers);
-				if(toSend.size()>idlers.size())
-					this.objectProcessor.getNetworkController().getWordCounter().countWords(toSend.removeLast());
-				sendWordsToWorkers(toSend, idlers);
-			}
+			this.objectProcessor.getNetworkController().getWorkScheduler().submit((String[])o);
 		}
-		
-		
-		
-
-	}
-	
-	private void sendWordsToWorkers(Queue<String[]> words, List<InetAddress> workers){
-		for(InetAddress i : workers){
-			this.objectProcessor.getNetworkController().getSender(
-					this.objectProcessor.getNetworkController().getNetworkModel().getWorkerSendPort())
-					.send(words.poll(), i);
+		//Received a chunk of words from this node's master
+		else if(o instanceof WordChunk){
+			this.objectProcessor.getNetworkController().getChunkWorker().accept((WordChunk)o);
 		}
-	}
-	
-	private Deque<String[]> splitWordsByWorkerCount(String[] words, List<InetAddress> workers){
-
-		Deque<String[]> wordsplit = new LinkedBlockingDeque<String[]>();
-		int start = 0;
-		for(InetAddress i : workers){
-			int nWords = this.objectProcessor.getNetworkController().getNetworkModel().getWorkerCount(i)
-					* this.objectProcessor.getNetworkController().getNetworkModel().getMinWordSendUnit();
-			String[] wordsunit = new String[nWords];
-			int n;
-			for(n = start;n<start+nWords&&n<words.length;n++){
-				wordsunit[n] = words[n];
-			}
-			wordsplit.add(wordsunit);
-			start = n;
+		//This node's master wants a chunk back
+		else if(o instanceof ChunkCancel){
+			ChunkCancel cancel = (ChunkCancel)o;
+			this.objectProcessor.getNetworkController().getChunkWorker().cancel(cancel.getChunkId(), cancel.getAttempt());
+		}
+		//This node's master has committed, or aborted, the count of a chunk
+		else if(o instanceof ChunkCommit){
+			this.objectProcessor.getNetworkController().getChunkWorker().commit((ChunkCommit)o);
+		}
+		//This node's master wants the combined count of a job
+		else if(o instanceof JobCollect){
+			this.objectProcessor.getNetworkController().getChunkWorker().collect((JobCollect)o);
+		}
+		//Received the reducers to shuffle counts to
+		else if(o instanceof ShufflePlan){
+			this.objectProcessor.getNetworkController().setReducers(((ShufflePlan)o).getReducers());
 		}
-		int nWords = this.objectProcessor.getNetworkController().getNetworkModel().getMinWordSendUnit();
-		String[] wordsplitEnd = new String[nWords];
-		for(int n = start;n<words.length;n++){
-			wordsplitEnd[n] = words[n];
+		//Received this reducer's shard of a worker's partial count
+		else if(o instanceof CountShard){
+			this.objectProcessor.getNetworkController().reduceShard((CountShard)o);
 		}
-		wordsplit.add(wordsplitEnd);
 		
-		return wordsplit;
+		
+		
+
 	}
 	
-	
 	//Method to send an Object to this Node's master
 	private void sendToMaster(Object o){
 		this.objectProcessor.getNetworkController().getSender(
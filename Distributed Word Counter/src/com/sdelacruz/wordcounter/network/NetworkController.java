@@ -1,38 +1,125 @@
 package com.sdelacruz.wordcounter.network;
 
+import java.io.PrintStream;
 import java.net.InetAddress;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+import com.sdelacruz.concurrent.DispatchConfig;
+import com.sdelacruz.concurrent.DrainReport;
+import com.sdelacruz.concurrent.ExecutionBackend;
+import com.sdelacruz.concurrent.PoolDrainer;
+import com.sdelacruz.metrics.MetricsDump;
+import com.sdelacruz.metrics.MetricsRegistry;
 import com.sdelacruz.network.INetworkController;
 import com.sdelacruz.network.NetworkModel;
 import com.sdelacruz.network.io.Receiver;
 import com.sdelacruz.network.io.Sender;
 import com.sdelacruz.network.objectprocessing.ObjectPoller;
 import com.sdelacruz.network.objectprocessing.ObjectProcessor;
+import com.sdelacruz.network.objectprocessing.ProcessTaskFactory;
+import com.sdelacruz.wordcounter.CountReducer;
+import com.sdelacruz.wordcounter.CountingEngine;
+import com.sdelacruz.wordcounter.StripedCountReducer;
+import com.sdelacruz.wordcounter.ThreadLocalCountReducer;
 import com.sdelacruz.wordcounter.WordCounter;
 
 public class NetworkController implements INetworkController {
 
 	private final int startport = 8502;
+	private final int shardReducerStripes = 16;
+	//Most recent chunks remembered by a reducer. Attempts at a chunk are sent within moments of each other,
+	//so a duplicate shard arrives long before its chunk is forgotten
+	private static final int maxMergedShardChunks = 1 << 16;
 	
 	private Map<Integer, Sender> senders;
 	private Map<Integer, Receiver> receivers;
 	private Map<Receiver, ObjectPoller> objectPollers;
 	private NetworkModel networkModel;
+	//Threadpools of the Senders and ObjectProcessors, which block on sockets, and of the WordCounter
+	private final DispatchConfig ioDispatch;
+	private final DispatchConfig countDispatch;
 	private WordCounter wordCounter;
+	private WorkScheduler workScheduler;
+	private ChunkWorker chunkWorker;
+	//Merges the CountShards sent to this node while it is a reducer
+	private CountReducer shardReducer;
+	//Most recent chunks whose shard has been merged, so shards of a chunk counted twice are only merged once
+	private Set<Long> mergedShardChunks;
+	//Prints this JVM's metrics periodically once started, see startMetricsDump()
+	private MetricsDump metricsDump;
 	
 	public NetworkController(int maxWorkersPerBranch, int minWordSendUnit, InetAddress master){
+		this(maxWorkersPerBranch, minWordSendUnit, master, null);
+	}
+	
+	/**
+	 * Constructs a NetworkController
+	 * @param maxWorkersPerBranch Fan-out of the tree, the most workers any node takes on directly
+	 * @param minWordSendUnit Fewest words sent to a worker at once
+	 * @param master Master to join, or null if this node is the root
+	 * @param local Address this node listens on, or null to listen on every address
+	 */
+	public NetworkController(int maxWorkersPerBranch, int minWordSendUnit, InetAddress master, InetAddress local){
+		this(maxWorkersPerBranch, minWordSendUnit, master, local, DispatchConfig.polling(), DispatchConfig.polling());
+	}
+	
+	/**
+	 * Constructs a NetworkController with given threadpools.
+	 * By default Senders and ObjectProcessors run on a fixed set of PLATFORM threads, and the WordCounter runs
+	 * a PLATFORM thread per core. Both merge counts into this node's count, which keeps an accumulator per
+	 * thread on PLATFORM threads, and is striped instead when idle VIRTUAL threads are let go.
+	 * @param maxWorkersPerBranch Fan-out of the tree, the most workers any node takes on directly
+	 * @param minWordSendUnit Fewest words sent to a worker at once
+	 * @param master Master to join, or null if this node is the root
+	 * @param local Address this node listens on, or null to listen on every address
+	 * @param ioDispatch How Senders and ObjectProcessors dispatch their tasks, and the threads they run on
+	 * @param countDispatch How the WordCounter dispatches its tasks, and the threads it runs on
+	 */
+	public NetworkController(int maxWorkersPerBranch, int minWordSendUnit, InetAddress master, InetAddress local,
+			DispatchConfig ioDispatch, DispatchConfig countDispatch){
+		this.ioDispatch = ioDispatch;
+		this.countDispatch = countDispatch;
 		this.senders = new HashMap<Integer,Sender>();
 		this.receivers = new HashMap<Integer,Receiver>();
 		this.objectPollers = new HashMap<Receiver, ObjectPoller>();
-		this.networkModel = new NetworkModel(this.startport, maxWorkersPerBranch, minWordSendUnit, master);
-		this.wordCounter = new WordCounter();
+		this.networkModel = new NetworkModel(this.startport, maxWorkersPerBranch, minWordSendUnit, master, local);
+		//An accumulator per thread is never released, so it only suits threads which are kept
+		boolean threadsKept = keepsThreads(this.ioDispatch) && keepsThreads(this.countDispatch);
+		ShuffleCountReducer countReducer = new ShuffleCountReducer(this, threadsKept ? new ThreadLocalCountReducer()
+				: new StripedCountReducer(this.shardReducerStripes));
+		this.wordCounter = new WordCounter(countReducer, CountingEngine.THREAD_POOL,
+				Runtime.getRuntime().availableProcessors(), this.countDispatch);
+		this.shardReducer = new StripedCountReducer(this.shardReducerStripes);
+		this.mergedShardChunks = Collections.synchronizedSet(Collections.newSetFromMap(new LinkedHashMap<Long, Boolean>(){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+				return size()>maxMergedShardChunks;
+			}
+		}));
+		this.workScheduler = new WorkScheduler(this, countReducer);
+		this.chunkWorker = new ChunkWorker(this, countReducer);
+		MetricsRegistry.getDefault().registerMBean();
+	}
+
+	//Whether a threadpool created by the DispatchConfig keeps its threads, see DispatchConfig.newThreadPool()
+	private static boolean keepsThreads(DispatchConfig dispatch){
+		return dispatch.getBackend()==ExecutionBackend.PLATFORM || !dispatch.getBackend().isAvailable();
 	}
 	
 	@Override
 	public Sender addSender(int port) {
-		Sender s = new Sender(port);
+		Sender s = new Sender(port, this.ioDispatch);
 		this.senders.put(port, s);
 		s.start();
 		return s;
@@ -40,7 +127,7 @@ public class NetworkController implements INetworkController {
 
 	@Override
 	public Receiver addReceiver(int port) {
-		Receiver r = new Receiver(port);
+		Receiver r = new Receiver(port, this.networkModel.getBoundInet());
 		this.receivers.put(port, r);
 		r.start();
 		return r;
@@ -113,4 +200,138 @@ public class NetworkController implements INetworkController {
 		return this.wordCounter;
 	}
 
+	@Override
+	public WorkScheduler getWorkScheduler() {
+		return this.workScheduler;
+	}
+
+	@Override
+	public ChunkWorker getChunkWorker() {
+		return this.chunkWorker;
+	}
+
+	/**
+	 * Start this node: listen for workers, and unless this node is the root, listen for its master and ask to join it.
+	 * A master with maxWorkersPerBranch workers already sends the node on to one of its workers, so the
+	 * nodes form a tree, each sub-master combining the counts of its branch into one result for its master.
+	 */
+	@Override
+	public synchronized void connect() {
+		this.wordCounter.start();
+		listen(this.networkModel.getMasterSendPort(), new WorkerProcessTaskFactory());
+		addSender(this.networkModel.getWorkerSendPort());
+		if(this.networkModel.isRoot())
+			return;
+		listen(this.networkModel.getWorkerSendPort(), new MasterProcessTaskFactory());
+		Sender s = addSender(this.networkModel.getMasterSendPort());
+		try {
+			s.send(this.networkModel.getLocalInet(), this.networkModel.getMasterInet());
+		} catch (SocketException e) {
+			e.printStackTrace();
+		} catch (UnknownHostException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Turn shuffle mode on, or off given an empty list, for this node and every worker below it.
+	 * Shard n of every partial count is sent to the nth reducer, which must have called startReducer().
+	 * @param reducers Reducer node of each shard, in shard order
+	 */
+	@Override
+	public synchronized void setReducers(List<InetAddress> reducers) {
+		this.networkModel.setReducers(reducers);
+		int shufflePort = this.networkModel.getShufflePort();
+		if(!reducers.isEmpty() && getSender(shufflePort)==null)
+			addSender(shufflePort);
+		
+		//Workers pass the plan on to their own workers
+		Sender s = getSender(this.networkModel.getWorkerSendPort());
+		if(s!=null){
+			ShufflePlan plan = new ShufflePlan(reducers);
+			for(InetAddress i : this.networkModel.getWorkers().keySet())
+				s.send(plan, i);
+		}
+	}
+	
+	/**
+	 * Start receiving CountShards on the shuffle port, merging them into the shard reducer
+	 */
+	@Override
+	public synchronized void startReducer() {
+		int shufflePort = this.networkModel.getShufflePort();
+		if(getReceiver(shufflePort)!=null)
+			return;
+		listen(shufflePort, new MasterProcessTaskFactory());
+	}
+	
+	@Override
+	public CountReducer getShardReducer() {
+		return this.shardReducer;
+	}
+	
+	/**
+	 * Merge a CountShard received by this reducer, unless the same shard of the same chunk has already been merged
+	 */
+	@Override
+	public void reduceShard(CountShard shard) {
+		if(shard.getChunkId()==CountShard.noChunk || this.mergedShardChunks.add(shard.getChunkId()))
+			this.shardReducer.reduce(shard.getCounts());
+	}
+
+	/**
+	 * Print the metrics of every component in this JVM periodically, until drained
+	 * @param out Stream to print to, e.g. System.err
+	 * @param periodMillis Time between dumps, in milliseconds
+	 */
+	public synchronized void startMetricsDump(PrintStream out, long periodMillis){
+		if(this.metricsDump!=null)
+			this.metricsDump.stop();
+		this.metricsDump = new MetricsDump(MetricsRegistry.getDefault(), out, periodMillis);
+		this.metricsDump.start();
+	}
+
+	//Receive Objects on a port, processing each with a task from the factory
+	private void listen(int port, ProcessTaskFactory factory){
+		Receiver r = addReceiver(port);
+		ObjectProcessor p = new ObjectProcessor(factory, this, this.ioDispatch);
+		p.start();
+		addObjectPoller(p, r).start();
+	}
+
+	/**
+	 * Tear down this node, draining the WorkScheduler, Receivers, ObjectPollers, ObjectProcessors,
+	 * the ChunkWorker, the WordCounter and finally Senders, all against a single deadline.
+	 */
+	@Override
+	public synchronized DrainReport drain(long timeout, TimeUnit unit) {
+		long deadline = PoolDrainer.deadline(timeout, unit);
+		List<DrainReport> reports = new ArrayList<DrainReport>();
+		
+		//Wait for workers to acknowledge the chunks handed out, while acknowledgements can still be received
+		reports.add(this.workScheduler.drain(PoolDrainer.remainingNanos(deadline), TimeUnit.NANOSECONDS));
+		//Stop taking in new Objects
+		for(Receiver r : this.receivers.values())
+			reports.add(r.drain(PoolDrainer.remainingNanos(deadline), TimeUnit.NANOSECONDS));
+		//Pass on the Objects already received
+		for(ObjectPoller op : this.objectPollers.values())
+			reports.add(op.drain(PoolDrainer.remainingNanos(deadline), TimeUnit.NANOSECONDS));
+		for(ObjectPoller op : this.objectPollers.values())
+			reports.add(op.getObjectProcessor().drain(PoolDrainer.remainingNanos(deadline), TimeUnit.NANOSECONDS));
+		//Finish counting, then send anything still queued
+		reports.add(this.chunkWorker.drain(PoolDrainer.remainingNanos(deadline), TimeUnit.NANOSECONDS));
+		reports.add(this.wordCounter.drain(PoolDrainer.remainingNanos(deadline), TimeUnit.NANOSECONDS));
+		for(Sender s : this.senders.values())
+			reports.add(s.drain(PoolDrainer.remainingNanos(deadline), TimeUnit.NANOSECONDS));
+		
+		this.receivers.clear();
+		this.objectPollers.clear();
+		this.senders.clear();
+		if(this.metricsDump!=null){
+			this.metricsDump.stop();
+			this.metricsDump = null;
+		}
+		return DrainReport.combine("NetworkController", reports);
+	}
+
 }
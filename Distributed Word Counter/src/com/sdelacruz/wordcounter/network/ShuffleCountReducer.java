@@ -0,0 +1,73 @@
+package com.sdelacruz.wordcounter.network;
+
+import java.net.InetAddress;
+import java.util.List;
+
+import com.sdelacruz.network.INetworkController;
+import com.sdelacruz.network.NetworkModel;
+import com.sdelacruz.wordcounter.CountReducer;
+import com.sdelacruz.wordcounter.WordCountTable;
+
+/**
+ * CountReducer for the map side of a shuffle.
+ * While the NetworkModel names reducer nodes, each partial count is partitioned by word into one shard
+ * per reducer and every non-empty shard is sent to its reducer as a CountShard, so each reducer only ever
+ * merges its own part of the vocabulary. While no reducers are set, partial counts are merged locally.
+ *
+ * snapshot() and result() only cover the counts merged locally.
+ *
+ */
+public class ShuffleCountReducer implements CountReducer {
+
+	private final INetworkController networkController;
+	private final CountReducer local;
+
+	/**
+	 * Constructs a ShuffleCountReducer
+	 * @param c NetworkController of this node, holding the reducers and the Sender for shards
+	 * @param local CountReducer to merge partial counts with while no reducers are set
+	 */
+	public ShuffleCountReducer(INetworkController c, CountReducer local){
+		this.networkController = c;
+		this.local = local;
+	}
+
+	@Override
+	public void reduce(WordCountTable partial) {
+		if(!shuffle(CountShard.noChunk, partial))
+			this.local.reduce(partial);
+	}
+
+	/**
+	 * Partition a count and send its shards to the reducers, if any reducers are set
+	 * @param chunkId Id of the WordChunk the count is of, or CountShard.noChunk
+	 * @param counts Count to send, which is not retained
+	 * @return true if the count was sent, false if no reducers are set
+	 */
+	public boolean shuffle(long chunkId, WordCountTable counts){
+		NetworkModel model = this.networkController.getNetworkModel();
+		List<InetAddress> reducers = model.getReducers();
+		if(reducers.isEmpty())
+			return false;
+
+		//Partitioning copies the counts, so the caller is free to reuse the table
+		WordCountTable[] shards = counts.partition(reducers.size());
+		for(int n = 0;n<shards.length;n++){
+			if(!shards[n].isEmpty())
+				this.networkController.getSender(model.getShufflePort())
+					.send(new CountShard(chunkId, n, shards.length, shards[n]), reducers.get(n));
+		}
+		return true;
+	}
+
+	@Override
+	public WordCountTable snapshot() {
+		return this.local.snapshot();
+	}
+
+	@Override
+	public WordCountTable result() {
+		return this.local.result();
+	}
+
+}
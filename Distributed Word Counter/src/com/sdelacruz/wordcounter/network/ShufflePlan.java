@@ -0,0 +1,33 @@
+package com.sdelacruz.wordcounter.network;
+
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Message telling a worker which reducer nodes to send its counts to. Shard n of every partial count
+ * goes to the nth reducer, so every node must be given the reducers in the same order.
+ * An empty plan turns shuffling off, and partial counts are then kept by the node counting them.
+ *
+ */
+public class ShufflePlan implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final ArrayList<InetAddress> reducers;
+
+	/**
+	 * Constructs a ShufflePlan
+	 * @param reducers Reducer node of each shard, in shard order
+	 */
+	public ShufflePlan(List<InetAddress> reducers){
+		this.reducers = new ArrayList<InetAddress>(reducers);
+	}
+
+	public List<InetAddress> getReducers(){
+		return Collections.unmodifiableList(this.reducers);
+	}
+
+}
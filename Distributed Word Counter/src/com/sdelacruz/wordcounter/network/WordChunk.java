@@ -0,0 +1,202 @@
+package com.sdelacruz.wordcounter.network;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import com.sdelacruz.network.io.BulkTransfer;
+import com.sdelacruz.wordcounter.FileSegment;
+import com.sdelacruz.wordcounter.SketchSpec;
+
+/**
+ * Message holding one chunk of words sent by a WorkScheduler to a worker.
+ * Chunk ids are unique per scheduler, and are used by the worker to acknowledge or give back the chunk.
+ * A chunk sent again to another worker keeps its id, with a new attempt number.
+ * Every chunk belongs to one job, the words of one submission to the scheduler, and the worker combines
+ * the counts of all its chunks of a job into a single JobResult.
+ * Chunks of a job in top-k mode carry the capacity of the TopKSummary the worker keeps of the job, and
+ * chunks of a job in sketch mode the SketchSpec of the WordSketch it keeps instead.
+ *
+ * Rather than words, a chunk may hold UTF-8 encoded bytes starting and ending on word boundaries: a segment
+ * of a file on the master, or a buffer on a sub-master forwarding bytes it was sent. The bytes are sent
+ * along with the chunk as a BulkTransfer, a segment straight from the file, and the worker is handed the
+ * chunk holding the bytes received, which it tokenizes in place.
+ *
+ */
+public class WordChunk implements BulkTransfer {
+
+	private static final long serialVersionUID = 1L;
+
+	//Assumed size of a word, by which the number of words in a chunk of bytes is estimated
+	public static final int estimatedBytesPerWord = 6;
+	//Most bytes a chunk holds, well within the largest frame a Receiver accepts. Bytes with no word boundary
+	//that far in are cut there, part way through a word, rather than sent in a frame the Receiver rejects
+	public static final int maxBytes = 16 * 1024 * 1024;
+
+	private final long chunkId;
+	private final long jobId;
+	private final int attempt;
+	private final int summaryCapacity;
+	private final SketchSpec sketchSpec;
+	//Exactly one of these is set
+	private final String[] words;
+	private final FileSegment segment;
+	private final transient ByteBuffer bytes;
+
+	/**
+	 * Constructs a WordChunk
+	 * @param chunkId Id of the chunk
+	 * @param jobId Id of the job the chunk belongs to
+	 * @param attempt Number of times the chunk has been sent before
+	 * @param summaryCapacity Capacity of the TopKSummary kept of the job, or 0 to count the job exactly
+	 * @param sketchSpec Size of the WordSketch kept of the job, or null if the job is not in sketch mode
+	 * @param words Words to be counted
+	 */
+	public WordChunk(long chunkId, long jobId, int attempt, int summaryCapacity, SketchSpec sketchSpec, String[] words){
+		this(chunkId, jobId, attempt, summaryCapacity, sketchSpec, words, null, null);
+	}
+
+	/**
+	 * Constructs a WordChunk of a segment of a file, sent without being read by this process
+	 * @param chunkId Id of the chunk
+	 * @param jobId Id of the job the chunk belongs to
+	 * @param attempt Number of times the chunk has been sent before
+	 * @param summaryCapacity Capacity of the TopKSummary kept of the job, or 0 to count the job exactly
+	 * @param sketchSpec Size of the WordSketch kept of the job, or null if the job is not in sketch mode
+	 * @param segment Segment to be counted, starting and ending on word boundaries
+	 */
+	public WordChunk(long chunkId, long jobId, int attempt, int summaryCapacity, SketchSpec sketchSpec, FileSegment segment){
+		this(chunkId, jobId, attempt, summaryCapacity, sketchSpec, null, segment, null);
+	}
+
+	/**
+	 * Constructs a WordChunk of UTF-8 encoded bytes
+	 * @param chunkId Id of the chunk
+	 * @param jobId Id of the job the chunk belongs to
+	 * @param attempt Number of times the chunk has been sent before
+	 * @param summaryCapacity Capacity of the TopKSummary kept of the job, or 0 to count the job exactly
+	 * @param sketchSpec Size of the WordSketch kept of the job, or null if the job is not in sketch mode
+	 * @param bytes Bytes to be counted from the buffer's position to its limit, starting and ending on word boundaries
+	 */
+	public WordChunk(long chunkId, long jobId, int attempt, int summaryCapacity, SketchSpec sketchSpec, ByteBuffer bytes){
+		this(chunkId, jobId, attempt, summaryCapacity, sketchSpec, null, null, bytes);
+	}
+
+	private WordChunk(long chunkId, long jobId, int attempt, int summaryCapacity, SketchSpec sketchSpec, String[] words,
+			FileSegment segment, ByteBuffer bytes){
+		this.chunkId = chunkId;
+		this.jobId = jobId;
+		this.attempt = attempt;
+		this.summaryCapacity = summaryCapacity;
+		this.sketchSpec = sketchSpec;
+		this.words = words;
+		this.segment = segment;
+		this.bytes = bytes;
+	}
+	
+	/**
+	 * Returns a copy of this chunk to be sent to another worker
+	 * @param attempt Attempt number of the copy
+	 * @return A chunk holding the same words, under the same id
+	 */
+	public WordChunk retry(int attempt){
+		return new WordChunk(this.chunkId, this.jobId, attempt, this.summaryCapacity, this.sketchSpec, this.words,
+				this.segment, this.bytes);
+	}
+
+	public long getChunkId(){
+		return this.chunkId;
+	}
+
+	public long getJobId(){
+		return this.jobId;
+	}
+
+	public int getAttempt(){
+		return this.attempt;
+	}
+
+	public int getSummaryCapacity(){
+		return this.summaryCapacity;
+	}
+
+	public SketchSpec getSketchSpec(){
+		return this.sketchSpec;
+	}
+
+	/**
+	 * Returns the words of this chunk
+	 * @return Words to be counted, or null if the chunk holds bytes
+	 */
+	public String[] getWords(){
+		return this.words;
+	}
+
+	/**
+	 * Returns the segment of a file this chunk holds, on the master which cut it
+	 * @return Segment to be counted, or null if the chunk holds words or bytes already read
+	 */
+	public FileSegment getSegment(){
+		return this.segment;
+	}
+
+	/**
+	 * Returns the bytes this chunk holds, once received
+	 * @return Bytes to be counted from the buffer's position to its limit, or null if the chunk holds words or a segment
+	 */
+	public ByteBuffer getBytes(){
+		return this.bytes;
+	}
+
+	/**
+	 * Returns the number of words in this chunk, estimated for a chunk of bytes
+	 * @return Number of words
+	 */
+	public long getSize(){
+		if(this.words!=null)
+			return this.words.length;
+		return Math.max(1, getBulkLength() / estimatedBytesPerWord);
+	}
+
+	@Override
+	public long getBulkLength() {
+		if(this.segment!=null)
+			return this.segment.getLength();
+		if(this.bytes!=null)
+			return this.bytes.remaining();
+		return -1;
+	}
+
+	@Override
+	public void transferBulk(WritableByteChannel channel) throws IOException {
+		if(this.bytes!=null){
+			ByteBuffer b = this.bytes.duplicate();
+			while(b.hasRemaining())
+				channel.write(b);
+			return;
+		}
+		RandomAccessFile raf = new RandomAccessFile(this.segment.getPath(), "r");
+		try {
+			FileChannel file = raf.getChannel();
+			long position = this.segment.getOffset();
+			long end = position + this.segment.getLength();
+			while(position<end){
+				long sent = file.transferTo(position, end - position, channel);
+				//Nothing left to send, the file is shorter than when it was cut
+				if(sent<=0 && position>=file.size())
+					throw new IOException("Error: " + this.segment + " is past the end of the file!");
+				position += sent;
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	@Override
+	public Object withBulk(ByteBuffer bytes) {
+		return new WordChunk(this.chunkId, this.jobId, this.attempt, this.summaryCapacity, this.sketchSpec, bytes);
+	}
+
+}
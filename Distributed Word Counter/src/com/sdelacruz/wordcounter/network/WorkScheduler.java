@@ -0,0 +1,1073 @@
+package com.sdelacruz.wordcounter.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.sdelacruz.concurrent.DrainReport;
+import com.sdelacruz.concurrent.Lifecycle;
+import com.sdelacruz.concurrent.PoolDrainer;
+import com.sdelacruz.network.INetworkController;
+import com.sdelacruz.network.NetworkModel;
+import com.sdelacruz.network.io.Sender;
+import com.sdelacruz.wordcounter.CountReducer;
+import com.sdelacruz.wordcounter.FileSegment;
+import com.sdelacruz.wordcounter.SketchCountReducer;
+import com.sdelacruz.wordcounter.SketchSpec;
+import com.sdelacruz.wordcounter.StripedCountReducer;
+import com.sdelacruz.wordcounter.TopKCountReducer;
+import com.sdelacruz.wordcounter.TopKSummary;
+import com.sdelacruz.wordcounter.WordCountTable;
+import com.sdelacruz.wordcounter.WordCounter;
+import com.sdelacruz.wordcounter.WordSketch;
+import com.sdelacruz.wordcounter.WordTokenizer;
+
+/**
+ * Class depicting the scheduler a master uses to hand words out to its workers.
+ *
+ * Submitted words are queued, and cut into WordChunks as workers have room for them. Each worker may
+ * have one chunk more in flight than it can count at once, so it always has its next chunk queued.
+ * Chunks are sized from the worker's measured throughput to take about targetChunkMillis to count,
+ * so fast workers are given larger chunks. When every worker is full, words stay queued until a
+ * ChunkAck frees one up. Words submitted while the node has no workers are counted locally.
+ *
+ * Every chunk sent is given a deadline, from the throughput of the worker it is sent to and the words
+ * that worker already has in flight. A chunk past its deadline is asked back from its worker with a
+ * ChunkCancel and, once no queued words are left to give out, a copy is sent speculatively to an idle
+ * worker. Whichever attempt is acknowledged first is committed; later attempts are cancelled if not yet
+ * started, and aborted if they were. Shuffled chunks are deduplicated the same way by the reducers, see CountShard.
+ *
+ * Each array of words submitted is a job, and every chunk holds words of a single job. Workers hold the
+ * count of each chunk until it is committed or aborted with a ChunkCommit, and combine the committed counts
+ * of a job into one count. Once every chunk of a job has been committed, each worker holding a count of
+ * the job is sent a JobCollect, and answers with its count in JobResults of a bounded size, each merged
+ * into the results as it arrives. So every word counted crosses the network back to the master at most
+ * once per worker and job, rather than once per chunk.
+ *
+ * A file submitted with submit(File) is a job cut into segments of the file rather than arrays of words. Each
+ * segment ends on a word boundary, and is sent straight from the file, see WordChunk, so the master never
+ * reads the words it is only forwarding. Workers tokenize the bytes they receive in place, and a sub-master
+ * cuts the bytes of each chunk it is sent into chunks of its own the same way. The size of a chunk of bytes
+ * is estimated in words, see WordChunk.getSize().
+ *
+ * A job submitted with a CountListener is merged into a count of its own, handed to the listener once
+ * complete. This is how a sub-master counts a chunk from its own master across its branch of the tree.
+ *
+ * In top-k mode, see setSummaryCapacity(int), workers keep a TopKSummary of each job rather than an exact
+ * count, and results are merged into the scheduler's own summary, so no node's memory or result grows
+ * with the number of distinct words.
+ *
+ * In sketch mode, see setSketchSpec(SketchSpec), workers keep a WordSketch of each job and send it whole as
+ * a JobSketch, merged into the scheduler's own sketch. Every result is then the same size, whatever the
+ * number of words or distinct words counted, at the cost of only estimating the count of each word.
+ *
+ */
+public class WorkScheduler implements Lifecycle {
+
+	//Chunks are sized to take about this long on the worker they are sent to
+	private static final long targetChunkMillis = 250;
+	private static final int maxChunkWords = 1 << 20;
+	//Weight of each new throughput measurement in a worker's running average
+	private static final double throughputWeight = 0.3;
+	//A chunk is late once outstanding for this many times longer than expected
+	private static final int slowFactor = 2;
+	private static final long minExpectedMillis = 200;
+	//Expected time of chunks sent before any worker's throughput is known
+	private static final long unmeasuredExpectedMillis = 2000;
+	private static final long rebalanceMillis = 100;
+	//Most attempts made at any one chunk
+	private static final int maxAttempts = 3;
+	//Stripes of the count of each job submitted with a CountListener
+	private static final int listenerJobStripes = 4;
+
+	private final INetworkController networkController;
+	//Merges the counts returned with acknowledgements
+	private final CountReducer results;
+	//Merges results instead while in top-k mode
+	private TopKCountReducer topK;
+	private int summaryCapacity = 0;
+	//Merges results instead while in sketch mode
+	private SketchCountReducer sketch;
+
+	//Everything below is guarded by the scheduler's monitor
+	private final Map<InetAddress, WorkerState> workers;
+	private final Map<Long, ChunkState> chunks;
+	//Jobs whose results have not all been merged
+	private final Map<Long, JobState> jobs;
+	//Chunks given back by a worker, sent again before any new chunk is cut
+	private final Deque<WordChunk> requeued;
+	//Jobs with words not yet cut into chunks
+	private final Deque<JobState> pendingJobs;
+	//Jobs submitted with a CountListener which are complete, handed to their listener outside the monitor
+	private final Deque<JobState> finishedJobs;
+	//Messages to workers, sent outside the monitor in the order they were queued, see sendQueued()
+	private final Deque<Outgoing> outgoing;
+	//Set while a thread is sending the queued messages
+	private boolean sending = false;
+	private long pendingWordCount = 0;
+	private long nextChunkId;
+	private long nextJobId = 0;
+	private boolean accepting = true;
+	private boolean speculative = true;
+	private long speculated = 0;
+	private long discarded = 0;
+	private long completedJobs = 0;
+	private long mergedResultWords = 0;
+
+	private final ScheduledExecutorService rebalancer;
+
+	/**
+	 * Constructs a WorkScheduler
+	 * @param c NetworkController of this node, holding the workers and the Sender to them
+	 * @param results CountReducer to merge the results of each job with
+	 */
+	public WorkScheduler(INetworkController c, CountReducer results){
+		this.networkController = c;
+		this.results = results;
+		this.workers = new HashMap<InetAddress, WorkerState>();
+		this.chunks = new HashMap<Long, ChunkState>();
+		this.jobs = new HashMap<Long, JobState>();
+		this.requeued = new ArrayDeque<WordChunk>();
+		this.pendingJobs = new ArrayDeque<JobState>();
+		this.finishedJobs = new ArrayDeque<JobState>();
+		this.outgoing = new ArrayDeque<Outgoing>();
+		//Chunk ids must not clash with those of other masters sending shards to the same reducers
+		this.nextChunkId = ((long)(new SecureRandom().nextInt() & 0x7FFFFFFF)) << 32;
+		this.rebalancer = Executors.newSingleThreadScheduledExecutor();
+		this.rebalancer.scheduleWithFixedDelay(new Runnable(){
+			@Override
+			public void run() {
+				//An exception would cancel every later run, so it is only logged
+				try {
+					rebalance();
+					sendQueued();
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+		}, rebalanceMillis, rebalanceMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Queue words to be counted by the workers
+	 * A RejectedExecutionException is thrown once the WorkScheduler is being drained
+	 * @param words Words to be counted
+	 */
+	public void submit(String[] words){
+		Runnable local;
+		synchronized(this){
+			if(this.sketch!=null)
+				local = submit(words, 0, this.sketch, null);
+			else
+				local = submit(words, this.summaryCapacity, this.topK==null ? this.results : this.topK, null);
+		}
+		runLocal(local);
+		sendQueued();
+	}
+
+	/**
+	 * Queue words to be counted by the workers, into a count of their own
+	 * A RejectedExecutionException is thrown once the WorkScheduler is being drained
+	 * @param words Words to be counted
+	 * @param summaryCapacity Capacity of the TopKSummary kept of the words, or 0 to count them exactly
+	 * @param listener Given the count of the words once every worker's result has been merged
+	 */
+	public void submit(String[] words, int summaryCapacity, WordCounter.CountListener listener){
+		submit(words, summaryCapacity, (SketchSpec)null, listener);
+	}
+
+	/**
+	 * Queue words to be counted by the workers, into a count or a sketch of their own
+	 * A RejectedExecutionException is thrown once the WorkScheduler is being drained
+	 * @param words Words to be counted
+	 * @param summaryCapacity Capacity of the TopKSummary kept of the words, or 0 to count them exactly
+	 * @param sketchSpec Size of the WordSketch kept of the words instead, or null
+	 * @param listener Given the count of the words once every worker's result has been merged, and their
+	 * sketch instead if it is a SketchListener and sketchSpec is given
+	 */
+	public void submit(String[] words, int summaryCapacity, SketchSpec sketchSpec, WordCounter.CountListener listener){
+		Runnable local;
+		synchronized(this){
+			local = submit(words, sketchSpec!=null ? 0 : Math.max(0, summaryCapacity), reducerFor(summaryCapacity, sketchSpec),
+					listener);
+		}
+		runLocal(local);
+		sendQueued();
+	}
+
+	/**
+	 * Queue a UTF-8 encoded file of whitespace separated words to be counted by the workers, as a job cut
+	 * into segments of the file which are sent without being read by this node.
+	 * The file must not change until the job is complete.
+	 * A RejectedExecutionException is thrown once the WorkScheduler is being drained
+	 * @param file File to be counted
+	 * @throws IOException if the file can not be read
+	 */
+	public void submit(File file) throws IOException {
+		CountReducer reducer;
+		synchronized(this){
+			if(!this.accepting)
+				throw new RejectedExecutionException("Error: WorkScheduler is shutting down!");
+			if(!file.isFile() || !file.canRead())
+				throw new IOException("Error: can not read " + file.getPath());
+			reducer = this.sketch!=null ? this.sketch : this.topK!=null ? this.topK : this.results;
+			if(!this.networkController.getNetworkModel().getWorkers().isEmpty()){
+				submit(null, new FileSegment(file.getPath(), 0, file.length()), null, this.sketch!=null ? 0 : this.summaryCapacity,
+						reducer, null);
+				reducer = null;
+			}
+		}
+		if(reducer!=null){
+			//Mapped and counted in place on this node instead, outside the monitor as the WordCounter may block
+			WordCounter counter = this.networkController.getWordCounter();
+			if(reducer==this.results)
+				counter.countFile(file);
+			else{
+				for(FileSegment segment : FileSegment.split(file, Runtime.getRuntime().availableProcessors()))
+					counter.countSegment(segment, reduceInto(reducer));
+			}
+		}
+		sendQueued();
+	}
+
+	/**
+	 * Queue UTF-8 encoded bytes of whitespace separated words to be counted by the workers, into a count or a sketch
+	 * of their own. Chunks of the bytes are sent to the workers without being copied.
+	 * A RejectedExecutionException is thrown once the WorkScheduler is being drained
+	 * @param bytes Bytes to be counted from the buffer's position to its limit, which must not change until counted
+	 * @param summaryCapacity Capacity of the TopKSummary kept of the words, or 0 to count them exactly
+	 * @param sketchSpec Size of the WordSketch kept of the words instead, or null
+	 * @param listener Given the count of the words once every worker's result has been merged, and their
+	 * sketch instead if it is a SketchListener and sketchSpec is given
+	 */
+	public void submit(ByteBuffer bytes, int summaryCapacity, SketchSpec sketchSpec, WordCounter.CountListener listener){
+		Runnable local;
+		synchronized(this){
+			local = submit(null, null, bytes.slice(), sketchSpec!=null ? 0 : Math.max(0, summaryCapacity),
+					reducerFor(summaryCapacity, sketchSpec), listener);
+		}
+		runLocal(local);
+		sendQueued();
+	}
+
+	private Runnable submit(String[] words, int summaryCapacity, CountReducer reducer, WordCounter.CountListener listener){
+		return submit(words, null, null, summaryCapacity, reducer, listener);
+	}
+
+	//Exactly one of words, segment and bytes is the input of the job. Words which are not handed to workers are
+	//counted by the Runnable returned, which may block or call the listener, so is run once the monitor is released
+	private Runnable submit(final String[] words, FileSegment segment, final ByteBuffer bytes, int summaryCapacity,
+			final CountReducer reducer, final WordCounter.CountListener listener){
+		if(!this.accepting)
+			throw new RejectedExecutionException("Error: WorkScheduler is shutting down!");
+		long size = words!=null ? words.length : segment!=null ? segment.getLength() : bytes.remaining();
+		if(size==0){
+			if(listener==null)
+				return null;
+			return new Runnable(){
+				@Override
+				public void run() {
+					deliver(reducer, listener);
+				}
+			};
+		}
+		if(this.networkController.getNetworkModel().getWorkers().isEmpty()){
+			final WordCounter.CountListener local;
+			if(listener instanceof SketchListener && reducer instanceof SketchCountReducer)
+				local = new WordCounter.CountListener(){
+					@Override
+					public void counted(WordCountTable wordcount) {
+						reducer.reduce(wordcount);
+						deliver(reducer, listener);
+					}
+				};
+			else if(listener!=null)
+				local = listener;
+			else if(reducer==this.results)
+				local = null;
+			else
+				local = reduceInto(reducer);
+			final WordCounter counter = this.networkController.getWordCounter();
+			return new Runnable(){
+				@Override
+				public void run() {
+					if(bytes!=null)
+						counter.countBytes(bytes, local);
+					else
+						counter.countWords(words, local);
+				}
+			};
+		}
+		SketchSpec sketchSpec = reducer instanceof SketchCountReducer ? ((SketchCountReducer)reducer).getSpec() : null;
+		JobState j = new JobState(this.nextJobId++, words, segment, bytes, summaryCapacity, sketchSpec, reducer, listener);
+		this.jobs.put(j.jobId, j);
+		this.pendingJobs.add(j);
+		this.pendingWordCount += j.pendingWords;
+		dispatch();
+		return null;
+	}
+
+	//Run the local count returned by submit(), if any, which must not hold the monitor
+	private static void runLocal(Runnable local){
+		if(local!=null)
+			local.run();
+	}
+
+	private static CountReducer reducerFor(int summaryCapacity, SketchSpec sketchSpec){
+		if(sketchSpec!=null)
+			return new SketchCountReducer(sketchSpec);
+		if(summaryCapacity>0)
+			return new TopKCountReducer(summaryCapacity);
+		return new StripedCountReducer(listenerJobStripes);
+	}
+
+	private static WordCounter.CountListener reduceInto(final CountReducer reducer){
+		return new WordCounter.CountListener(){
+			@Override
+			public void counted(WordCountTable wordcount) {
+				reducer.reduce(wordcount);
+			}
+		};
+	}
+
+	/**
+	 * Record a worker's acknowledgement of a chunk, and send it more work if any is queued.
+	 * A count held by the worker is committed only if no other attempt at the chunk has been.
+	 * @param ack Acknowledgement received from a worker
+	 */
+	public void acknowledge(ChunkAck ack){
+		synchronized(this){
+			record(ack);
+		}
+		sendQueued();
+		deliverFinished();
+	}
+
+	private void record(ChunkAck ack){
+		ChunkState c = this.chunks.get(ack.getChunkId());
+		//Unknown chunk, or every attempt already acknowledged
+		if(c==null)
+			return;
+		Attempt a = c.attempts.remove(ack.getAttempt());
+		if(a==null)
+			return;
+		WorkerState w = a.worker;
+		long now = System.nanoTime();
+		w.release(a);
+		w.slots = Math.max(1, ack.getSlots());
+
+		if(ack.isCancelled()){
+			w.reassignedChunks++;
+			//Send the chunk again, unless another attempt is still running or has already been counted
+			if(!c.done && c.attempts.isEmpty())
+				this.requeued.addFirst(c.chunk);
+		}
+		else{
+			//Time the worker spent on this chunk since it last completed one, so chunks counted
+			//side by side are not each charged for the whole time
+			long elapsed = Math.max(1, now - Math.max(a.sentNanos, w.lastAckNanos));
+			double sample = c.chunk.getSize() * 1e9 / elapsed;
+			w.wordsPerSecond = w.wordsPerSecond==0 ? sample
+					: w.wordsPerSecond * (1 - throughputWeight) + sample * throughputWeight;
+			w.lastAckNanos = now;
+			w.completedChunks++;
+			w.completedWords += c.chunk.getSize();
+
+			if(c.done){
+				//Another attempt got there first
+				this.discarded++;
+				if(ack.isHeld())
+					queue(new ChunkCommit(ack.getChunkId(), ack.getAttempt(), false), w.address);
+			}
+			else{
+				c.done = true;
+				if(ack.isHeld()){
+					queue(new ChunkCommit(ack.getChunkId(), ack.getAttempt(), true), w.address);
+					c.job.commit(w);
+				}
+				c.job.doneChunks++;
+				if(c.job.isCounted())
+					collect(c.job);
+				cancelAttempts(c);
+			}
+		}
+
+		//Requeued chunks keep their state, so later attempts are numbered on from this one
+		if(c.attempts.isEmpty() && c.done)
+			this.chunks.remove(ack.getChunkId());
+		if(w.inFlightChunks==0)
+			this.networkController.getNetworkModel().workerIdle(w.address);
+		dispatch();
+		notifyAll();
+	}
+
+	/**
+	 * Merge one part of a worker's count of a job into the results
+	 * @param result Part of the count, sent by a worker in answer to a JobCollect
+	 */
+	public void receive(JobResult result){
+		CountReducer reducer;
+		synchronized(this){
+			JobState j = this.jobs.get(result.getJobId());
+			//Unknown job, or not yet collected
+			if(j==null || j.partsRemaining==null || result.getSource()<0 || result.getSource()>=j.partsRemaining.length)
+				return;
+			reducer = j.results;
+		}
+		//Merged outside the scheduler's monitor, so acknowledgements are not held up by large parts
+		if(reducer instanceof TopKCountReducer)
+			((TopKCountReducer)reducer).reduce(result.getCounts(), result.getTotal());
+		else
+			reducer.reduce(result.getCounts());
+		synchronized(this){
+			this.mergedResultWords += result.getCounts().size();
+			JobState j = this.jobs.get(result.getJobId());
+			if(j!=null && j.merged(result.getSource(), result.getParts()))
+				finish(j);
+		}
+		deliverFinished();
+	}
+
+	/**
+	 * Merge a worker's sketch of a job into the results
+	 * @param result Sketch of the worker's count, sent in answer to a JobCollect in sketch mode
+	 */
+	public void receive(JobSketch result){
+		CountReducer reducer;
+		synchronized(this){
+			JobState j = this.jobs.get(result.getJobId());
+			if(j==null || j.partsRemaining==null || result.getSource()<0 || result.getSource()>=j.partsRemaining.length)
+				return;
+			reducer = j.results;
+		}
+		if(!(reducer instanceof SketchCountReducer))
+			return;
+		((SketchCountReducer)reducer).reduce(result.getSketch());
+		synchronized(this){
+			JobState j = this.jobs.get(result.getJobId());
+			if(j!=null && j.merged(result.getSource(), 1))
+				finish(j);
+		}
+		deliverFinished();
+	}
+
+	/**
+	 * Turn top-k mode on, or off given 0. Jobs submitted while on are summarised by the workers and
+	 * merged into a TopKSummary, see getTopK(); jobs already submitted are counted as they were.
+	 * @param capacity Capacity of the summaries, a few times the largest k to be asked for, or 0 to count exactly
+	 */
+	public synchronized void setSummaryCapacity(int capacity){
+		this.summaryCapacity = Math.max(0, capacity);
+		this.topK = capacity>0 ? new TopKCountReducer(capacity) : null;
+		if(capacity>0)
+			this.sketch = null;
+	}
+
+	/**
+	 * Returns the summary of every job counted in top-k mode
+	 * @return A copy of the summary, or null if top-k mode is off
+	 */
+	public synchronized TopKSummary getTopK(){
+		return this.topK==null ? null : this.topK.getSummary();
+	}
+
+	/**
+	 * Turn sketch mode on, or off given null, turning top-k mode off. Jobs submitted while on are sketched
+	 * by the workers and merged into a WordSketch, see getSketch(); jobs already submitted are counted as they were.
+	 * @param spec Size of the sketches, or null to count exactly
+	 */
+	public synchronized void setSketchSpec(SketchSpec spec){
+		this.sketch = spec==null ? null : new SketchCountReducer(spec);
+		if(spec!=null)
+			setSummaryCapacity(0);
+	}
+
+	/**
+	 * Returns the sketch of every job counted in sketch mode
+	 * @return A copy of the sketch, or null if sketch mode is off
+	 */
+	public synchronized WordSketch getSketch(){
+		return this.sketch==null ? null : this.sketch.getSketch();
+	}
+
+	/**
+	 * Set whether copies of late chunks are sent to idle workers. Late chunks are still asked back
+	 * from their worker, and reassigned if it had not started them.
+	 * @param speculative true to send speculative copies, the default
+	 */
+	public synchronized void setSpeculative(boolean speculative){
+		this.speculative = speculative;
+	}
+
+	/**
+	 * Returns a snapshot of every worker's state
+	 * @return Stats of each worker the scheduler has seen
+	 */
+	public synchronized List<WorkerStats> getWorkerStats(){
+		List<WorkerStats> stats = new ArrayList<WorkerStats>();
+		for(WorkerState w : this.workers.values())
+			stats.add(new WorkerStats(w.address, w.inFlightChunks, w.slots, w.inFlightWords, w.inFlightBytes,
+					w.wordsPerSecond, w.completedChunks, w.completedWords, w.reassignedChunks));
+		return stats;
+	}
+
+	/**
+	 * Returns the number of words queued and not yet sent to a worker
+	 * @return Number of queued words
+	 */
+	public synchronized long getPendingWords(){
+		long words = this.pendingWordCount;
+		for(WordChunk c : this.requeued)
+			words += c.getSize();
+		return words;
+	}
+
+	/**
+	 * Returns the number of chunks handed out whose count has not yet been merged
+	 * @return Number of outstanding chunks
+	 */
+	public synchronized int getOutstandingChunks(){
+		int outstanding = 0;
+		for(ChunkState c : this.chunks.values()){
+			if(!c.done)
+				outstanding++;
+		}
+		return outstanding;
+	}
+
+	/**
+	 * Returns the number of jobs submitted whose results have not all been merged
+	 * @return Number of outstanding jobs
+	 */
+	public synchronized int getOutstandingJobs(){
+		return this.jobs.size();
+	}
+
+	/**
+	 * Returns the number of jobs whose results have all been merged
+	 * @return Number of completed jobs
+	 */
+	public synchronized long getCompletedJobs(){
+		return this.completedJobs;
+	}
+
+	/**
+	 * Returns the number of words merged from the results of workers, each word counted once per result it is in
+	 * @return Number of words merged
+	 */
+	public synchronized long getMergedResultWords(){
+		return this.mergedResultWords;
+	}
+
+	/**
+	 * Returns the number of speculative copies sent of late chunks
+	 * @return Number of speculative attempts
+	 */
+	public synchronized long getSpeculativeAttempts(){
+		return this.speculated;
+	}
+
+	/**
+	 * Returns the number of counts discarded because another attempt at the same chunk was merged first
+	 * @return Number of discarded counts
+	 */
+	public synchronized long getDiscardedAttempts(){
+		return this.discarded;
+	}
+
+	/**
+	 * Wait until every job submitted so far has been counted and its results merged
+	 * @param timeout How long to wait
+	 * @param unit Unit of timeout
+	 * @return true if every word has been counted, false if the timeout passed first
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public synchronized boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = PoolDrainer.deadline(timeout, unit);
+		while(!this.jobs.isEmpty()){
+			long nanos = PoolDrainer.remainingNanos(deadline);
+			if(nanos==0)
+				return false;
+			TimeUnit.NANOSECONDS.timedWait(this, nanos);
+		}
+		return true;
+	}
+
+	/**
+	 * Stop accepting new words, and keep sending queued words to workers until every job has been
+	 * counted and its results merged, or the deadline passes. Jobs not complete by the deadline are reported as dropped.
+	 */
+	@Override
+	public synchronized DrainReport drain(long timeout, TimeUnit unit){
+		this.accepting = false;
+		long completedBefore = this.completedJobs;
+
+		try {
+			awaitCompletion(timeout, unit);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.rebalancer.shutdownNow();
+
+		long dropped = this.jobs.size();
+		return new DrainReport("WorkScheduler", this.completedJobs - completedBefore, dropped, dropped==0);
+	}
+
+	//Send chunks to workers with room for them, until there are no words left or every worker is full
+	private void dispatch(){
+		NetworkModel model = this.networkController.getNetworkModel();
+		if(this.networkController.getSender(model.getWorkerSendPort())==null)
+			return;
+
+		while(hasPending()){
+			WordChunk chunk = this.requeued.peek();
+			ChunkState c = chunk==null ? null : this.chunks.get(chunk.getChunkId());
+			WorkerState w = pickWorker(model, null);
+			if(w==null)
+				return;
+			if(chunk==null){
+				JobState j = this.pendingJobs.peek();
+				chunk = cut(j, chunkSizeFor(w, model));
+				c = new ChunkState(chunk, j);
+				this.chunks.put(chunk.getChunkId(), c);
+			}
+			else{
+				this.requeued.poll();
+			}
+			send(model, c, w);
+		}
+	}
+
+	//Send the next attempt at a chunk to a worker
+	private void send(NetworkModel model, ChunkState c, WorkerState w){
+		Attempt a = new Attempt(c.chunk.retry(c.nextAttempt++), w);
+		c.attempts.put(a.chunk.getAttempt(), a);
+		w.hold(a);
+		a.deadlineNanos = a.sentNanos + TimeUnit.MILLISECONDS.toNanos(expectedMillis(w) * slowFactor);
+		model.workerBusy(w.address);
+		queue(a.chunk, w.address);
+	}
+
+	//The worker with room for another chunk which would get through its chunks in flight soonest
+	private WorkerState pickWorker(NetworkModel model, ChunkState exclude){
+		WorkerState best = null;
+		double bestBacklog = 0;
+		for(InetAddress i : model.getWorkers().keySet()){
+			WorkerState w = this.workers.get(i);
+			if(w==null){
+				w = new WorkerState(i);
+				this.workers.put(i, w);
+			}
+			if(w.inFlightChunks>w.slots || (exclude!=null && exclude.isAttemptedBy(w)))
+				continue;
+			double backlog = w.wordsPerSecond==0 ? w.inFlightChunks : w.inFlightWords / w.wordsPerSecond;
+			if(best==null || backlog<bestBacklog){
+				best = w;
+				bestBacklog = backlog;
+			}
+		}
+		return best;
+	}
+
+	private int chunkSizeFor(WorkerState w, NetworkModel model){
+		int minimum = Math.max(1, model.getMinWordSendUnit());
+		if(w.wordsPerSecond==0)
+			return minimum;
+		long words = (long)(w.wordsPerSecond * targetChunkMillis / 1000);
+		return (int)Math.max(minimum, Math.min(maxChunkWords, words));
+	}
+
+	//Time a worker should take to get through every chunk it has in flight
+	private long expectedMillis(WorkerState w){
+		double wordsPerSecond = w.wordsPerSecond;
+		if(wordsPerSecond==0){
+			//Not measured yet, judge the worker by the others
+			int measured = 0;
+			for(WorkerState other : this.workers.values()){
+				if(other.wordsPerSecond>0){
+					wordsPerSecond += other.wordsPerSecond;
+					measured++;
+				}
+			}
+			if(measured==0)
+				return unmeasuredExpectedMillis;
+			wordsPerSecond /= measured;
+		}
+		return Math.max(minExpectedMillis, (long)(w.inFlightWords * 1000 / wordsPerSecond));
+	}
+
+	//Take up to size words, or about as many in bytes but never more than WordChunk.maxBytes, from the front of
+	//a job's input not yet cut
+	private WordChunk cut(JobState j, int size){
+		long chunkId = this.nextChunkId++;
+		long bytes = (long)size * WordChunk.estimatedBytesPerWord;
+		WordChunk chunk;
+		if(j.words!=null){
+			int n = Math.min(size, j.words.length - j.cutOffset);
+			String[] words = Arrays.copyOfRange(j.words, j.cutOffset, j.cutOffset + n);
+			j.cutOffset += n;
+			if(j.cutOffset==j.words.length)
+				j.words = null;
+			chunk = new WordChunk(chunkId, j.jobId, 0, j.summaryCapacity, j.sketchSpec, words);
+		}
+		else if(j.segment!=null){
+			//Only a word boundary within the first maxBytes is looked for
+			FileSegment head = new FileSegment(j.segment.getPath(), j.segment.getOffset(),
+					Math.min(j.segment.getLength(), WordChunk.maxBytes));
+			try {
+				head = head.head(bytes);
+			} catch (IOException e) {
+				//No word boundary can be found, so the chunk is cut at maxBytes
+				e.printStackTrace();
+			}
+			j.segment = j.segment.after(head);
+			if(j.segment.getLength()==0)
+				j.segment = null;
+			chunk = new WordChunk(chunkId, j.jobId, 0, j.summaryCapacity, j.sketchSpec, head);
+		}
+		else{
+			ByteBuffer head = j.bytes.duplicate();
+			head.limit((int)Math.min(head.limit(), (long)head.position() + WordChunk.maxBytes));
+			head.limit(WordTokenizer.boundary(head, (int)Math.min(head.limit(), head.position() + bytes)));
+			j.bytes.position(head.limit());
+			if(!j.bytes.hasRemaining())
+				j.bytes = null;
+			chunk = new WordChunk(chunkId, j.jobId, 0, j.summaryCapacity, j.sketchSpec, head.slice());
+		}
+		j.chunks++;
+		//Estimates of the words in chunks of bytes need not add up to the estimate of the whole job
+		long n = j.isCut() ? j.pendingWords : Math.min(chunk.getSize(), j.pendingWords);
+		j.pendingWords -= n;
+		this.pendingWordCount -= n;
+		if(j.isCut()){
+			//Every word of the job is now held by its chunks
+			this.pendingJobs.poll();
+		}
+		return chunk;
+	}
+
+	//Ask each worker holding committed counts of a job for its combined count
+	private void collect(JobState j){
+		if(j.commits.isEmpty()){
+			//Every count was shuffled to the reducers
+			finish(j);
+			return;
+		}
+		j.partsRemaining = new int[j.commits.size()];
+		Arrays.fill(j.partsRemaining, -1);
+		j.sourcesRemaining = j.partsRemaining.length;
+		int source = 0;
+		for(Map.Entry<WorkerState, Integer> e : j.commits.entrySet())
+			queue(new JobCollect(j.jobId, source++, e.getValue()), e.getKey().address);
+	}
+
+	private void finish(JobState j){
+		this.jobs.remove(j.jobId);
+		this.completedJobs++;
+		if(j.listener!=null)
+			this.finishedJobs.add(j);
+		notifyAll();
+	}
+
+	//Listeners may call back into the scheduler, or take other locks, so are never called holding its monitor
+	private void deliverFinished(){
+		while(true){
+			JobState j;
+			synchronized(this){
+				j = this.finishedJobs.poll();
+			}
+			if(j==null)
+				return;
+			deliver(j.results, j.listener);
+		}
+	}
+
+	private static void deliver(CountReducer reducer, WordCounter.CountListener listener){
+		if(listener instanceof SketchListener && reducer instanceof SketchCountReducer)
+			((SketchListener)listener).sketched(((SketchCountReducer)reducer).getSketch());
+		else
+			listener.counted(reducer.result());
+	}
+
+	//Queue a message to a worker, sent by sendQueued() once the monitor is released
+	private void queue(Object o, InetAddress address){
+		this.outgoing.add(new Outgoing(o, address));
+	}
+
+	//A Sender blocks while it is full, so messages are never sent holding the monitor. One thread at a time sends
+	//every message queued, including those queued meanwhile by others, so each worker gets them in order.
+	//A message the Sender rejects is queued again in front of the others, and retried by the next call, at the
+	//latest by the rebalancer
+	private void sendQueued(){
+		synchronized(this){
+			if(this.sending)
+				return;
+			this.sending = true;
+		}
+		Outgoing o = null;
+		try {
+			Sender s = this.networkController.getSender(this.networkController.getNetworkModel().getWorkerSendPort());
+			while(true){
+				synchronized(this){
+					o = s==null ? null : this.outgoing.poll();
+					if(o==null){
+						this.sending = false;
+						return;
+					}
+				}
+				s.send(o.message, o.address);
+			}
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			synchronized(this){
+				if(o!=null)
+					this.outgoing.addFirst(o);
+				this.sending = false;
+			}
+		}
+	}
+
+	private boolean hasPending(){
+		return this.pendingWordCount>0 || !this.requeued.isEmpty();
+	}
+
+	//Ask workers to give back, or stop, their attempts at a chunk which has been counted or is late
+	private void cancelAttempts(ChunkState c){
+		for(Attempt a : c.attempts.values()){
+			if(!a.cancelRequested){
+				a.cancelRequested = true;
+				queue(new ChunkCancel(a.chunk.getChunkId(), a.chunk.getAttempt()), a.worker.address);
+			}
+		}
+	}
+
+	//Once no queued words are left to give out, ask for late chunks back and send copies of them to idle workers
+	private synchronized void rebalance(){
+		NetworkModel model = this.networkController.getNetworkModel();
+		//Queued words are given out first, they are just as likely to hold up the job
+		if(this.networkController.getSender(model.getWorkerSendPort())==null || this.chunks.isEmpty() || hasPending())
+			return;
+
+		long now = System.nanoTime();
+		List<ChunkState> late = new ArrayList<ChunkState>();
+		for(ChunkState c : this.chunks.values()){
+			if(!c.done && c.nextAttempt<maxAttempts && c.isLate(now))
+				late.add(c);
+		}
+
+		for(ChunkState c : late){
+			WorkerState w = pickWorker(model, c);
+			if(w==null || w.inFlightChunks>0)
+				return;
+			//The late attempt is given back if it has not started, otherwise the first to finish wins
+			cancelAttempts(c);
+			if(this.speculative){
+				this.speculated++;
+				send(model, c, w);
+			}
+		}
+	}
+
+	/**
+	 * CountListener of words submitted in sketch mode, given the merged WordSketch of the words rather
+	 * than their count, which a sketch can not list
+	 */
+	public interface SketchListener extends WordCounter.CountListener {
+
+		/**
+		 * Called once every worker's sketch of the words has been merged
+		 * @param sketch Sketch of the words
+		 */
+		void sketched(WordSketch sketch);
+
+	}
+
+	//The words of one submission, until every chunk of it is counted and every result merged
+	private static class JobState {
+
+		private final long jobId;
+		private final int summaryCapacity;
+		private final SketchSpec sketchSpec;
+		private final CountReducer results;
+		private final WordCounter.CountListener listener;
+		//Words not yet cut into chunks start at cutOffset, null once every word has been cut
+		private String[] words;
+		private int cutOffset = 0;
+		//Or the segment of a file, or the bytes, not yet cut, null once all have been cut
+		private FileSegment segment;
+		private ByteBuffer bytes;
+		//Words, or estimated words, not yet cut
+		private long pendingWords;
+		private int chunks = 0;
+		private int doneChunks = 0;
+		//Number of chunks committed on each worker
+		private final Map<WorkerState, Integer> commits;
+		//Parts of each worker's result not yet merged, -1 until its first part arrives, null until collected
+		private int[] partsRemaining;
+		private int sourcesRemaining;
+
+		private JobState(long jobId, String[] words, FileSegment segment, ByteBuffer bytes, int summaryCapacity,
+				SketchSpec sketchSpec, CountReducer results, WordCounter.CountListener listener){
+			this.jobId = jobId;
+			this.words = words;
+			this.segment = segment;
+			this.bytes = bytes;
+			if(words!=null)
+				this.pendingWords = words.length;
+			else
+				this.pendingWords = Math.max(1, (segment!=null ? segment.getLength() : bytes.remaining()) / WordChunk.estimatedBytesPerWord);
+			this.summaryCapacity = summaryCapacity;
+			this.sketchSpec = sketchSpec;
+			this.results = results;
+			this.listener = listener;
+			this.commits = new LinkedHashMap<WorkerState, Integer>();
+		}
+
+		private void commit(WorkerState w){
+			Integer n = this.commits.get(w);
+			this.commits.put(w, n==null ? 1 : n + 1);
+		}
+
+		private boolean isCut(){
+			return this.words==null && this.segment==null && this.bytes==null;
+		}
+
+		private boolean isCounted(){
+			return isCut() && this.doneChunks==this.chunks;
+		}
+
+		//Record a merged part, returns true once every part of every worker's result has been merged
+		private boolean merged(int source, int parts){
+			if(this.partsRemaining[source]<0)
+				this.partsRemaining[source] = parts;
+			if(--this.partsRemaining[source]==0)
+				this.sourcesRemaining--;
+			return this.sourcesRemaining==0;
+		}
+
+	}
+
+	//A chunk handed out to workers, until every attempt at it has been acknowledged
+	private static class ChunkState {
+
+		private final WordChunk chunk;
+		private final JobState job;
+		private final Map<Integer, Attempt> attempts;
+		private int nextAttempt = 0;
+		//Whether an attempt has been acknowledged and its count committed
+		private boolean done = false;
+
+		private ChunkState(WordChunk chunk, JobState job){
+			this.chunk = chunk;
+			this.job = job;
+			this.attempts = new HashMap<Integer, Attempt>();
+		}
+
+		//Late once every attempt has passed its deadline
+		private boolean isLate(long now){
+			if(this.attempts.isEmpty())
+				return false;
+			for(Attempt a : this.attempts.values()){
+				if(now - a.deadlineNanos<0)
+					return false;
+			}
+			return true;
+		}
+
+		private boolean isAttemptedBy(WorkerState w){
+			for(Attempt a : this.attempts.values()){
+				if(a.worker==w)
+					return true;
+			}
+			return false;
+		}
+
+	}
+
+	//One attempt at a chunk, sent to a worker and not yet acknowledged
+	private static class Attempt {
+
+		private final WordChunk chunk;
+		private final WorkerState worker;
+		private final long sentNanos;
+		private long deadlineNanos;
+		private final long bytes;
+		private boolean cancelRequested = false;
+
+		private Attempt(WordChunk chunk, WorkerState worker){
+			this.chunk = chunk;
+			this.worker = worker;
+			this.sentNanos = System.nanoTime();
+			//Approximate encoded size: the chars of each word plus a length prefix
+			long bytes = 0;
+			if(chunk.getWords()==null)
+				bytes = chunk.getBulkLength();
+			else{
+				for(String word : chunk.getWords())
+					bytes += word==null ? 1 : word.length() + 1;
+			}
+			this.bytes = bytes;
+		}
+
+	}
+
+	//A message queued for a worker while the monitor was held
+	private static class Outgoing {
+
+		private final Object message;
+		private final InetAddress address;
+
+		private Outgoing(Object message, InetAddress address){
+			this.message = message;
+			this.address = address;
+		}
+
+	}
+
+	//What the scheduler knows about one worker
+	private static class WorkerState {
+
+		private final InetAddress address;
+		private int slots = 1;
+		private int inFlightChunks = 0;
+		private long inFlightWords = 0;
+		private long inFlightBytes = 0;
+		private double wordsPerSecond = 0;
+		private long lastAckNanos = Long.MIN_VALUE;
+		private long completedChunks = 0;
+		private long completedWords = 0;
+		private long reassignedChunks = 0;
+
+		private WorkerState(InetAddress address){
+			this.address = address;
+		}
+
+		private void hold(Attempt a){
+			this.inFlightChunks++;
+			this.inFlightWords += a.chunk.getSize();
+			this.inFlightBytes += a.bytes;
+		}
+
+		private void release(Attempt a){
+			this.inFlightChunks--;
+			this.inFlightWords -= a.chunk.getSize();
+			this.inFlightBytes -= a.bytes;
+		}
+
+	}
+
+}
@@ -0,0 +1,64 @@
+package com.sdelacruz.wordcounter.network;
+
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+
+import com.sdelacruz.network.NetworkModel;
+import com.sdelacruz.network.objectprocessing.ObjectProcessor;
+import com.sdelacruz.network.objectprocessing.ProcessTask;
+
+/**
+ * ProcessTask for Objects received from this node's workers, and from nodes asking to join it.
+ * MasterProcessTask is its counterpart, for Objects received from this node's master.
+ *
+ */
+public class WorkerProcessTask extends ProcessTask {
+
+	protected WorkerProcessTask(Object o, ObjectProcessor p) {
+		super(o, p);
+	}
+
+	@Override
+	protected void process(Object o) {
+
+		//A node asking to join this node, or confirming it has
+		if(o instanceof InetAddress){
+			InetAddress joining = (InetAddress)o;
+			NetworkModel model = this.objectProcessor.getNetworkController().getNetworkModel();
+			//Already a worker, this is its confirmation
+			if(model.getWorkers().containsKey(joining))
+				return;
+			InetAddress branch = model.admitWorker(joining);
+			try {
+				//Send the node this machine's InetAddress if taken on, otherwise the worker to join instead
+				this.sendToWorker(branch==null ? model.getLocalInet() : branch, joining);
+			} catch (SocketException e) {
+				e.printStackTrace();
+			} catch (UnknownHostException e) {
+				e.printStackTrace();
+			}
+		}
+		//A worker has counted, or given back, a chunk
+		else if(o instanceof ChunkAck){
+			this.objectProcessor.getNetworkController().getWorkScheduler().acknowledge((ChunkAck)o);
+		}
+		//A worker has sent part of its count of a job
+		else if(o instanceof JobResult){
+			this.objectProcessor.getNetworkController().getWorkScheduler().receive((JobResult)o);
+		}
+		//A worker has sent its sketch of a job
+		else if(o instanceof JobSketch){
+			this.objectProcessor.getNetworkController().getWorkScheduler().receive((JobSketch)o);
+		}
+
+	}
+
+	//Method to send an Object to one of this Node's workers
+	private void sendToWorker(Object o, InetAddress worker){
+		this.objectProcessor.getNetworkController().getSender(
+				this.objectProcessor.getNetworkController().getNetworkModel().getWorkerSendPort()
+				).send(o, worker);
+	}
+
+}
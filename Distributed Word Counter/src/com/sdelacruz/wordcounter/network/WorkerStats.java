@@ -0,0 +1,97 @@
+package com.sdelacruz.wordcounter.network;
+
+import java.net.InetAddress;
+
+/**
+ * Snapshot of the state of one worker, as seen by a WorkScheduler.
+ *
+ */
+public class WorkerStats {
+
+	private final InetAddress worker;
+	private final int queueDepth;
+	private final int slots;
+	private final long inFlightWords;
+	private final long inFlightBytes;
+	private final double wordsPerSecond;
+	private final long completedChunks;
+	private final long completedWords;
+	private final long reassignedChunks;
+
+	WorkerStats(InetAddress worker, int queueDepth, int slots, long inFlightWords, long inFlightBytes,
+			double wordsPerSecond, long completedChunks, long completedWords, long reassignedChunks){
+		this.worker = worker;
+		this.queueDepth = queueDepth;
+		this.slots = slots;
+		this.inFlightWords = inFlightWords;
+		this.inFlightBytes = inFlightBytes;
+		this.wordsPerSecond = wordsPerSecond;
+		this.completedChunks = completedChunks;
+		this.completedWords = completedWords;
+		this.reassignedChunks = reassignedChunks;
+	}
+
+	public InetAddress getWorker(){
+		return this.worker;
+	}
+
+	/**
+	 * Returns the number of chunks sent to the worker and not yet acknowledged
+	 * @return Number of chunks in flight
+	 */
+	public int getQueueDepth(){
+		return this.queueDepth;
+	}
+
+	/**
+	 * Returns the number of chunks the worker counts at once, as last reported by the worker
+	 * @return Number of counting slots
+	 */
+	public int getSlots(){
+		return this.slots;
+	}
+
+	public long getInFlightWords(){
+		return this.inFlightWords;
+	}
+
+	/**
+	 * Returns the approximate encoded size of the chunks in flight to the worker
+	 * @return Bytes in flight
+	 */
+	public long getInFlightBytes(){
+		return this.inFlightBytes;
+	}
+
+	/**
+	 * Returns the measured throughput of the worker
+	 * @return Words counted per second, or 0 if no chunk has been acknowledged yet
+	 */
+	public double getWordsPerSecond(){
+		return this.wordsPerSecond;
+	}
+
+	public long getCompletedChunks(){
+		return this.completedChunks;
+	}
+
+	public long getCompletedWords(){
+		return this.completedWords;
+	}
+
+	/**
+	 * Returns the number of chunks taken back from the worker and given to another
+	 * @return Number of reassigned chunks
+	 */
+	public long getReassignedChunks(){
+		return this.reassignedChunks;
+	}
+
+	@Override
+	public String toString(){
+		return String.format("%s: depth=%d/%d inFlight=%d words (%d bytes) rate=%.0f words/s completed=%d chunks (%d words) reassigned=%d",
+				this.worker.getHostAddress(), this.queueDepth, this.slots, this.inFlightWords, this.inFlightBytes,
+				this.wordsPerSecond, this.completedChunks, this.completedWords, this.reassignedChunks);
+	}
+
+}
@@ -0,0 +1,114 @@
+package com.sdelacruz.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+	@Test
+	public void isEmptyUntilRecorded(){
+		Histogram h = new Histogram();
+		assertEquals(0, h.getCount());
+		assertEquals(0, h.getMax());
+		assertEquals(0, h.getMean(), 0);
+		assertEquals(0, h.getValueAtPercentile(50));
+	}
+
+	@Test
+	public void countsSmallValuesExactly(){
+		Histogram h = new Histogram();
+		for(int n = 0;n<32;n++)
+			h.record(n);
+		assertEquals(32, h.getCount());
+		assertEquals(31, h.getMax());
+		assertEquals(15.5, h.getMean(), 1e-9);
+		assertEquals(0, h.getValueAtPercentile(0));
+		assertEquals(15, h.getValueAtPercentile(50));
+		assertEquals(31, h.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void recordsNegativeValuesAsZero(){
+		Histogram h = new Histogram();
+		h.record(-5);
+		assertEquals(1, h.getCount());
+		assertEquals(0, h.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void bucketsHoldEveryValueToWithinAThirtySecond(){
+		Random random = new Random(13);
+		for(int n = 0;n<5000;n++){
+			//Values spread over every power of two, and the edges of each
+			int exponent = random.nextInt(63);
+			long value;
+			switch(n % 3){
+			case 0:
+				value = 1L << exponent;
+				break;
+			case 1:
+				value = (1L << exponent) - 1;
+				break;
+			default:
+				value = (1L << exponent) + (random.nextLong() & ((1L << exponent) - 1));
+			}
+			//The second value is larger, so the median is the highest value of the first value's bucket
+			Histogram h = new Histogram();
+			h.record(value);
+			h.record(Long.MAX_VALUE);
+			long highest = h.getValueAtPercentile(50);
+			assertTrue(value + " in a bucket up to " + highest, highest>=value);
+			assertTrue(value + " in a bucket up to " + highest, highest - value<=value / 32);
+		}
+	}
+
+	@Test
+	public void percentilesFollowTheDistribution(){
+		Histogram h = new Histogram();
+		for(int n = 1;n<=10000;n++)
+			h.record(n * 1000L);
+		assertEquals(10000000L, h.getMax());
+		assertEquals(5000500.0, h.getMean(), 1e-6);
+		long[] expected = {1000000, 5000000, 9000000, 9900000};
+		double[] percentiles = {10, 50, 90, 99};
+		for(int n = 0;n<percentiles.length;n++){
+			long value = h.getValueAtPercentile(percentiles[n]);
+			assertTrue(percentiles[n] + "th " + value, value>=expected[n] && value<=expected[n] + expected[n] / 32);
+		}
+		assertEquals(h.getMax(), h.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void recordsTheLargestValue(){
+		Histogram h = new Histogram();
+		h.record(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, h.getMax());
+		assertEquals(Long.MAX_VALUE, h.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void countsEveryValueRecordedConcurrently() throws Exception {
+		final Histogram h = new Histogram();
+		Thread[] threads = new Thread[4];
+		for(int t = 0;t<threads.length;t++){
+			final int offset = t;
+			threads[t] = new Thread(){
+				@Override
+				public void run(){
+					for(int n = 0;n<100000;n++)
+						h.record(n + offset);
+				}
+			};
+			threads[t].start();
+		}
+		for(Thread t : threads)
+			t.join();
+		assertEquals(400000, h.getCount());
+		assertEquals(99999 + threads.length - 1, h.getMax());
+	}
+
+}
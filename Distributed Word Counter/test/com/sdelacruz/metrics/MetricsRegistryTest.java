@@ -0,0 +1,49 @@
+package com.sdelacruz.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+
+	private final MetricsRegistry registry = new MetricsRegistry();
+
+	@Test
+	public void returnsOneMetricPerName(){
+		assertSame(this.registry.counter("a"), this.registry.counter("a"));
+		assertSame(this.registry.histogram("h"), this.registry.histogram("h"));
+		this.registry.counter("a").add(3);
+		this.registry.counter("a").increment();
+		assertEquals(4, this.registry.getCounters().get("a").get());
+		assertTrue(this.registry.getHistograms().containsKey("h"));
+	}
+
+	@Test
+	public void sumsGaugesOfTheSameName(){
+		Gauge one = constant(1);
+		Gauge two = constant(2);
+		this.registry.register("g", one);
+		this.registry.register("g", two);
+		assertEquals(3, this.registry.getGauge("g"));
+		assertEquals(Long.valueOf(3), this.registry.getGauges().get("g"));
+
+		this.registry.unregister("g", one);
+		assertEquals(2, this.registry.getGauge("g"));
+		this.registry.unregister("g", two);
+		assertEquals(0, this.registry.getGauge("g"));
+		assertTrue(this.registry.getGauges().isEmpty());
+		assertEquals(0, this.registry.getGauge("missing"));
+	}
+
+	private static Gauge constant(final long value){
+		return new Gauge(){
+			@Override
+			public long get() {
+				return value;
+			}
+		};
+	}
+
+}
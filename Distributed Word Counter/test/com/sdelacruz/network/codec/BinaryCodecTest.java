@@ -0,0 +1,255 @@
+package com.sdelacruz.network.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.sdelacruz.wordcounter.SketchSpec;
+import com.sdelacruz.wordcounter.WordCountTable;
+import com.sdelacruz.wordcounter.WordSketch;
+import com.sdelacruz.wordcounter.network.ChunkAck;
+import com.sdelacruz.wordcounter.network.ChunkCommit;
+import com.sdelacruz.wordcounter.network.CountShard;
+import com.sdelacruz.wordcounter.network.JobCollect;
+import com.sdelacruz.wordcounter.network.JobResult;
+import com.sdelacruz.wordcounter.network.JobSketch;
+import com.sdelacruz.wordcounter.network.WordChunk;
+
+public class BinaryCodecTest {
+
+	private final BinaryCodec codec = new BinaryCodec();
+
+	@Test
+	public void roundTripsWords() throws Exception {
+		String[] words = {"one", null, "", "caf\u00E9", "\uD83D\uDE00", "one"};
+		assertArrayEquals(words, (String[])roundTrip(words));
+		assertEquals(0, ((String[])roundTrip(new String[0])).length);
+	}
+
+	@Test
+	public void roundTripsCounts() throws Exception {
+		WordCountTable table = new WordCountTable();
+		table.add("a", 1);
+		table.add("\u65E5\u672C", 300);
+		table.add("big", Long.MAX_VALUE);
+		assertEquals(table.toMap(), ((WordCountTable)roundTrip(table)).toMap());
+		assertTrue(((WordCountTable)roundTrip(new WordCountTable())).isEmpty());
+	}
+
+	@Test
+	public void roundTripsAddresses() throws Exception {
+		InetAddress v4 = InetAddress.getByAddress(new byte[]{10, 0, 0, 1});
+		InetAddress v6 = InetAddress.getByAddress(new byte[]{0x20, 1, 0x0d, (byte)0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1});
+		assertEquals(v4, roundTrip(v4));
+		assertEquals(v6, roundTrip(v6));
+	}
+
+	@Test
+	public void roundTripsShards() throws Exception {
+		WordCountTable counts = new WordCountTable();
+		counts.add("x", 2);
+		CountShard shard = (CountShard)roundTrip(new CountShard(CountShard.noChunk, 3, 8, counts));
+		assertEquals(CountShard.noChunk, shard.getChunkId());
+		assertEquals(3, shard.getShard());
+		assertEquals(8, shard.getShards());
+		assertEquals(counts.toMap(), shard.getCounts().toMap());
+	}
+
+	@Test
+	public void roundTripsChunks() throws Exception {
+		String[] words = {"a", "b", null};
+		WordChunk chunk = (WordChunk)roundTrip(new WordChunk(1L << 40, 7, 2, 100, null, words));
+		assertEquals(1L << 40, chunk.getChunkId());
+		assertEquals(7, chunk.getJobId());
+		assertEquals(2, chunk.getAttempt());
+		assertEquals(100, chunk.getSummaryCapacity());
+		assertNull(chunk.getSketchSpec());
+		assertArrayEquals(words, chunk.getWords());
+	}
+
+	@Test
+	public void roundTripsControlMessages() throws Exception {
+		ChunkAck ack = (ChunkAck)roundTrip(new ChunkAck(5, 1, true, false, 4));
+		assertEquals(5, ack.getChunkId());
+		assertEquals(1, ack.getAttempt());
+		assertTrue(ack.isCancelled());
+		assertFalse(ack.isHeld());
+		assertEquals(4, ack.getSlots());
+
+		ChunkCommit commit = (ChunkCommit)roundTrip(new ChunkCommit(6, 2, true));
+		assertEquals(6, commit.getChunkId());
+		assertEquals(2, commit.getAttempt());
+		assertTrue(commit.isCommit());
+
+		JobCollect collect = (JobCollect)roundTrip(new JobCollect(9, 3, 12));
+		assertEquals(9, collect.getJobId());
+		assertEquals(3, collect.getSource());
+		assertEquals(12, collect.getCommits());
+	}
+
+	@Test
+	public void roundTripsResults() throws Exception {
+		WordCountTable counts = new WordCountTable();
+		counts.add("y", 5);
+		JobResult result = (JobResult)roundTrip(new JobResult(4, 1, 2, 3, 99, counts));
+		assertEquals(4, result.getJobId());
+		assertEquals(1, result.getSource());
+		assertEquals(2, result.getPart());
+		assertEquals(3, result.getParts());
+		assertEquals(99, result.getTotal());
+		assertEquals(counts.toMap(), result.getCounts().toMap());
+	}
+
+	@Test
+	public void roundTripsSketches() throws Exception {
+		SketchSpec spec = new SketchSpec(1 << 8, 3, 6);
+		WordSketch sketch = spec.newSketch();
+		for(int n = 0;n<1000;n++)
+			sketch.add("w" + n % 50, n);
+		JobSketch decoded = (JobSketch)roundTrip(new JobSketch(8, 2, sketch));
+		assertEquals(8, decoded.getJobId());
+		assertEquals(2, decoded.getSource());
+		assertEquals(spec, decoded.getSketch().getSpec());
+		assertEquals(sketch.getTotal(), decoded.getSketch().getTotal());
+		assertArrayEquals(sketch.getCountMinSketch().getCounters(), decoded.getSketch().getCountMinSketch().getCounters());
+		assertArrayEquals(sketch.getHyperLogLog().getRegisters(), decoded.getSketch().getHyperLogLog().getRegisters());
+
+		WordChunk chunk = (WordChunk)roundTrip(new WordChunk(1, 2, 0, 0, spec, new String[]{"a"}));
+		assertEquals(spec, chunk.getSketchSpec());
+	}
+
+	@Test
+	public void rejectsSketchesTheMessageDoesNotHold() throws Exception {
+		//Width, depth and precision of sketches which are invalid, too large for any frame, or larger than
+		//the message, none of which may be allocated
+		int[][] specs = {{1 << 30, 3, 12}, {1 << 27, 1, 12}, {1 << 26, 1, 12}, {1 << 8, 3, 30}, {100, 3, 12}};
+		for(int[] spec : specs){
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(10);
+			Varint.write(out, 1);
+			Varint.write(out, 0);
+			Varint.write(out, spec[0]);
+			Varint.write(out, spec[1]);
+			Varint.write(out, spec[2]);
+			Varint.write(out, 0);
+			out.write(new byte[16]);
+			assertFails(bytes.toByteArray());
+		}
+	}
+
+	@Test
+	public void rejectsTruncatedSketches() throws Exception {
+		WordSketch sketch = new SketchSpec(1 << 4, 2, 4).newSketch();
+		sketch.add("a", 1);
+		byte[] message = encode(new JobSketch(1, 0, sketch));
+		for(int length = 0;length<message.length;length++)
+			assertFails(Arrays.copyOf(message, length));
+	}
+
+	@Test
+	public void serializesAnythingElse() throws Exception {
+		assertEquals("plain string", roundTrip("plain string"));
+		assertEquals(Arrays.asList(1, 2, 3), roundTrip(Arrays.asList(1, 2, 3)));
+	}
+
+	@Test
+	public void rejectsUnknownTags() throws Exception {
+		assertFails(new byte[]{99});
+	}
+
+	@Test
+	public void rejectsTruncatedMessages() throws Exception {
+		WordCountTable table = new WordCountTable();
+		for(int n = 0;n<100;n++)
+			table.add("word" + n, n + 1);
+		byte[][] messages = {encode(new String[]{"one", "two", "three"}), encode(table),
+				encode(new JobResult(4, 1, 2, 3, 99, table))};
+		for(byte[] message : messages){
+			for(int length = 0;length<message.length;length++)
+				assertFails(Arrays.copyOf(message, length));
+		}
+	}
+
+	@Test
+	public void rejectsCountsLargerThanTheMessage() throws Exception {
+		//A String[] claiming Integer.MAX_VALUE words, then a single word
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(1);
+		Varint.write(out, Integer.MAX_VALUE);
+		Varint.write(out, 2);
+		out.writeByte('a');
+		assertFails(bytes.toByteArray());
+
+		//A WordCountTable whose only word claims to be longer than the message
+		bytes.reset();
+		out.writeByte(2);
+		Varint.write(out, 1);
+		Varint.write(out, 1 << 30);
+		out.writeByte('a');
+		assertFails(bytes.toByteArray());
+	}
+
+	@Test
+	public void neverFailsOtherThanWithAnIOExceptionOnCorruptInput() throws Exception {
+		WordCountTable table = new WordCountTable();
+		for(int n = 0;n<20;n++)
+			table.add("word" + n, n * 1000);
+		byte[] message = encode(new JobResult(4, 1, 2, 3, 99, table));
+		Random random = new Random(11);
+		for(int n = 0;n<5000;n++){
+			byte[] corrupt = message.clone();
+			for(int flips = 0;flips<3;flips++)
+				corrupt[1 + random.nextInt(corrupt.length - 1)] = (byte)random.nextInt(256);
+			try {
+				this.codec.decode(in(corrupt));
+			} catch (IOException e) {
+				//Corrupt input may be rejected, but only as a failed message
+			}
+		}
+	}
+
+	private Object roundTrip(Object o) throws IOException {
+		DataInputStream in = in(encode(o));
+		Object decoded = this.codec.decode(in);
+		assertEquals("bytes left over", 0, in.available());
+		return decoded;
+	}
+
+	private byte[] encode(Object o) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		this.codec.encode(o, out);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private void assertFails(byte[] message){
+		try {
+			this.codec.decode(in(message));
+			fail("decoded a malformed message of " + message.length + " bytes");
+		} catch (IOException e) {
+			//Expected
+		}
+	}
+
+	private static DataInputStream in(byte[] bytes){
+		return new DataInputStream(new ByteArrayInputStream(bytes));
+	}
+
+}
@@ -0,0 +1,192 @@
+package com.sdelacruz.network.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests every Compressor known to Compressors
+ */
+public class CompressorTest {
+
+	//Bytes either side of a block, which no Compressor may write to
+	private static final int guard = 16;
+	private static final byte guardByte = (byte)0xA5;
+
+	@Test
+	public void knowsEveryCompressor(){
+		assertNull(Compressors.forId(Compressors.none));
+		assertNull(Compressors.forId((byte)-1));
+		assertNull(Compressors.forId((byte)100));
+		assertEquals(Compressors.none, Compressors.idOf(null));
+		for(Compressor c : compressors())
+			assertSame(c, Compressors.forId(Compressors.idOf(c)));
+	}
+
+	@Test
+	public void roundTripsBlocks() throws Exception {
+		for(Compressor c : compressors()){
+			for(byte[] block : blocks())
+				assertArrayEquals(c.getClass().getSimpleName() + " " + block.length, block, roundTrip(c, block));
+		}
+	}
+
+	@Test
+	public void shrinksRepetitiveBlocks(){
+		byte[] words = text(64 * 1024);
+		//A random block repeated, so the only matches are a block back
+		byte[] noise = new byte[1000];
+		new Random(1).nextBytes(noise);
+		byte[] repeated = new byte[64 * 1024];
+		for(int n = 0;n<repeated.length;n++)
+			repeated[n] = noise[n % noise.length];
+		for(Compressor c : compressors()){
+			String name = c.getClass().getSimpleName();
+			assertTrue(name, compress(c, words).length<words.length * 2 / 3);
+			assertTrue(name, compress(c, repeated).length<repeated.length / 20);
+		}
+	}
+
+	@Test
+	public void rejectsTruncatedBlocks() throws Exception {
+		byte[] block = text(4096);
+		for(Compressor c : compressors()){
+			byte[] compressed = compress(c, block);
+			for(int length = 0;length<compressed.length;length++)
+				assertFails(c, Arrays.copyOf(compressed, length), block.length);
+		}
+	}
+
+	@Test
+	public void rejectsTheWrongOriginalLength() throws Exception {
+		byte[] block = text(4096);
+		for(Compressor c : compressors()){
+			byte[] compressed = compress(c, block);
+			assertFails(c, compressed, block.length - 1);
+			assertFails(c, compressed, block.length + 1);
+			assertFails(c, compressed, 0);
+		}
+	}
+
+	@Test
+	public void neverFailsOtherThanWithAnIOExceptionOnCorruptBlocks(){
+		Random random = new Random(5);
+		byte[] block = text(4096);
+		for(Compressor c : compressors()){
+			byte[] compressed = compress(c, block);
+			for(int n = 0;n<5000;n++){
+				byte[] corrupt = compressed.clone();
+				for(int flips = 1 + random.nextInt(4);flips>0;flips--)
+					corrupt[random.nextInt(corrupt.length)] = (byte)random.nextInt(256);
+				byte[] dst = guarded(block.length);
+				try {
+					c.decompress(corrupt, 0, corrupt.length, dst, guard, block.length);
+				} catch (IOException e) {
+					//Corrupt blocks may be rejected, but only as a failed frame
+				}
+				assertGuarded(dst, block.length);
+			}
+			for(int n = 0;n<1000;n++){
+				byte[] garbage = new byte[1 + random.nextInt(64)];
+				random.nextBytes(garbage);
+				byte[] dst = guarded(256);
+				try {
+					c.decompress(garbage, 0, garbage.length, dst, guard, 256);
+				} catch (IOException e) {
+					//Expected
+				}
+				assertGuarded(dst, 256);
+			}
+		}
+	}
+
+	private static Compressor[] compressors(){
+		return new Compressor[]{Compressors.forId(DeflateCompressor.id), Compressors.forId(LZ4Compressor.id)};
+	}
+
+	//Blocks of every kind a frame may hold, from empty to large, incompressible to a single repeated byte
+	private static byte[][] blocks(){
+		Random random = new Random(9);
+		byte[] noise = new byte[100000];
+		random.nextBytes(noise);
+		byte[] run = new byte[70000];
+		Arrays.fill(run, (byte)'x');
+		byte[] mixed = text(200000);
+		for(int n = 0;n<mixed.length;n += 1000)
+			mixed[n] = (byte)random.nextInt(256);
+		return new byte[][]{new byte[0], {1}, "short".getBytes(utf8()), "abcabcabcabcabc".getBytes(utf8()),
+				noise, run, text(1 << 20), mixed};
+	}
+
+	private static byte[] text(int length){
+		Random random = new Random(length);
+		String[] words = {"the ", "quick ", "brown ", "fox ", "jumps ", "over ", "lazy ", "dog\n"};
+		StringBuilder text = new StringBuilder();
+		while(text.length()<length)
+			text.append(words[random.nextInt(words.length)]);
+		return Arrays.copyOf(text.toString().getBytes(utf8()), length);
+	}
+
+	private static Charset utf8(){
+		return Charset.forName("UTF-8");
+	}
+
+	//Compress and restore a block at offsets other than 0, checking nothing is written outside it
+	private static byte[] roundTrip(Compressor c, byte[] block) throws IOException {
+		byte[] src = new byte[block.length + 2 * guard];
+		System.arraycopy(block, 0, src, guard, block.length);
+		byte[] compressed = guarded(c.maxCompressedLength(block.length));
+		int length = c.compress(src, guard, block.length, compressed, guard);
+		assertTrue(length<=c.maxCompressedLength(block.length));
+		for(int n = 0;n<guard;n++){
+			assertEquals(guardByte, compressed[n]);
+			assertEquals(guardByte, compressed[compressed.length - 1 - n]);
+		}
+
+		byte[] restored = guarded(block.length);
+		c.decompress(compressed, guard, length, restored, guard, block.length);
+		assertGuarded(restored, block.length);
+		return Arrays.copyOfRange(restored, guard, guard + block.length);
+	}
+
+	private static byte[] compress(Compressor c, byte[] block){
+		byte[] dst = new byte[c.maxCompressedLength(block.length)];
+		return Arrays.copyOf(dst, c.compress(block, 0, block.length, dst, 0));
+	}
+
+	private static void assertFails(Compressor c, byte[] compressed, int originalLength){
+		byte[] dst = guarded(Math.max(originalLength, 0));
+		try {
+			c.decompress(compressed, 0, compressed.length, dst, guard, originalLength);
+			fail(c.getClass().getSimpleName() + " restored a block of " + compressed.length + " bytes to "
+					+ originalLength);
+		} catch (IOException e) {
+			//Expected
+		}
+		assertGuarded(dst, originalLength);
+	}
+
+	private static byte[] guarded(int length){
+		byte[] b = new byte[length + 2 * guard];
+		Arrays.fill(b, guardByte);
+		return b;
+	}
+
+	private static void assertGuarded(byte[] b, int length){
+		for(int n = 0;n<guard;n++){
+			assertEquals("written before the block", guardByte, b[n]);
+			assertEquals("written after the block", guardByte, b[guard + length + n]);
+		}
+	}
+
+}
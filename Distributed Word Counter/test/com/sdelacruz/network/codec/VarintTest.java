@@ -0,0 +1,80 @@
+package com.sdelacruz.network.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class VarintTest {
+
+	@Test
+	public void roundTripsLongs() throws Exception {
+		long[] values = {0, 1, 127, 128, 300, 16383, 16384, Integer.MAX_VALUE, 1L << 35, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+		for(long value : values)
+			assertEquals(value, Varint.readLong(in(encode(value))));
+	}
+
+	@Test
+	public void takesOneByteBelow128() throws Exception {
+		assertEquals(1, encode(0).length);
+		assertEquals(1, encode(127).length);
+		assertEquals(2, encode(128).length);
+		assertEquals(10, encode(-1).length);
+	}
+
+	@Test
+	public void readsInts() throws Exception {
+		assertEquals(Integer.MAX_VALUE, Varint.readInt(in(encode(Integer.MAX_VALUE))));
+		assertEquals(0, Varint.readInt(in(encode(0))));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsIntsOutOfRange() throws Exception {
+		Varint.readInt(in(encode(Integer.MAX_VALUE + 1L)));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsNegativeInts() throws Exception {
+		Varint.readInt(in(encode(-1)));
+	}
+
+	@Test
+	public void rejectsVarintsLongerThan64Bits() throws Exception {
+		byte[] bytes = new byte[11];
+		for(int n = 0;n<bytes.length;n++)
+			bytes[n] = (byte)0x80;
+		try {
+			Varint.readLong(in(bytes));
+			fail("a varint of more than 64 bits was read");
+		} catch (EOFException e) {
+			fail("a varint of more than 64 bits was read to the end of the input");
+		} catch (IOException e) {
+			//Expected
+		}
+	}
+
+	@Test(expected = EOFException.class)
+	public void failsOnTruncatedInput() throws Exception {
+		Varint.readLong(in(new byte[]{(byte)0x80, (byte)0x80}));
+	}
+
+	private static byte[] encode(long value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		Varint.write(out, value);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static DataInputStream in(byte[] bytes){
+		return new DataInputStream(new ByteArrayInputStream(bytes));
+	}
+
+}
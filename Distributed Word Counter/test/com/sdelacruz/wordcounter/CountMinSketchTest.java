@@ -0,0 +1,76 @@
+package com.sdelacruz.wordcounter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CountMinSketchTest {
+
+	@Test
+	public void isExactForASingleWord(){
+		CountMinSketch sketch = new CountMinSketch(64, 4);
+		sketch.add(WordSketch.hash("a"), 5);
+		sketch.add(WordSketch.hash("a"), 2);
+		assertEquals(7, sketch.estimate(WordSketch.hash("a")));
+		assertEquals(7, sketch.getTotal());
+	}
+
+	@Test
+	public void neverUnderestimatesAndRarelyExceedsTheBound(){
+		WordCountTable exact = new WordCountTable();
+		Random random = new Random(3);
+		for(int n = 0;n<100000;n++)
+			exact.add("w" + random.nextInt(5000), 1 + random.nextInt(4));
+		CountMinSketch sketch = new CountMinSketch(1024, 4);
+		for(Map.Entry<String, Long> e : exact.toMap().entrySet())
+			sketch.add(WordSketch.hash(e.getKey()), e.getValue());
+
+		assertEquals(exact.total(), sketch.getTotal());
+		long bound = sketch.getErrorBound();
+		int within = 0;
+		for(Map.Entry<String, Long> e : exact.toMap().entrySet()){
+			long estimate = sketch.estimate(WordSketch.hash(e.getKey()));
+			assertTrue(e.getKey(), estimate>=e.getValue());
+			if(estimate - e.getValue()<=bound)
+				within++;
+		}
+		//Each estimate is within the bound with probability at least 1 - e^-4, about 98%
+		assertTrue(within + " of " + exact.size(), within>=exact.size() * 0.95);
+	}
+
+	@Test
+	public void mergeMatchesCountingEverything(){
+		CountMinSketch a = new CountMinSketch(256, 3);
+		CountMinSketch b = new CountMinSketch(256, 3);
+		CountMinSketch both = new CountMinSketch(256, 3);
+		for(int n = 0;n<1000;n++){
+			long hash = WordSketch.hash("w" + n % 300);
+			(n % 2==0 ? a : b).add(hash, n);
+			both.add(hash, n);
+		}
+		a.merge(b);
+		assertArrayEquals(both.getCounters(), a.getCounters());
+		assertEquals(both.getTotal(), a.getTotal());
+	}
+
+	@Test
+	public void loadsCounters(){
+		CountMinSketch sketch = new CountMinSketch(16, 2);
+		sketch.add(WordSketch.hash("x"), 3);
+		CountMinSketch loaded = new CountMinSketch(16, 2);
+		loaded.load(sketch.getCounters(), sketch.getTotal());
+		assertEquals(3, loaded.estimate(WordSketch.hash("x")));
+		assertEquals(3, loaded.getTotal());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsMergingADifferentSize(){
+		new CountMinSketch(16, 2).merge(new CountMinSketch(32, 2));
+	}
+
+}
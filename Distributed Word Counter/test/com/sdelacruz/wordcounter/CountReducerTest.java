@@ -0,0 +1,112 @@
+package com.sdelacruz.wordcounter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Tests the CountReducers which may be reduced into by many threads at once
+ */
+public class CountReducerTest {
+
+	private static final int threads = 8;
+	private static final int partials = 200;
+
+	@Test
+	public void stripedReducerMatchesASequentialMerge() throws Exception {
+		assertReducesExactly(new StripedCountReducer(1));
+		assertReducesExactly(new StripedCountReducer(threads * 4));
+	}
+
+	@Test
+	public void threadLocalReducerMatchesASequentialMerge() throws Exception {
+		assertReducesExactly(new ThreadLocalCountReducer());
+	}
+
+	@Test
+	public void snapshotsAreCopies(){
+		CountReducer[] reducers = {new StripedCountReducer(4), new ThreadLocalCountReducer()};
+		for(CountReducer reducer : reducers){
+			WordCountTable partial = new WordCountTable();
+			partial.add("a", 1);
+			reducer.reduce(partial);
+			WordCountTable snapshot = reducer.snapshot();
+			//The partial is not retained, nor is the snapshot shared
+			partial.add("a", 10);
+			snapshot.add("a", 100);
+			reducer.reduce(partial);
+			assertEquals(12, reducer.result().get("a"));
+		}
+	}
+
+	@Test
+	public void startsEmpty(){
+		assertTrue(new StripedCountReducer(4).result().isEmpty());
+		assertTrue(new ThreadLocalCountReducer().result().isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNoStripes(){
+		new StripedCountReducer(0);
+	}
+
+	//Reduce the same partials from many threads at once, each reusing its own partial table
+	private static void assertReducesExactly(final CountReducer reducer) throws Exception {
+		final WordCountTable expected = new WordCountTable();
+		final WordCountTable[][] tables = new WordCountTable[threads][partials];
+		Random random = new Random(threads);
+		for(int t = 0;t<threads;t++){
+			for(int p = 0;p<partials;p++){
+				WordCountTable table = new WordCountTable();
+				for(int n = 0;n<100;n++)
+					table.increment("w" + random.nextInt(1000));
+				tables[t][p] = table;
+				expected.merge(table);
+			}
+		}
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final Throwable[] failure = new Throwable[1];
+		Thread[] workers = new Thread[threads];
+		for(int t = 0;t<threads;t++){
+			final int thread = t;
+			workers[t] = new Thread(){
+				@Override
+				public void run(){
+					try {
+						start.await();
+						WordCountTable partial = new WordCountTable();
+						for(WordCountTable table : tables[thread]){
+							partial.clear();
+							partial.merge(table);
+							reducer.reduce(partial);
+							//Snapshots taken while reducing must not disturb the count
+							if(table.size()%16==0)
+								reducer.snapshot();
+						}
+					} catch (Throwable e) {
+						synchronized(failure){
+							failure[0] = e;
+						}
+					}
+				}
+			};
+			workers[t].start();
+		}
+		start.countDown();
+		for(Thread worker : workers)
+			worker.join();
+
+		synchronized(failure){
+			if(failure[0]!=null)
+				throw new AssertionError(failure[0]);
+		}
+		assertEquals(expected.toMap(), reducer.result().toMap());
+		assertEquals(expected.total(), reducer.snapshot().total());
+	}
+
+}
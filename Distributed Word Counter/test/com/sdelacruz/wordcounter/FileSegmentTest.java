@@ -0,0 +1,129 @@
+package com.sdelacruz.wordcounter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileSegmentTest {
+
+	private File file;
+	private byte[] bytes;
+
+	@Before
+	public void writeFile() throws IOException {
+		Random random = new Random(3);
+		StringBuilder text = new StringBuilder();
+		while(text.length()<100000){
+			int length = 1 + random.nextInt(random.nextInt(10)==0 ? 5000 : 12);
+			for(int n = 0;n<length;n++)
+				text.append((char)('a' + random.nextInt(26)));
+			text.append(random.nextBoolean() ? ' ' : '\n');
+		}
+		text.append("last");
+		this.bytes = text.toString().getBytes(Charset.forName("UTF-8"));
+		this.file = write(this.bytes);
+	}
+
+	@After
+	public void deleteFile(){
+		this.file.delete();
+	}
+
+	@Test
+	public void splitsOnWordBoundaries() throws IOException {
+		WordCountTable expected = count(0, this.bytes.length);
+		for(int segments : new int[]{1, 2, 7, 64, 100000}){
+			List<FileSegment> split = FileSegment.split(this.file, segments);
+			WordCountTable counted = new WordCountTable();
+			long position = 0;
+			for(FileSegment segment : split){
+				assertEquals(position, segment.getOffset());
+				assertTrue(segment.getLength()>0);
+				position += segment.getLength();
+				if(position<this.bytes.length)
+					assertTrue(WordTokenizer.isDelimiter(this.bytes[(int)position - 1]));
+				counted.merge(count(segment.getOffset(), segment.getLength()));
+			}
+			assertEquals(this.bytes.length, position);
+			assertTrue(split.size()<=segments);
+			assertEquals(expected.toMap(), counted.toMap());
+		}
+	}
+
+	@Test
+	public void splitsAnEmptyFileIntoNothing() throws IOException {
+		File empty = write(new byte[0]);
+		try {
+			assertTrue(FileSegment.split(empty, 4).isEmpty());
+		} finally {
+			empty.delete();
+		}
+	}
+
+	@Test
+	public void headEndsOnTheNextBoundary() throws IOException {
+		FileSegment whole = new FileSegment(this.file.getPath(), 0, this.bytes.length);
+		assertSame(whole, whole.head(this.bytes.length));
+
+		FileSegment rest = whole;
+		long position = 0;
+		while(rest.getLength()>0){
+			FileSegment head = rest.head(1000);
+			assertEquals(position, head.getOffset());
+			assertTrue(head.getLength()>=Math.min(1000, rest.getLength()));
+			position += head.getLength();
+			if(position<this.bytes.length)
+				assertTrue(WordTokenizer.isDelimiter(this.bytes[(int)position - 1]));
+			rest = rest.after(head);
+			assertEquals(position, rest.getOffset());
+		}
+		assertEquals(this.bytes.length, position);
+	}
+
+	@Test
+	public void headOfASegmentWithoutBoundariesIsTheWholeSegment() throws IOException {
+		byte[] word = new byte[10000];
+		Arrays.fill(word, (byte)'w');
+		File single = write(word);
+		try {
+			FileSegment segment = new FileSegment(single.getPath(), 100, 5000);
+			FileSegment head = segment.head(10);
+			assertEquals(100, head.getOffset());
+			assertEquals(5000, head.getLength());
+			assertEquals(0, segment.after(head).getLength());
+		} finally {
+			single.delete();
+		}
+	}
+
+	private WordCountTable count(long offset, long length){
+		WordCountTable table = new WordCountTable();
+		new WordTokenizer().tokenize(ByteBuffer.wrap(this.bytes, (int)offset, (int)length), table);
+		return table;
+	}
+
+	private static File write(byte[] bytes) throws IOException {
+		File file = File.createTempFile("segment", ".txt");
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+}
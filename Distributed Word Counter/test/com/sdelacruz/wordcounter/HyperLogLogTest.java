@@ -0,0 +1,71 @@
+package com.sdelacruz.wordcounter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HyperLogLogTest {
+
+	@Test
+	public void estimatesNothingWhenEmpty(){
+		assertEquals(0, new HyperLogLog(10).estimate());
+	}
+
+	@Test
+	public void countsFewWordsAlmostExactly(){
+		HyperLogLog hll = new HyperLogLog(12);
+		for(int n = 0;n<100;n++)
+			hll.add(WordSketch.hash("w" + n));
+		assertEquals(100, hll.estimate(), 2);
+	}
+
+	@Test
+	public void ignoresRepeatedWords(){
+		HyperLogLog hll = new HyperLogLog(12);
+		for(int repeat = 0;repeat<10;repeat++){
+			for(int n = 0;n<1000;n++)
+				hll.add(WordSketch.hash("w" + n));
+		}
+		assertEquals(1000, hll.estimate(), 50);
+	}
+
+	@Test
+	public void estimatesManyWordsWithinTheStandardError(){
+		int[] precisions = {10, 12, 14};
+		for(int precision : precisions){
+			HyperLogLog hll = new HyperLogLog(precision);
+			int distinct = 200000;
+			for(int n = 0;n<distinct;n++)
+				hll.add(WordSketch.hash("word" + n));
+			//Four standard errors of 1.04/sqrt(2^precision)
+			double error = 4 * 1.04 / Math.sqrt(1 << precision);
+			double relative = Math.abs(hll.estimate() - distinct) / (double)distinct;
+			assertTrue("p=" + precision + " off by " + relative, relative<=error);
+		}
+	}
+
+	@Test
+	public void mergeEstimatesTheUnion(){
+		HyperLogLog a = new HyperLogLog(12);
+		HyperLogLog b = new HyperLogLog(12);
+		HyperLogLog both = new HyperLogLog(12);
+		for(int n = 0;n<30000;n++){
+			long hash = WordSketch.hash("w" + n);
+			if(n<20000)
+				a.add(hash);
+			if(n>=10000)
+				b.add(hash);
+			both.add(hash);
+		}
+		a.merge(b);
+		assertArrayEquals(both.getRegisters(), a.getRegisters());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsMergingADifferentPrecision(){
+		new HyperLogLog(10).merge(new HyperLogLog(12));
+	}
+
+}
@@ -0,0 +1,92 @@
+package com.sdelacruz.wordcounter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+
+public class SketchSpecTest {
+
+	@Test
+	public void acceptsValidSpecs(){
+		SketchSpec spec = new SketchSpec(1 << 14, 4, 12);
+		assertEquals(8L * (1 << 14) * 4 + 4096, spec.getBytes());
+		assertEquals(spec, new SketchSpec(1 << 14, 4, 12));
+		assertEquals(spec.hashCode(), new SketchSpec(1 << 14, 4, 12).hashCode());
+		new SketchSpec(SketchSpec.maxCounters, 1, 4);
+	}
+
+	@Test
+	public void rejectsInvalidSpecs(){
+		int[][] specs = {{0, 4, 12}, {100, 4, 12}, {-16, 4, 12}, {16, 0, 12}, {16, 4, 3}, {16, 4, 19},
+				{1 << 30, 3, 12}, {SketchSpec.maxCounters, 2, 12}};
+		for(int[] s : specs){
+			try {
+				new SketchSpec(s[0], s[1], s[2]);
+				fail("accepted " + s[0] + "x" + s[1] + " p=" + s[2]);
+			} catch (IllegalArgumentException e) {
+				//Expected
+			}
+		}
+	}
+
+	@Test
+	public void rejectsInvalidSpecsWhenDeserialized() throws Exception {
+		byte[] bytes = serialize(new SketchSpec(1 << 4, 4, 12));
+		//Find the serialized width, 16, and change it to a width which is not a power of two
+		int at = -1;
+		for(int n = bytes.length - 4;n>=0 && at<0;n--){
+			if(bytes[n]==0 && bytes[n + 1]==0 && bytes[n + 2]==0 && bytes[n + 3]==16)
+				at = n;
+		}
+		assertTrue(at>=0);
+		bytes[at + 3] = 17;
+		try {
+			new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+			fail("deserialized an invalid spec");
+		} catch (InvalidObjectException e) {
+			//Expected
+		}
+	}
+
+	@Test
+	public void sketchesWordsAndMerges(){
+		SketchSpec spec = new SketchSpec(1 << 10, 4, 10);
+		WordSketch a = spec.newSketch();
+		WordSketch b = spec.newSketch();
+		WordCountTable table = new WordCountTable();
+		table.add("x", 10);
+		table.add("y", 1);
+		a.add(table);
+		b.add("x", 5);
+		a.merge(b);
+
+		assertEquals(16, a.getTotal());
+		assertTrue(a.estimate("x")>=15);
+		assertEquals(2, a.distinct());
+		WordSketch copy = new WordSketch(a);
+		a.add("z", 1);
+		assertEquals(16, copy.getTotal());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsMergingADifferentSpec(){
+		new SketchSpec(16, 2, 4).newSketch().merge(new SketchSpec(16, 2, 5).newSketch());
+	}
+
+	private static byte[] serialize(Object o) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(o);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+}
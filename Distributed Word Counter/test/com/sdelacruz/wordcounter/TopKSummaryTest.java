@@ -0,0 +1,157 @@
+package com.sdelacruz.wordcounter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TopKSummaryTest {
+
+	@Test
+	public void isExactWithinCapacity(){
+		TopKSummary summary = new TopKSummary(10);
+		WordCountTable counts = new WordCountTable();
+		counts.add("a", 5);
+		counts.add("b", 3);
+		counts.add("c", 1);
+		summary.add(counts);
+
+		assertEquals(0, summary.getErrorBound());
+		assertEquals(9, summary.getTotal());
+		assertEquals(5, summary.estimate("a"));
+		assertEquals(0, summary.estimate("d"));
+		assertEquals("a", summary.top(1).get(0));
+		assertTrue(summary.isCertain(2));
+		assertTrue(summary.covers(2));
+	}
+
+	@Test
+	public void estimatesStayWithinTheErrorBound(){
+		String[][] batches = zipf(40, 5000, 2000, 3);
+		WordCountTable exact = new WordCountTable();
+		for(String[] batch : batches)
+			exact.incrementAll(batch);
+
+		//Summaries of each batch, merged as a scheduler merges those sent by its workers
+		TopKSummary merged = new TopKSummary(50);
+		for(String[] batch : batches){
+			TopKSummary part = new TopKSummary(50);
+			WordCountTable counts = new WordCountTable();
+			counts.incrementAll(batch);
+			part.add(counts);
+			part.compact();
+			merged.merge(part);
+		}
+
+		long error = merged.getErrorBound();
+		assertEquals(exact.total(), merged.getTotal());
+		assertTrue(error>0);
+		assertTrue(error<=merged.getTotal() / 51);
+		for(Map.Entry<String, Long> e : exact.toMap().entrySet()){
+			long estimate = merged.estimate(e.getKey());
+			assertTrue(e.getKey(), estimate<=e.getValue());
+			assertTrue(e.getKey(), estimate>=e.getValue() - error);
+			if(e.getValue()>error)
+				assertTrue(e.getKey() + " is missing", estimate>0);
+		}
+	}
+
+	@Test
+	public void recountGivesTheTrueTopK(){
+		String[][] batches = zipf(20, 5000, 5000, 5);
+		WordCountTable exact = new WordCountTable();
+		TopKSummary summary = new TopKSummary(100);
+		for(String[] batch : batches){
+			WordCountTable counts = new WordCountTable();
+			exact.incrementAll(batch);
+			counts.incrementAll(batch);
+			summary.add(counts);
+		}
+
+		int k = 10;
+		assertTrue(summary.covers(k));
+		Set<String> candidates = summary.candidates(k);
+		WordCountTable recounted = TopKSummary.recount(candidates, batches);
+		assertEquals(exact.top(k), recounted.top(k));
+	}
+
+	@Test
+	public void shrinksToCapacity(){
+		TopKSummary summary = new TopKSummary(2);
+		WordCountTable counts = new WordCountTable();
+		counts.add("a", 100);
+		counts.add("b", 50);
+		counts.add("c", 2);
+		counts.add("d", 1);
+		counts.add("e", 1);
+		summary.add(counts);
+		summary.compact();
+
+		//Shrinking took the third highest count, 2, off each of the top two
+		assertEquals(98, summary.estimate("a"));
+		assertEquals(48, summary.estimate("b"));
+		assertEquals(0, summary.estimate("c"));
+		assertEquals(2, summary.getErrorBound());
+		assertTrue(summary.isCertain(1));
+		assertTrue(summary.isCertain(2));
+		assertFalse(summary.isCertain(3));
+		assertEquals("a", summary.top(2).get(0));
+		assertEquals("b", summary.top(2).get(1));
+	}
+
+	@Test
+	public void copiesAreIndependent(){
+		TopKSummary summary = new TopKSummary(4);
+		WordCountTable counts = new WordCountTable();
+		counts.add("a", 3);
+		summary.add(counts);
+		TopKSummary copy = new TopKSummary(summary);
+		summary.add(counts);
+		assertEquals(3, copy.estimate("a"));
+		assertEquals(3, copy.getTotal());
+		assertEquals(6, summary.estimate("a"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsAnEmptyCapacity(){
+		new TopKSummary(0);
+	}
+
+	//Batches of words drawn with a Zipf-like skew, so a few words are far more frequent than the rest
+	private static String[][] zipf(int batches, int batchSize, int distinct, long seed){
+		Random random = new Random(seed);
+		double[] cumulative = new double[distinct];
+		double sum = 0;
+		for(int n = 0;n<distinct;n++){
+			sum += 1.0 / (n + 1);
+			cumulative[n] = sum;
+		}
+		List<String[]> out = new ArrayList<String[]>();
+		for(int b = 0;b<batches;b++){
+			String[] batch = new String[batchSize];
+			for(int n = 0;n<batchSize;n++){
+				double r = random.nextDouble() * sum;
+				int low = 0;
+				int high = distinct - 1;
+				while(low<high){
+					int middle = (low + high) >>> 1;
+					if(cumulative[middle]<r)
+						low = middle + 1;
+					else
+						high = middle;
+				}
+				batch[n] = "w" + low;
+			}
+			out.add(batch);
+		}
+		return out.toArray(new String[out.size()][]);
+	}
+
+}
@@ -0,0 +1,111 @@
+package com.sdelacruz.wordcounter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class WindowedCountReducerTest {
+
+	private static final CountWindow minute = CountWindow.sliding(60, 10, TimeUnit.SECONDS);
+	private static final CountWindow tumbling = CountWindow.tumbling(30, TimeUnit.SECONDS);
+
+	//A reducer whose clock only moves when told to, starting at the beginning of a slice
+	private static class ManualClockReducer extends WindowedCountReducer {
+
+		private long now;
+
+		private ManualClockReducer(CountReducer allTime, CountWindow... windows){
+			super(allTime, windows);
+		}
+
+		@Override
+		protected long now(){
+			return this.now;
+		}
+
+		private void advance(long millis){
+			this.now += millis;
+		}
+
+	}
+
+	@Test
+	public void slidingWindowsExpireOneSliceAtATime(){
+		ManualClockReducer reducer = new ManualClockReducer(null, minute);
+		reducer.reduce(counts("a", 1));
+		reducer.advance(10000);
+		reducer.reduce(counts("a", 2));
+		reducer.reduce(counts("b", 5));
+		assertEquals(3, reducer.get(minute, "a"));
+
+		//The first slice leaves the window once six slices have started after it
+		reducer.advance(50000);
+		assertEquals(2, reducer.get(minute, "a"));
+		assertEquals(5, reducer.get(minute, "b"));
+		reducer.advance(10000);
+		assertEquals(0, reducer.get(minute, "a"));
+		assertTrue(reducer.snapshot(minute).isEmpty());
+	}
+
+	@Test
+	public void expiresEverySliceAfterALongGap(){
+		ManualClockReducer reducer = new ManualClockReducer(null, minute);
+		reducer.reduce(counts("a", 1));
+		reducer.advance(TimeUnit.HOURS.toMillis(5));
+		assertEquals(0, reducer.get(minute, "a"));
+		reducer.reduce(counts("a", 4));
+		assertEquals(4, reducer.get(minute, "a"));
+	}
+
+	@Test
+	public void tumblingWindowsKeepTheLastClosedCount(){
+		ManualClockReducer reducer = new ManualClockReducer(null, tumbling);
+		reducer.reduce(counts("a", 1));
+		reducer.reduce(counts("a", 1));
+		assertTrue(reducer.closed(tumbling).isEmpty());
+
+		reducer.advance(30000);
+		assertEquals(0, reducer.get(tumbling, "a"));
+		assertEquals(2, reducer.closed(tumbling).get("a"));
+
+		//A window in which nothing was counted closes empty
+		reducer.advance(60000);
+		assertTrue(reducer.closed(tumbling).isEmpty());
+	}
+
+	@Test
+	public void passesCountsOnToTheCountOfAllTime(){
+		ManualClockReducer reducer = new ManualClockReducer(new StripedCountReducer(4), minute, tumbling);
+		reducer.reduce(counts("a", 1));
+		reducer.advance(TimeUnit.HOURS.toMillis(1));
+		reducer.reduce(counts("a", 1));
+		assertEquals(2, reducer.result().get("a"));
+		assertEquals(1, reducer.get(minute, "a"));
+		assertEquals("a", reducer.top(minute, 1).get(0).getKey());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsWindowsItDoesNotKeep(){
+		new ManualClockReducer(null, minute).get(tumbling, "a");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsClosedCountsOfSlidingWindows(){
+		new ManualClockReducer(null, minute).closed(minute);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsWindowsOfPartSlides(){
+		CountWindow.sliding(60, 7, TimeUnit.SECONDS);
+	}
+
+	private static WordCountTable counts(String word, long count){
+		WordCountTable table = new WordCountTable();
+		table.add(word, count);
+		return table;
+	}
+
+}
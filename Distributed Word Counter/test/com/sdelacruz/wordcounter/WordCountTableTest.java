@@ -0,0 +1,220 @@
+package com.sdelacruz.wordcounter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class WordCountTableTest {
+
+	//Words whose String hashes are equal, so land in the same run of slots
+	private static final String[] colliding = {"Aa", "BB", "AaAa", "AaBB", "BBAa", "BBBB"};
+
+	@Test
+	public void countsWords(){
+		WordCountTable table = new WordCountTable();
+		table.increment("a");
+		table.increment("b");
+		table.increment("a");
+		table.increment(null);
+		table.add("c", 5);
+
+		assertEquals(2, table.get("a"));
+		assertEquals(1, table.get("b"));
+		assertEquals(5, table.get("c"));
+		assertEquals(0, table.get("d"));
+		assertEquals(3, table.size());
+		assertEquals(8, table.total());
+	}
+
+	@Test
+	public void incrementAllSkipsNulls(){
+		WordCountTable table = new WordCountTable();
+		assertEquals(3, table.incrementAll(new String[]{"a", null, "b", "a"}));
+		assertEquals(1, table.incrementAll(new String[]{"a", null, "b", "a"}, 1, 3));
+		assertEquals(2, table.get("a"));
+		assertEquals(2, table.get("b"));
+	}
+
+	@Test
+	public void incrementsFromCharBuffer(){
+		WordCountTable table = new WordCountTable();
+		char[] buf = "one two one".toCharArray();
+		table.increment(buf, 0, 3);
+		table.increment(buf, 4, 3);
+		table.increment(buf, 8, 3);
+		assertEquals(2, table.get("one"));
+		assertEquals(1, table.get("two"));
+	}
+
+	@Test
+	public void growsPastItsCapacity(){
+		WordCountTable table = new WordCountTable(1);
+		for(int n = 0;n<10000;n++)
+			table.add("w" + n, n + 1);
+		assertEquals(10000, table.size());
+		for(int n = 0;n<10000;n++)
+			assertEquals(n + 1, table.get("w" + n));
+	}
+
+	@Test
+	public void removesWordsOfTheSameRun(){
+		WordCountTable table = new WordCountTable();
+		for(String word : colliding)
+			table.add(word, 1);
+
+		//Removing each word in turn must leave every later word of the run still reachable
+		for(int n = 0;n<colliding.length;n++){
+			table.subtract(single(colliding[n], 1));
+			assertEquals(0, table.get(colliding[n]));
+			for(int m = n + 1;m<colliding.length;m++)
+				assertEquals(colliding[m], 1, table.get(colliding[m]));
+			assertEquals(colliding.length - n - 1, table.size());
+		}
+		assertTrue(table.isEmpty());
+	}
+
+	@Test
+	public void subtractKeepsWordsWithCountsLeft(){
+		WordCountTable table = new WordCountTable();
+		table.add("a", 3);
+		table.add("b", 1);
+		table.subtract(single("a", 1));
+		table.subtract(single("b", 2));
+		table.subtract(single("c", 1));
+		assertEquals(2, table.get("a"));
+		assertEquals(0, table.get("b"));
+		assertEquals(1, table.size());
+	}
+
+	@Test
+	public void matchesAMapUnderRandomAddsAndSubtracts(){
+		Random random = new Random(7);
+		WordCountTable table = new WordCountTable();
+		Map<String, Long> expected = new HashMap<String, Long>();
+		for(int n = 0;n<200000;n++){
+			String word = "w" + random.nextInt(2000);
+			long count = 1 + random.nextInt(3);
+			Long current = expected.get(word);
+			if(random.nextInt(3)==0){
+				table.subtract(single(word, count));
+				if(current!=null){
+					if(current<=count)
+						expected.remove(word);
+					else
+						expected.put(word, current - count);
+				}
+			}
+			else{
+				table.add(word, count);
+				expected.put(word, (current==null ? 0 : current) + count);
+			}
+		}
+		assertEquals(expected, table.toMap());
+		assertEquals(expected.size(), table.size());
+	}
+
+	@Test
+	public void mergeAddsCounts(){
+		WordCountTable a = new WordCountTable();
+		a.add("x", 1);
+		a.add("y", 2);
+		WordCountTable b = new WordCountTable();
+		b.add("y", 3);
+		b.add("z", 4);
+		a.merge(b);
+		assertEquals(1, a.get("x"));
+		assertEquals(5, a.get("y"));
+		assertEquals(4, a.get("z"));
+		assertEquals(2, b.size());
+	}
+
+	@Test
+	public void topRanksByCountThenWord(){
+		WordCountTable table = new WordCountTable();
+		table.add("c", 2);
+		table.add("a", 5);
+		table.add("b", 2);
+		table.add("d", 1);
+		List<Map.Entry<String, Long>> top = table.top(3);
+		assertEquals(3, top.size());
+		assertEquals("a", top.get(0).getKey());
+		assertEquals("b", top.get(1).getKey());
+		assertEquals("c", top.get(2).getKey());
+		assertTrue(table.top(0).isEmpty());
+	}
+
+	@Test
+	public void partitionAndSplitKeepEveryWord(){
+		WordCountTable table = new WordCountTable();
+		for(int n = 0;n<1000;n++)
+			table.add("w" + n, n + 1);
+
+		WordCountTable[] parts = table.partition(4);
+		WordCountTable joined = new WordCountTable();
+		for(int n = 0;n<parts.length;n++){
+			for(String word : parts[n].toMap().keySet())
+				assertEquals(n, WordCountTable.stripeOf(word, 4));
+			joined.merge(parts[n]);
+		}
+		assertEquals(table.toMap(), joined.toMap());
+
+		parts = table.split(300);
+		assertEquals(4, parts.length);
+		joined = new WordCountTable();
+		for(WordCountTable part : parts){
+			assertTrue(part.size()<=300);
+			joined.merge(part);
+		}
+		assertEquals(table.toMap(), joined.toMap());
+	}
+
+	@Test
+	public void shrinkTakesOffTheCountPastCapacity(){
+		WordCountTable table = new WordCountTable();
+		table.add("a", 10);
+		table.add("b", 6);
+		table.add("c", 3);
+		table.add("d", 1);
+		assertEquals(3, table.shrink(2));
+		assertEquals(2, table.size());
+		assertEquals(7, table.get("a"));
+		assertEquals(3, table.get("b"));
+		assertEquals(0, table.shrink(2));
+	}
+
+	@Test
+	public void survivesSerialization() throws Exception {
+		WordCountTable table = new WordCountTable();
+		for(String word : colliding)
+			table.add(word, word.length());
+		table.subtract(single(colliding[0], 10));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(table);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		WordCountTable read = (WordCountTable)in.readObject();
+
+		assertEquals(table.toMap(), read.toMap());
+		read.increment("BB");
+		assertEquals(3, read.get("BB"));
+	}
+
+	private static WordCountTable single(String word, long count){
+		WordCountTable table = new WordCountTable();
+		table.add(word, count);
+		return table;
+	}
+
+}
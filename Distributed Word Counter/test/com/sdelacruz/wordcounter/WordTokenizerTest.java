@@ -0,0 +1,108 @@
+package com.sdelacruz.wordcounter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+public class WordTokenizerTest {
+
+	private static final Charset utf8 = Charset.forName("UTF-8");
+
+	@Test
+	public void tokenizesAReader() throws Exception {
+		WordCountTable table = new WordCountTable();
+		long words = new WordTokenizer().tokenize(new StringReader("  the cat\tand\nthe hat "), table);
+		assertEquals(5, words);
+		assertEquals(2, table.get("the"));
+		assertEquals(1, table.get("hat"));
+		assertEquals(4, table.size());
+	}
+
+	@Test
+	public void carriesWordsLongerThanTheBuffer() throws Exception {
+		StringBuilder text = new StringBuilder();
+		String longWord = "";
+		for(int n = 0;n<100;n++)
+			longWord += (char)('a' + n % 26);
+		for(int n = 0;n<50;n++)
+			text.append("word").append(n % 7).append(' ').append(longWord).append(' ');
+		text.append("last");
+
+		WordCountTable table = new WordCountTable();
+		//The smallest buffer, so words are split by reads and the buffer has to grow
+		long words = new WordTokenizer(1).tokenize(new StringReader(text.toString()), table);
+		assertEquals(101, words);
+		assertEquals(50, table.get(longWord));
+		assertEquals(1, table.get("last"));
+		assertEquals(8, table.get("word0"));
+	}
+
+	@Test
+	public void tokenizesUtf8Bytes(){
+		String text = "caf\u00E9 \u65E5\u672C \uD83D\uDE00 caf\u00E9\nend";
+		ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(utf8));
+		WordCountTable table = new WordCountTable();
+		assertEquals(5, new WordTokenizer().tokenize(bytes, table));
+		assertEquals(2, table.get("caf\u00E9"));
+		assertEquals(1, table.get("\u65E5\u672C"));
+		assertEquals(1, table.get("\uD83D\uDE00"));
+		assertEquals(1, table.get("end"));
+		assertFalse(bytes.hasRemaining());
+	}
+
+	@Test
+	public void replacesMalformedUtf8(){
+		//A stray continuation byte, and a lead byte cut short by the end of the word
+		ByteBuffer bytes = ByteBuffer.wrap(new byte[]{'a', (byte)0x80, ' ', 'b', (byte)0xE6, (byte)0x97});
+		WordCountTable table = new WordCountTable();
+		assertEquals(2, new WordTokenizer().tokenize(bytes, table));
+		assertEquals(1, table.get("a\uFFFD"));
+		assertEquals(1, table.get("b\uFFFD"));
+	}
+
+	@Test
+	public void tokenizesFromThePosition(){
+		ByteBuffer bytes = ByteBuffer.wrap("skip these words".getBytes(utf8));
+		bytes.position(5);
+		bytes.limit(11);
+		WordCountTable table = new WordCountTable();
+		assertEquals(1, new WordTokenizer().tokenize(bytes, table));
+		assertEquals(1, table.get("these"));
+		assertEquals(11, bytes.position());
+	}
+
+	@Test
+	public void countsWordsWithoutMovingTheBuffer(){
+		ByteBuffer bytes = ByteBuffer.wrap(" one  two\u00A0three ".getBytes(utf8));
+		//A no-break space is not ASCII whitespace, so does not separate words in bytes
+		assertEquals(2, WordTokenizer.countWords(bytes));
+		assertEquals(0, bytes.position());
+		assertEquals(0, WordTokenizer.countWords(ByteBuffer.wrap(new byte[0])));
+	}
+
+	@Test
+	public void findsBoundaries(){
+		ByteBuffer bytes = ByteBuffer.wrap("ab cd ef".getBytes(utf8));
+		assertEquals(3, WordTokenizer.boundary(bytes, 0));
+		assertEquals(3, WordTokenizer.boundary(bytes, 2));
+		assertEquals(6, WordTokenizer.boundary(bytes, 3));
+		assertEquals(8, WordTokenizer.boundary(bytes, 6));
+		assertEquals(8, WordTokenizer.boundary(bytes, 8));
+	}
+
+	@Test
+	public void onlyAsciiWhitespaceBytesAreDelimiters(){
+		assertTrue(WordTokenizer.isDelimiter((byte)' '));
+		assertTrue(WordTokenizer.isDelimiter((byte)'\n'));
+		assertFalse(WordTokenizer.isDelimiter((byte)'a'));
+		assertFalse(WordTokenizer.isDelimiter((byte)0xA0));
+		assertFalse(WordTokenizer.isDelimiter((byte)0xC2));
+	}
+
+}